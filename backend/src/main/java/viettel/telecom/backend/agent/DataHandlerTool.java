@@ -4,6 +4,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 import viettel.telecom.backend.entity.flow.Flow;
 import viettel.telecom.backend.service.flow.DataHandler;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
 
 import java.util.Map;
 
@@ -50,7 +51,7 @@ public class DataHandlerTool implements AgentTool {
         // The 'handle' method typically returns a String that may indicate the next node ID.
         String nextNodeId;
         try {
-            nextNodeId = dataHandler.handle(node, context, session);
+            nextNodeId = dataHandler.handle(FlowNode.from(node), context, session);
         } catch (Exception e) {
             // Catch any runtime errors and wrap them in a ToolResult
             return new ToolResult("DataHandler error: " + e.getMessage());
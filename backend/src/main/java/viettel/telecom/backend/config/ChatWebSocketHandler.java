@@ -1,47 +1,79 @@
 package viettel.telecom.backend.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
-import viettel.telecom.backend.entity.flow.Flow;
-import viettel.telecom.backend.entity.flow.Flow.Node;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import viettel.telecom.backend.service.flow.FlowExecutor;
 import viettel.telecom.backend.service.flow.FlowService;
+import viettel.telecom.backend.service.flow.runtime.CompiledFlow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
 import viettel.telecom.backend.service.redis.memory.ChatMemoryService;
+import viettel.telecom.backend.service.session.ConversationIds;
+import viettel.telecom.backend.service.session.FlowSessionState;
+import viettel.telecom.backend.service.session.FlowSessionStore;
+import viettel.telecom.backend.service.session.SessionMailboxExecutor;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * WebSocket handler that manages chat flow interactions.
+ *
+ * Messages are not processed on the container thread: each one is queued in the session's mailbox
+ * and handled there, strictly in order, so LLM/API calls never block the WebSocket I/O threads.
+ * With flow.execution.reactive=true the flow turn itself runs non-blocking (see FlowExecutor#executeTurnAsync).
+ *
+ * Flow state and chat memory are keyed by a server-issued conversation ID (see {@link ConversationIds}), sent to
+ * the client as {"sender": "system", "type": "conversation", "conversationId": ...} on its first message.
+ * A client that reconnects and sends that ID back continues the conversation, on any replica.
  */
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
 
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    // Tracks active sessions and their contexts
+    // Tracks active sessions; their flow contexts live in the FlowSessionStore
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, Object>> sessionContexts = new ConcurrentHashMap<>();
 
     private final FlowService flowService;
     private final FlowExecutor flowExecutor;
     private final ChatMemoryService chatMemoryService;
+    private final SessionMailboxExecutor mailboxExecutor;
+    private final FlowSessionStore flowSessionStore;
+    private final boolean reactive;
 
     public ChatWebSocketHandler(FlowService flowService,
                                 FlowExecutor flowExecutor,
-                                ChatMemoryService chatMemoryService) {
+                                ChatMemoryService chatMemoryService,
+                                SessionMailboxExecutor mailboxExecutor,
+                                FlowSessionStore flowSessionStore,
+                                @Value("${flow.execution.reactive:false}") boolean reactive) {
         this.flowService = flowService;
         this.flowExecutor = flowExecutor;
         this.chatMemoryService = chatMemoryService;
+        this.mailboxExecutor = mailboxExecutor;
+        this.flowSessionStore = flowSessionStore;
+        this.reactive = reactive;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        sessions.put(session.getId(), session);
+        // Sends now come from mailbox threads, so guard the session against concurrent writes
+        sessions.put(session.getId(),
+                new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE_LIMIT));
         System.out.println("New WebSocket connection: " + session.getId());
 
         // Store session metadata in Redis (for example, just store the sessionId)
@@ -51,133 +83,211 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        WebSocketSession outbound = sessions.getOrDefault(session.getId(), session);
+        String payload = message.getPayload();
+
+        // Hand the message to the session's mailbox and return the container thread immediately
+        boolean accepted = reactive
+                ? mailboxExecutor.submitAsync(session.getId(), () -> processMessageAsync(outbound, payload))
+                : mailboxExecutor.submit(session.getId(), () -> processMessage(outbound, payload));
+        if (!accepted) {
+            sendBotMessage(outbound, "Too many pending messages. Please wait for the current answer.");
+        }
+    }
+
+    /**
+     * Process one chat message. Runs on the session's mailbox, never concurrently for the same session.
+     */
+    private void processMessage(WebSocketSession session, String payload) {
         try {
-            // Convert incoming JSON to a Map
-            String payload = message.getPayload();
-            Map<String, Object> incomingData = objectMapper.readValue(payload, Map.class);
-
-            // Extract the flowId and userResponse
-            String flowId = (String) incomingData.getOrDefault("flowId", "");
-            String userResponse = (String) incomingData.getOrDefault("userResponse", "");
-            System.out.println("Received message: " + userResponse + " for flowId: " + flowId);
-
-            // ---- NEW: store the user message in Redis ----
-            chatMemoryService.storeUserChat(session.getId(), "user", userResponse);
-
-            // Session-specific context
-            Map<String, Object> context = sessionContexts.computeIfAbsent(
-                    session.getId(),
-                    k -> new HashMap<>()
-            );
-
-            // If no flowId is provided, just echo back
-            if (flowId == null || flowId.isEmpty()) {
-                sendBotMessage(session, "No flowId provided. Echo: " + userResponse);
+            PendingTurn turn = prepareTurn(session, payload);
+            if (turn == null) {
                 return;
             }
+            String nextNodeId = flowExecutor.processNode(turn.flow(), turn.node(), turn.context(), session);
+            finishTurn(session, turn, nextNodeId);
+        } catch (Exception e) {
+            handleError(session, e);
+        }
+    }
 
-            // Load the Flow
-            Flow flow;
-            try {
-                flow = flowService.getFlow(flowId);
-            } catch (Exception e) {
-                sendBotMessage(session, "Error: Flow not found for ID: " + flowId);
-                return;
-            }
+    /**
+     * Reactive variant of {@link #processMessage}: the flow turn runs on the non-blocking executor
+     * and the mailbox stays busy until the returned future completes, without holding a thread.
+     */
+    private CompletableFuture<?> processMessageAsync(WebSocketSession session, String payload) {
+        PendingTurn turn;
+        try {
+            turn = prepareTurn(session, payload);
+        } catch (Exception e) {
+            handleError(session, e);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (turn == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return flowExecutor.executeTurnAsync(turn.flow(), turn.node(), turn.context(), session)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(record -> {
+                    try {
+                        finishTurn(session, turn, record.getNextNodeId());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .doOnError(e -> handleError(session, e))
+                .onErrorResume(e -> Mono.empty())
+                .toFuture();
+    }
 
-            // Store user input in context
-            context.put("userResponse", userResponse);
-
-            // Check if we already have a current node
-            String currentNodeId = (String) context.get("currentNodeId");
-
-            // If currentNodeId == null, this is the first user message for this flow
-            if (currentNodeId == null) {
-                // 1) Find the start node
-                Node startNode = flow.getNodes().stream()
-                        .filter(n -> "startNode".equals(n.getType()))
-                        .findFirst()
-                        .orElseThrow(() -> new IllegalArgumentException("Start node not found in flow"));
-
-                System.out.println("Skipping start node: " + startNode.getId());
-
-                // 2) Find the node after the start node
-                String nextNodeId = findFirstTargetNodeId(flow, startNode.getId());
-                if (nextNodeId == null) {
-                    sendBotMessage(session, "No next node found after start node. Flow halted.");
-                    return;
-                }
-
-                Node nextNode = flow.getNodes().stream()
-                        .filter(n -> n.getId().equals(nextNodeId))
-                        .findFirst()
-                        .orElseThrow(() -> new IllegalArgumentException("Next node not found: " + nextNodeId));
-
-                // 3) Immediately process that next node
-                System.out.println("Auto-processing node after start: " + nextNodeId);
-                String followingNodeId = flowExecutor.processNode(flow, nextNode, context, session);
-
-                // 4) If that node leads to another node, store it in the context
-                if (followingNodeId != null) {
-                    context.put("currentNodeId", followingNodeId);
-                    System.out.println("Flow paused at node: " + followingNodeId);
-                } else {
-                    // Flow ended right after the first real node
-                    sendBotMessage(session, "Flow completed right after the first node.");
-                }
+    /**
+     * Parse the message, store it and resolve the node to run.
+     * Returns null if the message was fully handled here (echo, unknown flow, halted flow).
+     */
+    @SuppressWarnings("unchecked")
+    private PendingTurn prepareTurn(WebSocketSession session, String payload) throws IOException {
+        // Convert incoming JSON to a Map
+        Map<String, Object> incomingData = objectMapper.readValue(payload, Map.class);
+
+        // Extract the flowId and userResponse
+        String flowId = (String) incomingData.getOrDefault("flowId", "");
+        String userResponse = (String) incomingData.getOrDefault("userResponse", "");
+        String conversationId = conversationId(session, incomingData.get("conversationId"));
+        System.out.println("Received message: " + userResponse + " for flowId: " + flowId);
+
+        // ---- NEW: store the user message in Redis ----
+        chatMemoryService.storeUserChat(conversationId, "user", userResponse);
+
+        // If no flowId is provided, just echo back
+        if (flowId == null || flowId.isEmpty()) {
+            sendBotMessage(session, "No flowId provided. Echo: " + userResponse);
+            return null;
+        }
 
-                return;
+        // Load the Flow
+        CompiledFlow flow;
+        try {
+            flow = flowService.getCompiledFlow(flowId);
+        } catch (Exception e) {
+            sendBotMessage(session, "Error: Flow not found for ID: " + flowId);
+            return null;
+        }
+
+        // Session-specific context (loaded from the session store, so any replica can continue it)
+        FlowSessionState state = flowSessionStore.load(sessionKey(conversationId));
+        Map<String, Object> context = state.getContext();
+
+        // Store user input in context
+        context.put("userResponse", userResponse);
+
+        // Check if we already have a current node
+        String currentNodeId = state.getCurrentNodeId();
+
+        // If currentNodeId == null, this is the first user message for this flow
+        if (currentNodeId == null) {
+            // 1) Find the start node
+            FlowNode startNode = flow.getStartNode();
+
+            System.out.println("Skipping start node: " + startNode.getId());
+
+            // 2) Find the node after the start node
+            List<String> startTargets = flow.getOutgoingTargets(startNode.getId());
+            if (startTargets.isEmpty() || startTargets.get(0) == null) {
+                sendBotMessage(session, "No next node found after start node. Flow halted.");
+                return null;
             }
+            String nextNodeId = startTargets.get(0);
 
-            // Otherwise, process the current node as usual
-            Node currentNode = flow.getNodes().stream()
-                    .filter(n -> n.getId().equals(currentNodeId))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalArgumentException("Node not found: " + currentNodeId));
+            FlowNode nextNode = flow.getNode(nextNodeId);
+            if (nextNode == null) {
+                throw new IllegalArgumentException("Next node not found: " + nextNodeId);
+            }
 
-            System.out.println("Processing current node: " + currentNodeId);
+            // 3) Immediately process that next node
+            System.out.println("Auto-processing node after start: " + nextNodeId);
+            return new PendingTurn(flow, nextNode, state, true);
+        }
 
-            String nextNodeId = flowExecutor.processNode(flow, currentNode, context, session);
+        // Otherwise, process the current node as usual
+        FlowNode currentNode = flow.getNode(currentNodeId);
+        if (currentNode == null) {
+            throw new IllegalArgumentException("Node not found: " + currentNodeId);
+        }
+
+        System.out.println("Processing current node: " + currentNodeId);
+        return new PendingTurn(flow, currentNode, state, false);
+    }
+
+    /**
+     * Remember where the flow paused, or tell the user that it ended, and save the session state.
+     */
+    private void finishTurn(WebSocketSession session, PendingTurn turn, String nextNodeId) throws IOException {
+        Map<String, Object> context = turn.context();
+        if (turn.firstTurn()) {
+            // 4) If that node leads to another node, store it in the context
             if (nextNodeId != null) {
                 context.put("currentNodeId", nextNodeId);
-                System.out.println("Moved to next node: " + nextNodeId);
+                System.out.println("Flow paused at node: " + nextNodeId);
             } else {
-                // Flow ended
-                sendBotMessage(session, "Flow completed.");
-                context.remove("currentNodeId");
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            try {
-                sendBotMessage(session, "Error handling message: " + e.getMessage());
-            } catch (IOException ioException) {
-                ioException.printStackTrace();
+                // Flow ended right after the first real node
+                sendBotMessage(session, "Flow completed right after the first node.");
             }
+        } else if (nextNodeId != null) {
+            context.put("currentNodeId", nextNodeId);
+            System.out.println("Moved to next node: " + nextNodeId);
+        } else {
+            // Flow ended
+            sendBotMessage(session, "Flow completed.");
+            context.remove("currentNodeId");
         }
+        flowSessionStore.save(turn.state());
     }
 
-
     /**
-     * Helper: find the first edge whose source == startNodeId, return target node ID
+     * The conversation of this connection, fixed by its first message: a conversationId sent by the client is
+     * resumed only if it is well-formed and has saved state, otherwise a new ID is issued and sent to the client.
      */
-    private String findFirstTargetNodeId(Flow flow, String startNodeId) {
-        if (flow.getEdges() == null || flow.getEdges().isEmpty()) {
-            return null;
+    private String conversationId(WebSocketSession session, Object requested) throws IOException {
+        if (session.getAttributes().get(ConversationIds.ATTRIBUTE) instanceof String assigned) {
+            return assigned;
+        }
+        String id;
+        if (requested instanceof String candidate && ConversationIds.isWellFormed(candidate)
+                && flowSessionStore.load(sessionKey(candidate)).getVersion() > 0) {
+            id = candidate;
+        } else {
+            id = ConversationIds.generate();
+        }
+        session.getAttributes().put(ConversationIds.ATTRIBUTE, id);
+
+        Map<String, String> frame = Map.of(
+                "sender", "system",
+                "type", "conversation",
+                "conversationId", id
+        );
+        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(frame)));
+        return id;
+    }
+
+    private static String sessionKey(String conversationId) {
+        return "conversation:" + conversationId;
+    }
+
+    private void handleError(WebSocketSession session, Throwable e) {
+        e.printStackTrace();
+        try {
+            sendBotMessage(session, "Error handling message: " + e.getMessage());
+        } catch (IOException ioException) {
+            ioException.printStackTrace();
         }
-        return flow.getEdges().stream()
-                .filter(e -> e.getSource().equals(startNodeId))
-                .map(Flow.Edge::getTarget)
-                .findFirst()
-                .orElse(null);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        mailboxExecutor.close(session.getId());
         sessions.remove(session.getId());
-        sessionContexts.remove(session.getId());
+        // The conversation stays in the store until its TTL, so that the client can reconnect to it
         System.out.println("WebSocket connection closed: " + session.getId());
     }
 
@@ -187,7 +297,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
      */
     private void sendBotMessage(WebSocketSession session, String text) throws IOException {
         // ---- Store bot message in Redis here as well (if you want) ----
-        chatMemoryService.storeUserChat(session.getId(), "assistant", text);
+        chatMemoryService.storeUserChat(ConversationIds.of(session), "assistant", text);
 
         Map<String, String> response = Map.of(
                 "sender", "bot",
@@ -195,4 +305,10 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         );
         session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
     }
+
+    private record PendingTurn(CompiledFlow flow, FlowNode node, FlowSessionState state, boolean firstTurn) {
+        Map<String, Object> context() {
+            return state.getContext();
+        }
+    }
 }
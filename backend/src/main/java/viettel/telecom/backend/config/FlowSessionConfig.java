@@ -0,0 +1,44 @@
+package viettel.telecom.backend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import redis.clients.jedis.JedisPooled;
+import viettel.telecom.backend.service.session.BoundedFlowSessionStore;
+import viettel.telecom.backend.service.session.FlowSessionStore;
+import viettel.telecom.backend.service.session.InMemoryFlowSessionStore;
+import viettel.telecom.backend.service.session.RedisFlowSessionStore;
+
+/**
+ * Selects the {@link FlowSessionStore} with flow.session.store:
+ *  - bounded : every context in Redis, hot ones also cached in heap (default)
+ *  - redis   : every context in Redis, shared by all replicas
+ *  - memory  : unbounded map in this JVM (development only)
+ */
+@Configuration
+public class FlowSessionConfig {
+
+    @Bean
+    public FlowSessionStore flowSessionStore(JedisPooled jedisPooled,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${flow.session.store:bounded}") String store,
+                                             @Value("${flow.session.ttl-seconds:86400}") long ttlSeconds,
+                                             @Value("${flow.session.compress-threshold-bytes:1024}") int compressThresholdBytes,
+                                             @Value("${flow.session.max-resident:10000}") long maxResident,
+                                             @Value("${flow.session.idle-ttl-seconds:900}") long idleTtlSeconds,
+                                             @Value("${flow.session.max-context-bytes:262144}") long maxContextBytes) {
+        switch (store.trim().toLowerCase()) {
+            case "memory":
+                return new InMemoryFlowSessionStore();
+            case "redis":
+                return new RedisFlowSessionStore(jedisPooled, ttlSeconds, compressThresholdBytes);
+            case "bounded":
+                return new BoundedFlowSessionStore(
+                        new RedisFlowSessionStore(jedisPooled, ttlSeconds, compressThresholdBytes),
+                        meterRegistry, maxResident, idleTtlSeconds, maxContextBytes);
+            default:
+                throw new IllegalArgumentException("Unknown flow.session.store: " + store);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package viettel.telecom.backend.config.nosql.redis;
 
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import redis.clients.jedis.ConnectionPoolConfig;
 import redis.clients.jedis.JedisPooled;
 
@@ -25,4 +29,21 @@ public class RedisConfig {
         // Return a JedisPooled instance with the configured pool settings
         return new JedisPooled(poolConfig, redisHost, redisPort);
     }
+
+    /**
+     * Non-blocking Redis client (Lettuce) used by the reactive flow execution path.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RedisClient lettuceRedisClient() {
+        return RedisClient.create(RedisURI.create("localhost", 6377));
+    }
+
+    /**
+     * A single multiplexed connection is enough for Lettuce; it is opened on first use.
+     */
+    @Bean(destroyMethod = "close")
+    @Lazy
+    public StatefulRedisConnection<String, String> lettuceConnection(RedisClient lettuceRedisClient) {
+        return lettuceRedisClient.connect();
+    }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import viettel.telecom.backend.entity.promptbuilder.Template;
 import viettel.telecom.backend.service.llm.LLMService;
 import viettel.telecom.backend.service.promptbuilder.TemplateService;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,9 +31,12 @@ public class AIModelController {
             @RequestParam String templateId,
             @RequestBody Map<String, Object> userInput) {
 
-        String systemPrompt = templateService.getTemplate(templateId).getSystemPrompt();
+        Template template = templateService.getTemplate(templateId);
+        String systemPrompt = template.getSystemPrompt();
         String userMessage = (String) userInput.get("message");
-        Map<String, Object> llmconfig = (Map<String, Object>) userInput.getOrDefault("llmconfig", Map.of());
+        Map<String, Object> llmconfig = new HashMap<>((Map<String, Object>) userInput.getOrDefault("llmconfig", Map.of()));
+        llmconfig.put("templateId", templateId);
+        llmconfig.put("semanticCacheThreshold", template.getSemanticCacheThreshold());
         if (modelType == null && llmconfig.get("aiModel") != null) {
             modelType = llmconfig.get("aiModel").toString();
         }
@@ -46,11 +50,13 @@ public class AIModelController {
             String modelType = (String) request.get("modelType");
             String templateId = (String) request.get("templateId");
             String message = (String) request.get("message");
-            Map<String, Object> llmconfig = (Map<String, Object>) request.getOrDefault("llmconfig", Map.of());
+            Template template = templateService.getTemplate(templateId);
+            Map<String, Object> llmconfig = new HashMap<>((Map<String, Object>) request.getOrDefault("llmconfig", Map.of()));
+            llmconfig.put("templateId", templateId);
+            llmconfig.put("semanticCacheThreshold", template.getSemanticCacheThreshold());
             if (modelType == null && llmconfig.get("aiModel") != null) {
                 modelType = llmconfig.get("aiModel").toString();
             }
-            Template template = templateService.getTemplate(templateId);
             String systemPrompt = template.getSystemPrompt();
             String combinedPrompt = systemPrompt + "\n" + message;
             Map<String, Object> response = llmService.processRequest(modelType, combinedPrompt, message, llmconfig);
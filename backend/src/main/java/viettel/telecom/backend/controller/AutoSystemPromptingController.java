@@ -77,6 +77,7 @@ public class AutoSystemPromptingController {
         config.put("temperature", 0);
         config.put("max_tokens", 1024);
         config.put("stream", false);  // If you want streaming, set true and handle differently
+        config.put("templateId", templateId);
 
         // 4) Send to LLM (DeepSeekHandler) using LLMService
         Map<String, Object> llmResponse = llmService.processRequest(
@@ -1,13 +1,19 @@
 package viettel.telecom.backend.controller;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.socket.WebSocketSession;
-import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.exception.FlowSessionConflictException;
 import viettel.telecom.backend.service.flow.FlowExecutor;
 import viettel.telecom.backend.service.flow.FlowService;
+import viettel.telecom.backend.service.flow.runtime.CompiledFlow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+import viettel.telecom.backend.service.session.ConversationIds;
+import viettel.telecom.backend.service.session.FlowSessionState;
+import viettel.telecom.backend.service.session.FlowSessionStore;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -17,34 +23,36 @@ public class ChatController {
     private final FlowService flowService;
     private final FlowExecutor flowExecutor;
 
-    // In-memory map storing contexts for demonstration (per flowId or per user).
-    // A production system would likely store contexts per session or in a DB.
-    private final Map<String, Map<String, Object>> flowContexts = new HashMap<>();
+    // Contexts are kept per flowId and sessionId in the session store; a sessionId is issued unless a
+    // well-formed, server-issued one is given.
+    private final FlowSessionStore flowSessionStore;
 
-    public ChatController(FlowService flowService, FlowExecutor flowExecutor) {
+    public ChatController(FlowService flowService, FlowExecutor flowExecutor, FlowSessionStore flowSessionStore) {
         this.flowService = flowService;
         this.flowExecutor = flowExecutor;
+        this.flowSessionStore = flowSessionStore;
     }
 
     /**
      * Execute one step in the flow. If there's no current node,
      * we skip the start node and set the next node as current.
      * Then we process that current node exactly once.
+     * Every response carries the sessionId to pass with the next call.
      */
     @PostMapping("/{flowId}/execute")
     public ResponseEntity<?> executeFlow(
             @PathVariable String flowId,
-            @RequestParam(required = false) String userResponse
+            @RequestParam(required = false) String userResponse,
+            @RequestParam(required = false) String sessionId
     ) {
+        sessionId = ConversationIds.resumeOrGenerate(sessionId);
         try {
             // 1) Fetch the flow
-            Flow flow = flowService.getFlow(flowId);
-            if (flow == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Flow not found"));
-            }
+            CompiledFlow flow = flowService.getCompiledFlow(flowId);
 
             // 2) Retrieve or initialize context
-            Map<String, Object> context = flowContexts.computeIfAbsent(flowId, k -> new HashMap<>());
+            FlowSessionState state = flowSessionStore.load(sessionKey(flowId, sessionId));
+            Map<String, Object> context = state.getContext();
 
             // If the user provided a response, store it
             if (userResponse != null) {
@@ -52,60 +60,67 @@ public class ChatController {
             }
 
             // 3) Check if we already have a currentNodeId
-            String currentNodeId = (String) context.get("currentNodeId");
+            String currentNodeId = state.getCurrentNodeId();
 
             if (currentNodeId == null) {
                 // -- Skip the start node --
-                Flow.Node startNode = flow.getNodes().stream()
-                        .filter(n -> "startNode".equals(n.getType()))
-                        .findFirst()
-                        .orElseThrow(() -> new IllegalArgumentException("Start node not found"));
+                FlowNode startNode = flow.getStartNode();
 
                 // Find the next node after startNode
-                String nextNodeId = flow.getEdges().stream()
-                        .filter(e -> e.getSource().equals(startNode.getId()))
-                        .map(Flow.Edge::getTarget)
-                        .findFirst()
-                        .orElse(null);
+                List<String> startTargets = flow.getOutgoingTargets(startNode.getId());
+                String nextNodeId = startTargets.isEmpty() ? null : startTargets.get(0);
 
                 if (nextNodeId == null) {
-                    return ResponseEntity.ok(Map.of("message", "No node after start node. Flow halted."));
+                    return ResponseEntity.ok(Map.of("message", "No node after start node. Flow halted.",
+                            "sessionId", sessionId));
                 }
 
                 // We don't process it immediately; we set it as current
                 currentNodeId = nextNodeId;
                 context.put("currentNodeId", currentNodeId);
+                flowSessionStore.save(state);
 
                 return ResponseEntity.ok(Map.of(
                         "message", "Flow is ready at the next node. Please submit userResponse again to process.",
-                        "currentNodeId", currentNodeId
+                        "currentNodeId", currentNodeId,
+                        "sessionId", sessionId
                 ));
             }
 
             // 4) Process the current node using FlowExecutor
             String finalCurrentNodeId = currentNodeId;
-            Flow.Node currentNode = flow.getNodes().stream()
-                    .filter(n -> n.getId().equals(finalCurrentNodeId))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalArgumentException("Node not found: " + finalCurrentNodeId));
+            FlowNode currentNode = flow.getNode(finalCurrentNodeId);
+            if (currentNode == null) {
+                throw new IllegalArgumentException("Node not found: " + finalCurrentNodeId);
+            }
 
             // Passing null for WebSocketSession. This is an HTTP call.
             String nextNodeId = flowExecutor.processNode(flow, currentNode, context, null);
 
             if (nextNodeId != null) {
                 context.put("currentNodeId", nextNodeId);
+                flowSessionStore.save(state);
                 return ResponseEntity.ok(Map.of(
                         "message", "Node processed successfully",
-                        "currentNodeId", nextNodeId
+                        "currentNodeId", nextNodeId,
+                        "sessionId", sessionId
                 ));
             } else {
                 // Flow ended
                 context.remove("currentNodeId");
-                return ResponseEntity.ok(Map.of("message", "Flow execution completed."));
+                flowSessionStore.save(state);
+                return ResponseEntity.ok(Map.of("message", "Flow execution completed.", "sessionId", sessionId));
             }
 
+        } catch (FlowSessionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage(), "sessionId", sessionId));
         } catch (Exception e) {
-            return ResponseEntity.internalServerError().body(Map.of("error", e.getMessage()));
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage()),
+                    "sessionId", sessionId));
         }
     }
+
+    private static String sessionKey(String flowId, String sessionId) {
+        return "chat:" + flowId + ":" + sessionId;
+    }
 }
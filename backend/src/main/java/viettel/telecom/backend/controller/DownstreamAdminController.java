@@ -0,0 +1,38 @@
+package viettel.telecom.backend.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import viettel.telecom.backend.service.flow.DownstreamGuard;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/downstreams")
+public class DownstreamAdminController {
+
+    private final DownstreamGuard downstreamGuard;
+
+    public DownstreamAdminController(DownstreamGuard downstreamGuard) {
+        this.downstreamGuard = downstreamGuard;
+    }
+
+    /**
+     * Circuit breaker and bulkhead state of every data node host.
+     */
+    @GetMapping
+    public ResponseEntity<List<DownstreamGuard.DownstreamStatus>> getDownstreams() {
+        return ResponseEntity.ok(downstreamGuard.status());
+    }
+
+    /**
+     * Close the circuit breaker of a host, e.g. once it is known to be healthy again.
+     */
+    @PostMapping("/{host}/reset")
+    public ResponseEntity<Void> resetCircuit(@PathVariable String host) {
+        return downstreamGuard.reset(host) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
@@ -6,9 +6,16 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import viettel.telecom.backend.entity.flow.Flow;
 import viettel.telecom.backend.entity.flow.FlowSummary;
+import viettel.telecom.backend.exception.FlowSessionConflictException;
 import viettel.telecom.backend.service.flow.FlowExecutor;
 import viettel.telecom.backend.service.flow.FlowService;
+import viettel.telecom.backend.service.flow.runtime.CompiledFlow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+import viettel.telecom.backend.service.flow.runtime.FlowTurnRecord;
 import viettel.telecom.backend.service.logging.LogManagementService;
+import viettel.telecom.backend.service.session.ConversationIds;
+import viettel.telecom.backend.service.session.FlowSessionState;
+import viettel.telecom.backend.service.session.FlowSessionStore;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -24,18 +31,20 @@ public class FlowController {
     private final LogManagementService logService;
 
     /**
-     * Simple in-memory map to store context per flowId (demo only).
-     * In a real system, you'd likely track context per user or session, not per flowId.
+     * Execution contexts, per flowId and the "sessionId" of the request body. The sessionId is server-issued
+     * ({@link ConversationIds}): a missing or malformed one is replaced by a new ID, returned in every response.
      */
-    private final Map<String, Map<String, Object>> flowContexts = new HashMap<>();
+    private final FlowSessionStore flowSessionStore;
 
     @Autowired
     public FlowController(FlowService flowService,
                           FlowExecutor flowExecutor,
-                          LogManagementService logService) {
+                          LogManagementService logService,
+                          FlowSessionStore flowSessionStore) {
         this.flowService = flowService;
         this.flowExecutor = flowExecutor;
         this.logService = logService;
+        this.flowSessionStore = flowSessionStore;
     }
 
     // ================ 1) CREATE  ================
@@ -171,15 +180,15 @@ public class FlowController {
             @PathVariable String flowId,
             @RequestBody(required = false) Map<String, Object> requestBody
     ) {
+        // Each caller gets its own context; a sessionId is issued unless a well-formed one is sent back
+        String sessionId = ConversationIds.resumeOrGenerate(requestBody != null ? requestBody.get("sessionId") : null);
         try {
             // 1) Fetch the flow
-            Flow flow = flowService.getFlow(flowId);
-            if (flow == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Flow not found"));
-            }
+            CompiledFlow flow = flowService.getCompiledFlow(flowId);
 
             // 2) Retrieve or create flow-specific context
-            Map<String, Object> context = flowContexts.computeIfAbsent(flowId, k -> new HashMap<>());
+            FlowSessionState state = flowSessionStore.load(sessionKey(flowId, sessionId));
+            Map<String, Object> context = state.getContext();
 
             // 3) If the user provided something (e.g. "userResponse"), store it
             if (requestBody != null && requestBody.get("userResponse") != null) {
@@ -187,50 +196,52 @@ public class FlowController {
             }
 
             // 4) Check if we already have a currentNodeId
-            String currentNodeId = (String) context.get("currentNodeId");
+            String currentNodeId = state.getCurrentNodeId();
             if (currentNodeId == null) {
                 // ------------------------------------------------------------
                 // Skip the start node, BUT auto-execute the next node
                 // ------------------------------------------------------------
-                Flow.Node startNode = flow.getNodes().stream()
-                        .filter(n -> "startNode".equals(n.getType()))
-                        .findFirst()
-                        .orElseThrow(() -> new IllegalArgumentException("Start node not found"));
+                FlowNode startNode = flow.getStartNode();
 
                 // find the node after the start node
-                String nextNodeId = flow.getEdges().stream()
-                        .filter(e -> e.getSource().equals(startNode.getId()))
-                        .map(Flow.Edge::getTarget)
-                        .findFirst()
-                        .orElse(null);
+                List<String> startTargets = flow.getOutgoingTargets(startNode.getId());
+                String nextNodeId = startTargets.isEmpty() ? null : startTargets.get(0);
 
                 if (nextNodeId == null) {
-                    return ResponseEntity.ok(Map.of("message", "No node after start node. Flow halted."));
+                    return ResponseEntity.ok(Map.of("message", "No node after start node. Flow halted.",
+                            "sessionId", sessionId));
                 }
 
                 // Immediately process that next node
-                Flow.Node nodeAfterStart = flow.getNodes().stream()
-                        .filter(n -> n.getId().equals(nextNodeId))
-                        .findFirst()
-                        .orElseThrow(() -> new IllegalArgumentException("Node after start not found"));
+                FlowNode nodeAfterStart = flow.getNode(nextNodeId);
+                if (nodeAfterStart == null) {
+                    throw new IllegalArgumentException("Node after start not found");
+                }
 
                 // Single-step process the node after start
-                String followingNodeId = flowExecutor.processNode(flow, nodeAfterStart, context, null);
+                FlowTurnRecord turn = flowExecutor.executeTurn(flow, nodeAfterStart, context, null);
+                String followingNodeId = turn.getNextNodeId();
 
                 // If the node after start leads to another node, store it in context
                 if (followingNodeId == null) {
                     // Flow ended right after the first node
+                    flowSessionStore.save(state);
                     return ResponseEntity.ok(Map.of(
                             "message", "Flow completed immediately after the first node",
-                            "processedNodeId", nextNodeId
+                            "processedNodeId", nextNodeId,
+                            "execution", turn,
+                            "sessionId", sessionId
                     ));
                 } else {
                     // We have a next node after the node-after-start
                     context.put("currentNodeId", followingNodeId);
+                    flowSessionStore.save(state);
                     return ResponseEntity.ok(Map.of(
                             "message", "Auto-executed node after start. Flow paused at node: " + followingNodeId,
                             "processedNodeId", nextNodeId,
-                            "currentNodeId", followingNodeId
+                            "currentNodeId", followingNodeId,
+                            "execution", turn,
+                            "sessionId", sessionId
                     ));
                 }
             }
@@ -238,37 +249,54 @@ public class FlowController {
             // ---------------------------------------------------------------
             // 5) If we already have a currentNodeId, process that node (1 step)
             // ---------------------------------------------------------------
-            Flow.Node currentNode = flow.getNodes().stream()
-                    .filter(n -> n.getId().equals(currentNodeId))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalArgumentException("Node not found: " + currentNodeId));
+            FlowNode currentNode = flow.getNode(currentNodeId);
+            if (currentNode == null) {
+                throw new IllegalArgumentException("Node not found: " + currentNodeId);
+            }
 
             // pass null for WebSocketSession
-            String nextNodeId = flowExecutor.processNode(flow, currentNode, context, null);
+            FlowTurnRecord turn = flowExecutor.executeTurn(flow, currentNode, context, null);
+            String nextNodeId = turn.getNextNodeId();
 
             if (nextNodeId == null) {
                 // Flow ended
                 context.remove("currentNodeId");
+                flowSessionStore.save(state);
                 return ResponseEntity.ok(Map.of(
-                        "message", "Flow completed at node: " + currentNodeId
+                        "message", "Flow completed at node: " + currentNodeId,
+                        "execution", turn,
+                        "sessionId", sessionId
                 ));
             } else {
                 context.put("currentNodeId", nextNodeId);
+                flowSessionStore.save(state);
                 return ResponseEntity.ok(Map.of(
                         "message", "Node processed successfully. Moved to node " + nextNodeId,
                         "previousNodeId", currentNodeId,
-                        "currentNodeId", nextNodeId
+                        "currentNodeId", nextNodeId,
+                        "execution", turn,
+                        "sessionId", sessionId
                 ));
             }
 
+        } catch (FlowSessionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "error", String.valueOf(e.getMessage()),
+                    "sessionId", sessionId,
+                    "timestamp", LocalDateTime.now()
+            ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
-                    "error", e.getMessage(),
+                    "error", String.valueOf(e.getMessage()),
+                    "sessionId", sessionId,
                     "timestamp", LocalDateTime.now()
             ));
         }
     }
 
+    private static String sessionKey(String flowId, String sessionId) {
+        return "flow:" + flowId + ":" + sessionId;
+    }
 
     // ================ 8) LOGS (Optional) ================
     @GetMapping("/{flowId}/logs")
@@ -0,0 +1,38 @@
+package viettel.telecom.backend.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import viettel.telecom.backend.service.llm.LlmRouter;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/llm-routes")
+public class LlmRoutingAdminController {
+
+    private final LlmRouter llmRouter;
+
+    public LlmRoutingAdminController(LlmRouter llmRouter) {
+        this.llmRouter = llmRouter;
+    }
+
+    /**
+     * Routing table: live latency, throughput, error rate and circuit state of every provider and model.
+     */
+    @GetMapping
+    public ResponseEntity<List<LlmRouter.RouteStatus>> getRoutes() {
+        return ResponseEntity.ok(llmRouter.status());
+    }
+
+    /**
+     * Close the circuit breaker of a provider, e.g. once it is known to be healthy again.
+     */
+    @PostMapping("/{provider}/reset")
+    public ResponseEntity<Void> resetCircuit(@PathVariable String provider) {
+        return llmRouter.reset(provider) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
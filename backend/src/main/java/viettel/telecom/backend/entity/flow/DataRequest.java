@@ -0,0 +1,33 @@
+package viettel.telecom.backend.entity.flow;
+
+import lombok.Data;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.util.Map;
+
+/**
+ * One request of a scatter-gather data node. Each request has:
+ *  - a name (the context key its response is stored under)
+ *  - a requestUrl and requestBody (placeholders are resolved from the context)
+ *  - an optional flag: a failed optional request does not send the node to onErrorNextNode
+ *  - an optional responseProjection (output name => JSON pointer), as on a single data node
+ */
+@Data
+public class DataRequest {
+
+    @Field(type = FieldType.Keyword)
+    private String name;          // e.g., "customerProfile"
+
+    @Field(type = FieldType.Text)
+    private String requestUrl;
+
+    @Field(type = FieldType.Object)
+    private Map<String, Object> requestBody;
+
+    @Field(type = FieldType.Boolean)
+    private Boolean optional;
+
+    @Field(type = FieldType.Object)
+    private Map<String, String> responseProjection;
+}
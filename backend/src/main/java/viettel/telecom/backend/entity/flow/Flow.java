@@ -140,6 +140,55 @@ public class Flow {
             @Field(type = FieldType.Object)
             private Map<String, Object> requestBody;
 
+            /**
+             * SCATTER-GATHER DATA NODE:
+             *   - Requests run concurrently within requestTimeoutMs; each response is stored under its name
+             *   - All required requests succeed => onSuccessNextNode, otherwise onErrorNextNode
+             */
+            @Field(type = FieldType.Nested)
+            private List<DataRequest> requests;
+
+            /**
+             * DATA NODE response projection (optional):
+             *   - output name => JSON pointer into the response, e.g. "tier" => "/customer/tier"
+             *   - only the selected fields are kept in the context
+             */
+            @Field(type = FieldType.Object)
+            private Map<String, String> responseProjection;
+
+            /**
+             * DATA NODE deadlines (optional, defaults in flow.data.http.*):
+             *   - connectTimeoutMs: opening a new connection
+             *   - readTimeoutMs: waiting for the response
+             *   - requestTimeoutMs: the whole call
+             */
+            @Field(type = FieldType.Integer)
+            private Integer connectTimeoutMs;
+
+            @Field(type = FieldType.Long)
+            private Long readTimeoutMs;
+
+            @Field(type = FieldType.Long)
+            private Long requestTimeoutMs;
+
+            /**
+             * DATA NODE retries: true if calling the API twice is harmless (e.g. a lookup),
+             * so failed calls may be retried (see flow.data.resilience.retry.*)
+             */
+            @Field(type = FieldType.Boolean)
+            private Boolean idempotent;
+
+            /**
+             * DATA NODE response cache (optional, for idempotent lookups):
+             *   - cacheTtlSeconds: how long a response is served from cache; unset or 0 disables caching
+             *   - cacheStaleSeconds: how long after that it is still served while being refreshed
+             */
+            @Field(type = FieldType.Long)
+            private Long cacheTtlSeconds;
+
+            @Field(type = FieldType.Long)
+            private Long cacheStaleSeconds;
+
             @Field(type = FieldType.Text)
             private String onSuccessNextNode;
 
@@ -149,6 +198,21 @@ public class Flow {
             @Field(type = FieldType.Object)
             private SelectedTemplate selectedTemplate;
 
+            /**
+             * FORK/JOIN (on a "joinNode"):
+             *   - joinPolicy: "all" (default), "firstSuccess" or "quorum"
+             *   - joinQuorum: branches that must succeed for "quorum"
+             *   - joinTimeoutMs: how long the fork waits for its branches
+             */
+            @Field(type = FieldType.Keyword)
+            private String joinPolicy;
+
+            @Field(type = FieldType.Integer)
+            private Integer joinQuorum;
+
+            @Field(type = FieldType.Long)
+            private Long joinTimeoutMs;
+
             @Data
             @JsonIgnoreProperties(ignoreUnknown = true)
             public static class LLMConfig {
@@ -160,6 +224,15 @@ public class Flow {
                 private Integer max_tokens;
                 @Field(type = FieldType.Boolean)
                 private Boolean stream;
+                // Cache responses even if temperature is not 0 (see LlmResponseCache)
+                @Field(type = FieldType.Boolean)
+                private Boolean cache;
+                // Order in the provider's rate limit queue, higher first (see LlmRateLimiter)
+                @Field(type = FieldType.Integer)
+                private Integer priority;
+                // Equivalent models the call may be routed to instead of aiModel (see LlmRouter)
+                @Field(type = FieldType.Keyword)
+                private List<String> allowedModels;
             }
 
             @Data
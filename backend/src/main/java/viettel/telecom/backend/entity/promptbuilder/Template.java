@@ -62,6 +62,10 @@ public class Template {
     @NotNull(message = "LLM configuration cannot be null")
     private LLMConfig llmconfig;
 
+    // Minimum cosine similarity for answering from the semantic cache; null keeps the template out of it
+    @Field(type = FieldType.Double)
+    private Double semanticCacheThreshold;
+
     @Data
     public static class FieldMapping {
         @Field(type = FieldType.Keyword)
@@ -0,0 +1,11 @@
+package viettel.telecom.backend.exception;
+
+/**
+ * Thrown without calling a downstream when its circuit breaker is open or its bulkhead has no free slot:
+ * a data node host, or every LLM provider of a failover chain.
+ */
+public class DownstreamUnavailableException extends RuntimeException {
+    public DownstreamUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package viettel.telecom.backend.exception;
+
+/**
+ * Thrown when a single flow turn exceeds its step budget or deadline
+ * (e.g. an automated cycle between data/logic/LLM nodes).
+ */
+public class FlowExecutionLimitException extends RuntimeException {
+    public FlowExecutionLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package viettel.telecom.backend.exception;
+
+/**
+ * Thrown when the branches of a fork node do not satisfy their join policy
+ * (a branch failed, too few branches succeeded, or the join timed out).
+ */
+public class FlowJoinException extends RuntimeException {
+    public FlowJoinException(String message) {
+        super(message);
+    }
+
+    public FlowJoinException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
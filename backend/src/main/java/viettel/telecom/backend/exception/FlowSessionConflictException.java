@@ -0,0 +1,11 @@
+package viettel.telecom.backend.exception;
+
+/**
+ * Thrown when a flow session was changed by someone else (e.g. another replica)
+ * between loading and saving it.
+ */
+public class FlowSessionConflictException extends RuntimeException {
+    public FlowSessionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package viettel.telecom.backend.exception;
+
+/**
+ * Thrown when an LLM call could not get through its provider's rate limit: the wait queue was full,
+ * the call waited longer than llm.rate-limit.max-wait-millis, or the provider kept answering 429.
+ */
+public class LlmRateLimitException extends RuntimeException {
+    public LlmRateLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,145 @@
+package viettel.telecom.backend.service.flow;
+
+/**
+ * Count-based circuit breaker for one downstream: a data node host or an LLM provider.
+ *
+ * CLOSED: calls go through; the outcomes of the last windowSize calls are kept. Once at least minimumCalls
+ * are recorded and the failure rate reaches failureRateThreshold percent, the breaker opens.
+ * OPEN: calls are rejected until openMillis have passed, then the breaker is half-open.
+ * HALF_OPEN: up to halfOpenCalls trial calls go through; if they all succeed the breaker closes,
+ * the first failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, long openMillis, int halfOpenCalls) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * @return true if a call may go through now; it must then be followed by exactly one
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #release()}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    /**
+     * Give back a permit from {@link #tryAcquire()} without making the call.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+            halfOpenPermits++;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCount) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Close the breaker and forget recorded outcomes (used from the admin endpoint).
+     */
+    public synchronized void reset() {
+        close();
+    }
+
+    public synchronized Snapshot snapshot() {
+        State current = state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis
+                ? State.HALF_OPEN : state;
+        double failureRate = windowCount == 0 ? 0 : 100.0 * windowFailures / windowCount;
+        Long openUntil = state == State.OPEN ? openedAt + openMillis : null;
+        return new Snapshot(current, failureRate, windowCount, openUntil);
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    /**
+     * @param failureRate   percentage of failed calls in the window
+     * @param openUntil     epoch millis at which an open breaker lets trial calls through, null if not open
+     */
+    public record Snapshot(State state, double failureRate, int bufferedCalls, Long openUntil) {
+    }
+}
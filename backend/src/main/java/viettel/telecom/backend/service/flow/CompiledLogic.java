@@ -0,0 +1,85 @@
+package viettel.telecom.backend.service.flow;
+
+import viettel.telecom.backend.entity.flow.LogicCase;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logic cases of one "logicNode", compiled by {@link LogicNodeCompiler} into ordered segments.
+ *
+ * Consecutive cases that only compare one context key with string literals become a single
+ * hash lookup; other cases are evaluated one by one as SpEL. Segments are tried in case order,
+ * so the first matching case still wins.
+ */
+public class CompiledLogic {
+
+    /**
+     * One or more consecutive logic cases.
+     */
+    interface Segment {
+        /**
+         * @return the first matching case of this segment, or null if none matches.
+         */
+        LogicCase match(Map<String, Object> context, ConditionEvaluator evaluator);
+    }
+
+    /**
+     * Cases of the form key == 'literal' (or an "in" check) on the same key, as value => first case.
+     */
+    static final class TableSegment implements Segment {
+        private final String key;
+        private final Map<String, LogicCase> casesByValue;
+
+        TableSegment(String key, Map<String, LogicCase> casesByValue) {
+            this.key = key;
+            this.casesByValue = casesByValue;
+        }
+
+        @Override
+        public LogicCase match(Map<String, Object> context, ConditionEvaluator evaluator) {
+            Object value = context.get(key);
+            // SpEL's == with a string literal only holds for strings
+            return value instanceof String ? casesByValue.get(value) : null;
+        }
+
+        int size() {
+            return casesByValue.size();
+        }
+    }
+
+    /**
+     * A case that needs the general-purpose evaluator.
+     */
+    static final class ExpressionSegment implements Segment {
+        private final LogicCase logicCase;
+
+        ExpressionSegment(LogicCase logicCase) {
+            this.logicCase = logicCase;
+        }
+
+        @Override
+        public LogicCase match(Map<String, Object> context, ConditionEvaluator evaluator) {
+            return evaluator.evaluate(logicCase.getExpression(), context) ? logicCase : null;
+        }
+    }
+
+    private final List<Segment> segments;
+
+    CompiledLogic(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Returns the first case whose expression matches the context, or null if none does.
+     */
+    public LogicCase match(Map<String, Object> context, ConditionEvaluator evaluator) {
+        for (Segment segment : segments) {
+            LogicCase matched = segment.match(context, evaluator);
+            if (matched != null) {
+                return matched;
+            }
+        }
+        return null;
+    }
+}
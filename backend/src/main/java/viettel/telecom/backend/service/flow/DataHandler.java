@@ -1,37 +1,55 @@
 package viettel.telecom.backend.service.flow;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.socket.WebSocketSession;
-import viettel.telecom.backend.entity.flow.Flow;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import viettel.telecom.backend.entity.flow.DataRequest;
+import viettel.telecom.backend.exception.DownstreamUnavailableException;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
 import viettel.telecom.backend.service.redis.memory.ChatMemoryService;
+import viettel.telecom.backend.service.session.ConversationIds;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 @Slf4j
 public class DataHandler {
 
-    private final RestTemplate restTemplate;
     private final ChatMemoryService chatMemoryService;
     private final MyTokenService myTokenService;   // <-- injected
+    private final DataHttpClient dataHttpClient;
+    private final DataResponseCache responseCache;
+    private final DownstreamGuard downstreamGuard;
+    private final PlaceholderTemplateCache placeholderTemplates;
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public DataHandler(RestTemplate restTemplate,
-                       ChatMemoryService chatMemoryService,
-                       MyTokenService myTokenService) {
-        this.restTemplate = restTemplate;
+    // Compiled response projections by definition; definitions are few and live as long as their flows
+    private final Cache<Map<String, String>, Optional<ResponseProjection>> projections = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .build();
+
+    public DataHandler(ChatMemoryService chatMemoryService,
+                       MyTokenService myTokenService,
+                       DataHttpClient dataHttpClient,
+                       DataResponseCache responseCache,
+                       DownstreamGuard downstreamGuard,
+                       PlaceholderTemplateCache placeholderTemplates) {
+        this.dataHttpClient = dataHttpClient;
+        this.responseCache = responseCache;
+        this.downstreamGuard = downstreamGuard;
+        this.placeholderTemplates = placeholderTemplates;
         this.chatMemoryService = chatMemoryService;
         this.myTokenService = myTokenService;
     }
 
-    public String handle(Flow.Node node, Map<String, Object> context, WebSocketSession session) {
-        String successNode = node.getData() != null ? node.getData().getOnSuccessNextNode() : null;
+    public String handle(FlowNode node, Map<String, Object> context, WebSocketSession session) {
         String errorNode = node.getData() != null ? node.getData().getOnErrorNextNode() : null;
 
         // 1) Get the sessionId from the WebSocket
@@ -39,32 +57,192 @@ public class DataHandler {
             log.warn("No WebSocketSession provided; cannot proceed.");
             return fallbackNode(errorNode);
         }
-        String sessionId = session.getId();
+        String sessionId = ConversationIds.of(session);
 
         // 2) Load the last chat message from Redis
         String lastJson = chatMemoryService.getLastChatMessage(sessionId);
-        if (lastJson == null) {
-            log.warn("No last chat message found for sessionId={}", sessionId);
+        PreparedRequest request = prepareRequest(node, lastJson, context, sessionId);
+        if (request == null) {
             return fallbackNode(errorNode);
         }
 
-        // 3) Parse top-level record => {role, timestamp, content}
-        Map<String, Object> messageMap;
+        // 8) Perform the POST request (pooled client, bounded by the node's deadlines; cached if enabled)
         try {
-            messageMap = mapper.readValue(lastJson, Map.class);
-        } catch (Exception e) {
-            log.warn("Failed to parse last message JSON. sessionId={}, error={}", sessionId, e.getMessage());
+            Map<String, Object> responseData = post(node, request).block();
+            log.info("POST success => body={}", responseData);
+            return applyResponse(node, responseData, context);
+
+        } catch (Exception ex) {
+            logPostFailure(request, sessionId, ex);
             return fallbackNode(errorNode);
         }
+    }
 
-        // 4) content might be a string or a map
-        Object contentObj = messageMap.get("content");
-        Map<String, Object> contentMap = parseAsMap(contentObj);
+    /**
+     * Non-blocking variant of {@link #handle}: the last chat message is read with the async Redis client
+     * and the POST runs on the non-blocking data client.
+     */
+    public Mono<String> handleAsync(FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        String errorNode = node.getData() != null ? node.getData().getOnErrorNextNode() : null;
+
+        if (session == null) {
+            log.warn("No WebSocketSession provided; cannot proceed.");
+            return Mono.just(fallbackNode(errorNode));
+        }
+        String sessionId = ConversationIds.of(session);
+
+        return chatMemoryService.getLastChatMessageAsync(sessionId)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(lastJson -> {
+                    PreparedRequest request = prepareRequest(node, lastJson.orElse(null), context, sessionId);
+                    if (request == null) {
+                        return Mono.just(fallbackNode(errorNode));
+                    }
+                    return post(node, request)
+                            .map(Optional::of)
+                            .defaultIfEmpty(Optional.empty())
+                            .map(responseData -> {
+                                log.info("POST success => body={}", responseData.orElse(null));
+                                return applyResponse(node, responseData.orElse(null), context);
+                            })
+                            .onErrorResume(ex -> {
+                                logPostFailure(request, sessionId, ex);
+                                return Mono.just(fallbackNode(errorNode));
+                            });
+                });
+    }
+
+    /**
+     * True if the node is a scatter-gather data node, i.e. it defines a list of requests.
+     */
+    public boolean isScatterGather(FlowNode node) {
+        return node.getData() != null && node.getData().getRequests() != null
+                && !node.getData().getRequests().isEmpty();
+    }
+
+    /**
+     * Run the requests of a scatter-gather data node concurrently, within one deadline (the node's request timeout).
+     *
+     * The last chat message is read once and merged into the context for placeholder resolution, as for a
+     * single data node. Each successful response is stored as JSON under the request's name, all of them
+     * together in "lastResponse", and failures in "dataErrors" (name => message).
+     *
+     * @return onSuccessNextNode if every required request succeeded, otherwise onErrorNextNode;
+     *         null if the matching one is not set, so the caller follows the node's edges
+     */
+    public Mono<String> gather(FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        String sessionId = ConversationIds.of(session);
+        Mono<Optional<String>> lastMessage = sessionId == null
+                ? Mono.just(Optional.empty())
+                : chatMemoryService.getLastChatMessageAsync(sessionId)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty());
+
+        return lastMessage.flatMap(lastJson -> {
+            Map<String, Object> contentMap = lastMessageContent(lastJson.orElse(null), sessionId);
+            if (contentMap != null) {
+                context.putAll(contentMap);
+            }
+            String bearerToken = myTokenService.getBearerToken();
+            Duration deadline = dataHttpClient.requestTimeout(node);
+
+            List<DataRequest> requests = node.getData().getRequests();
+            List<Mono<GatherResult>> calls = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                DataRequest spec = requests.get(i);
+                String name = spec.getName() != null && !spec.getName().isEmpty() ? spec.getName() : "response" + i;
+                String url = placeholderTemplates.resolve(spec.getRequestUrl(), context);
+                Map<String, Object> body = spec.getRequestBody() != null
+                        ? placeholderTemplates.resolve(spec.getRequestBody(), context)
+                        : new HashMap<>();
+                // All calls start together, so the same timeout on each is one shared deadline
+                ResponseProjection projection = projection(spec.getResponseProjection(), node);
+                calls.add(post(node, new PreparedRequest(url, body, bearerToken, projection))
+                        .timeout(deadline)
+                        .map(response -> new GatherResult(name, spec, response, null))
+                        .defaultIfEmpty(new GatherResult(name, spec, null, null))
+                        .onErrorResume(e -> Mono.just(new GatherResult(name, spec, null, e))));
+            }
+            return Flux.mergeSequential(calls).collectList()
+                    .map(results -> applyGathered(node, results, context));
+        });
+    }
+
+    private String applyGathered(FlowNode node, List<GatherResult> results, Map<String, Object> context) {
+        Map<String, Object> responses = new LinkedHashMap<>();
+        Map<String, String> errors = new LinkedHashMap<>();
+        boolean requiredFailed = false;
+
+        for (GatherResult result : results) {
+            if (result.error() != null) {
+                log.warn("Data node {}: request '{}' failed: {}", node.getId(), result.name(), result.error().toString());
+                errors.put(result.name(), result.error().toString());
+                requiredFailed |= !Boolean.TRUE.equals(result.spec().getOptional());
+                continue;
+            }
+            responses.put(result.name(), result.response());
+            try {
+                context.put(result.name(), mapper.writeValueAsString(result.response()));
+            } catch (JsonProcessingException e) {
+                log.warn("Failed to serialize response '{}' for node {}: {}", result.name(), node.getId(), e.getMessage());
+            }
+        }
+
+        try {
+            context.put("lastResponse", mapper.writeValueAsString(responses));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize responses for node {}: {}", node.getId(), e.getMessage());
+        }
+        if (errors.isEmpty()) {
+            context.remove("dataErrors");
+        } else {
+            context.put("dataErrors", errors);
+        }
+        log.info("Data node {} gathered {} of {} responses", node.getId(), responses.size(), results.size());
+
+        String next = requiredFailed ? node.getData().getOnErrorNextNode() : node.getData().getOnSuccessNextNode();
+        return next != null && !next.isEmpty() ? next : null;
+    }
+
+    /**
+     * POST the prepared request, through the response cache when the node enables it and behind the
+     * downstream's bulkhead and circuit breaker. Idempotent nodes are retried on downstream failures.
+     */
+    private Mono<Map<String, Object>> post(FlowNode node, PreparedRequest request) {
+        boolean idempotent = node.getData() != null && Boolean.TRUE.equals(node.getData().getIdempotent());
+        return responseCache.post(node, request.url(), request.body(), request.bearerToken(), request.projection(),
+                () -> downstreamGuard.execute(request.url(), idempotent,
+                        () -> dataHttpClient.post(request.url(), request.body(), request.bearerToken(), node,
+                                request.projection())));
+    }
+
+    /**
+     * Compiled projection for a responseProjection definition, or null to keep the whole response.
+     * An invalid definition is logged and ignored.
+     */
+    private ResponseProjection projection(Map<String, String> fields, FlowNode node) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        return projections.get(fields, definition -> {
+            try {
+                return Optional.of(ResponseProjection.compile(definition));
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid responseProjection on node {}: {}", node.getId(), e.getMessage());
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
 
-        // If we fail to parse the content as JSON, we can still do a fallback
+    /**
+     * Steps 3-7: parse the last chat message, merge its content into the context and resolve
+     * the request URL/body. Returns null if no request can be built.
+     */
+    private PreparedRequest prepareRequest(FlowNode node, String lastJson, Map<String, Object> context, String sessionId) {
+        Map<String, Object> contentMap = lastMessageContent(lastJson, sessionId);
         if (contentMap == null) {
-            log.info("Content is not JSON; skipping. sessionId={}", sessionId);
-            return fallbackNode(errorNode);
+            return null;
         }
 
         // 5) Extract requestUrl / requestBody from contentMap
@@ -74,7 +252,7 @@ public class DataHandler {
 
         if (requestUrl == null) {
             log.error("No requestUrl found in contentMap. sessionId={}", sessionId);
-            return fallbackNode(errorNode);
+            return null;
         }
 
         // Attempt to parse requestBody as a map
@@ -90,61 +268,77 @@ public class DataHandler {
         }
 
         // 6) Resolve placeholders in the URL and body
-        String resolvedUrl = resolvePlaceholdersInString(requestUrl, context);
-        Map<String, Object> resolvedBody = resolvePlaceholdersInMap(rawBody, context);
+        String resolvedUrl = placeholderTemplates.resolve(requestUrl, context);
+        Map<String, Object> resolvedBody = placeholderTemplates.resolve(rawBody, context);
 
         // 7) Get the Bearer token from MyTokenService (the LLM does NOT provide it)
         String bearerToken = myTokenService.getBearerToken();
         if (bearerToken == null || bearerToken.isEmpty()) {
             log.warn("No bearerToken in application.properties! Proceeding without auth.");
         }
+        return new PreparedRequest(resolvedUrl, resolvedBody, bearerToken,
+                projection(node.getData() != null ? node.getData().getResponseProjection() : null, node));
+    }
 
-        // 8) Perform the POST request
+    /**
+     * Steps 3-4: parse the last chat message {role, timestamp, content} and return its content as a map,
+     * or null if there is no message or its content is not JSON.
+     */
+    private Map<String, Object> lastMessageContent(String lastJson, String sessionId) {
+        if (lastJson == null) {
+            log.warn("No last chat message found for sessionId={}", sessionId);
+            return null;
+        }
+
+        // 3) Parse top-level record => {role, timestamp, content}
+        Map<String, Object> messageMap;
         try {
-            Map<String, Object> responseData;
-
-            if (bearerToken != null && !bearerToken.isEmpty()) {
-                // Set the Authorization: Bearer ...
-                HttpHeaders headers = new HttpHeaders();
-                headers.setBearerAuth(bearerToken);
-
-                // Create an HttpEntity with the body + headers
-                HttpEntity<Map<String, Object>> entity = new HttpEntity<>(resolvedBody, headers);
-
-                ResponseEntity<Map> response = restTemplate.exchange(
-                        resolvedUrl,
-                        HttpMethod.POST,
-                        entity,
-                        Map.class
-                );
-                responseData = response.getBody();
-                log.info("POST with Bearer token success => status={}, body={}",
-                        response.getStatusCode(), responseData);
-            } else {
-                // No token => just do a normal postForObject
-                responseData = restTemplate.postForObject(resolvedUrl, resolvedBody, Map.class);
-                log.info("POST without Bearer token => body={}", responseData);
-            }
+            messageMap = mapper.readValue(lastJson, Map.class);
+        } catch (Exception e) {
+            log.warn("Failed to parse last message JSON. sessionId={}, error={}", sessionId, e.getMessage());
+            return null;
+        }
+
+        // 4) content might be a string or a map
+        Map<String, Object> contentMap = parseAsMap(messageMap.get("content"));
+        if (contentMap == null) {
+            log.info("Content is not JSON; skipping. sessionId={}", sessionId);
+        }
+        return contentMap;
+    }
+
+    /**
+     * Step 9: store the response in the context and decide the next node.
+     */
+    private String applyResponse(FlowNode node, Map<String, Object> responseData, Map<String, Object> context) {
+        String successNode = node.getData() != null ? node.getData().getOnSuccessNextNode() : null;
 
-            // 9) Optionally store the response in context
-            if (responseData != null) {
-                ObjectMapper mapper = new ObjectMapper();
+        // 9) Optionally store the response in context
+        if (responseData != null) {
+            try {
                 String responseJson = mapper.writeValueAsString(responseData);
                 context.put("lastResponse", responseJson);
                 log.info("RESPONSE => {}", responseData);
+            } catch (JsonProcessingException e) {
+                log.warn("Failed to serialize response for node {}: {}", node.getId(), e.getMessage());
             }
+        }
 
-            // Decide next node
-            if (successNode != null && !successNode.isEmpty()) {
-                return successNode;
-            }
-            return (node.getNext() != null) ? node.getNext() : "END";
+        // Decide next node
+        if (successNode != null && !successNode.isEmpty()) {
+            return successNode;
+        }
+        return (node.getNext() != null) ? node.getNext() : "END";
+    }
 
-        } catch (Exception ex) {
-            log.error("Error while POSTing to {}. sessionId={}, error={}",
-                    resolvedUrl, sessionId, ex.getMessage(), ex);
-            return fallbackNode(errorNode);
+    private void logPostFailure(PreparedRequest request, String sessionId, Throwable ex) {
+        if (ex instanceof DownstreamUnavailableException) {
+            // Expected while a downstream is failing; no stack trace per turn
+            log.warn("Skipped POST to {}. sessionId={}, reason={}", request.url(), sessionId, ex.getMessage());
+            return;
         }
+        log.error("Error while POSTing to {}. sessionId={}, error={}",
+                request.url(), sessionId, ex.getMessage(), ex);
     }
 
     private String fallbackNode(String errorNode) {
@@ -175,36 +369,10 @@ public class DataHandler {
         }
     }
 
-    private String resolvePlaceholdersInString(String raw, Map<String, Object> context) {
-        if (raw == null) return "";
-        String patternStr = "\\[([^\\]]+)]";
-        Matcher matcher = Pattern.compile(patternStr).matcher(raw);
-
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            String placeholder = matcher.group(1);
-            Object replacement = context.getOrDefault(placeholder, "");
-            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement.toString()));
-        }
-        matcher.appendTail(sb);
-        return sb.toString();
+    private record PreparedRequest(String url, Map<String, Object> body, String bearerToken,
+                                   ResponseProjection projection) {
     }
 
-    private Map<String, Object> resolvePlaceholdersInMap(Map<String, Object> rawMap, Map<String, Object> context) {
-        Map<String, Object> result = new HashMap<>();
-        for (Map.Entry<String, Object> e : rawMap.entrySet()) {
-            Object val = e.getValue();
-            if (val instanceof String) {
-                result.put(e.getKey(), resolvePlaceholdersInString((String) val, context));
-            } else if (val instanceof Map) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> nested = (Map<String, Object>) val;
-                result.put(e.getKey(), resolvePlaceholdersInMap(nested, context));
-            } else {
-                // arrays, booleans, numbers remain as-is
-                result.put(e.getKey(), val);
-            }
-        }
-        return result;
+    private record GatherResult(String name, DataRequest spec, Map<String, Object> response, Throwable error) {
     }
 }
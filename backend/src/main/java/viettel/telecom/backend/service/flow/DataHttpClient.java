@@ -0,0 +1,208 @@
+package viettel.telecom.backend.service.flow;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.netty.resources.ConnectionProvider;
+import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Outbound HTTP client for data nodes, separate from the shared RestTemplate.
+ *
+ * - Reactor Netty connection pool: up to flow.data.http.max-connections-per-host connections per host,
+ *   kept alive for flow.data.http.max-idle-seconds and evicted in the background.
+ * - Deadlines: connect, read (response) and total, with per-node overrides
+ *   (connectTimeoutMs, readTimeoutMs, requestTimeoutMs).
+ * - Responses larger than flow.data.http.max-response-bytes are rejected.
+ * - With a {@link ResponseProjection}, only the selected fields are parsed out of the response.
+ * - Metrics: timer flow.data.http.requests tagged with host and outcome. Only the first
+ *   flow.data.http.max-tagged-hosts hosts get their own tag, the others are reported as "other".
+ */
+@Slf4j
+@Component
+public class DataHttpClient {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient baseHttpClient;
+    private final ExchangeStrategies exchangeStrategies;
+    private final Map<Integer, WebClient> clientsByConnectTimeout = new ConcurrentHashMap<>();
+
+    private final int defaultConnectTimeoutMs;
+    private final Duration defaultReadTimeout;
+    private final Duration defaultRequestTimeout;
+
+    private final MeterRegistry meterRegistry;
+    private final Set<String> taggedHosts = ConcurrentHashMap.newKeySet();
+    private final int maxTaggedHosts;
+
+    public DataHttpClient(MeterRegistry meterRegistry,
+                          @Value("${flow.data.http.max-connections-per-host:50}") int maxConnectionsPerHost,
+                          @Value("${flow.data.http.pending-acquire-timeout-millis:5000}") long pendingAcquireTimeoutMs,
+                          @Value("${flow.data.http.max-idle-seconds:30}") long maxIdleSeconds,
+                          @Value("${flow.data.http.connect-timeout-millis:3000}") int connectTimeoutMs,
+                          @Value("${flow.data.http.read-timeout-millis:10000}") long readTimeoutMs,
+                          @Value("${flow.data.http.request-timeout-millis:15000}") long requestTimeoutMs,
+                          @Value("${flow.data.http.max-response-bytes:1048576}") int maxResponseBytes,
+                          @Value("${flow.data.http.max-tagged-hosts:100}") int maxTaggedHosts) {
+        this.meterRegistry = meterRegistry;
+        this.maxTaggedHosts = maxTaggedHosts;
+        this.defaultConnectTimeoutMs = connectTimeoutMs;
+        this.defaultReadTimeout = Duration.ofMillis(readTimeoutMs);
+        this.defaultRequestTimeout = Duration.ofMillis(requestTimeoutMs);
+
+        // Pools are kept per remote address, so every backend host gets its own set of connections
+        this.connectionProvider = ConnectionProvider.builder("data-nodes")
+                .maxConnections(maxConnectionsPerHost)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                .evictInBackground(Duration.ofSeconds(maxIdleSeconds))
+                .build();
+        this.baseHttpClient = HttpClient.create(connectionProvider)
+                .keepAlive(true)
+                .compress(true);
+        this.exchangeStrategies = ExchangeStrategies.builder()
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxResponseBytes))
+                .build();
+    }
+
+    /**
+     * POST a JSON body and read a JSON object back, without blocking.
+     * Completes empty if the response has no body.
+     *
+     * @param projection fields to keep from the response, or null to keep all of it
+     */
+    public Mono<Map<String, Object>> post(String url, Map<String, Object> body, String bearerToken, FlowNode node,
+                                          ResponseProjection projection) {
+        Flow.Node.NodeData data = node != null ? node.getData() : null;
+        int connectTimeoutMs = data != null && data.getConnectTimeoutMs() != null && data.getConnectTimeoutMs() > 0
+                ? data.getConnectTimeoutMs() : defaultConnectTimeoutMs;
+        Duration readTimeout = nodeDuration(data != null ? data.getReadTimeoutMs() : null, defaultReadTimeout);
+        Duration requestTimeout = requestTimeout(node);
+        String host = hostTag(url);
+
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return client(connectTimeoutMs).post()
+                    .uri(url)
+                    .httpRequest(request -> {
+                        HttpClientRequest nativeRequest = request.getNativeRequest();
+                        nativeRequest.responseTimeout(readTimeout);
+                    })
+                    .headers(headers -> {
+                        if (bearerToken != null && !bearerToken.isEmpty()) {
+                            headers.setBearerAuth(bearerToken);
+                        }
+                    })
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToMono(byte[].class)
+                    .map(bytes -> projection != null ? projection.project(bytes) : parse(bytes))
+                    .timeout(requestTimeout)
+                    .doOnSuccess(response -> record(sample, host, "SUCCESS"))
+                    .doOnError(e -> record(sample, host, outcome(e)));
+        });
+    }
+
+    /**
+     * Total deadline for one call of the node: its requestTimeoutMs, or flow.data.http.request-timeout-millis.
+     */
+    public Duration requestTimeout(FlowNode node) {
+        return nodeDuration(node != null && node.getData() != null ? node.getData().getRequestTimeoutMs() : null,
+                defaultRequestTimeout);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionProvider.disposeLater().block(Duration.ofSeconds(5));
+    }
+
+    /**
+     * One WebClient per distinct connect timeout; they all share the same connection pool.
+     */
+    private WebClient client(int connectTimeoutMs) {
+        return clientsByConnectTimeout.computeIfAbsent(connectTimeoutMs, timeout -> WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(
+                        baseHttpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout)))
+                .exchangeStrategies(exchangeStrategies)
+                .build());
+    }
+
+    private static Map<String, Object> parse(byte[] bytes) {
+        try {
+            return MAPPER.readValue(bytes, MAP_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot parse data node response", e);
+        }
+    }
+
+    private static Duration nodeDuration(Long millis, Duration fallback) {
+        return millis != null && millis > 0 ? Duration.ofMillis(millis) : fallback;
+    }
+
+    private void record(Timer.Sample sample, String host, String outcome) {
+        sample.stop(Timer.builder("flow.data.http.requests")
+                .description("Outbound data node HTTP calls")
+                .tag("host", host)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    private static String outcome(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException || t instanceof ReadTimeoutException || t instanceof ConnectTimeoutException) {
+                return "TIMEOUT";
+            }
+        }
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is4xxClientError() ? "CLIENT_ERROR" : "SERVER_ERROR";
+        }
+        return "ERROR";
+    }
+
+    private String hostTag(String url) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (Exception e) {
+            host = null;
+        }
+        if (host == null) {
+            return "unknown";
+        }
+        if (taggedHosts.contains(host)) {
+            return host;
+        }
+        if (taggedHosts.size() < maxTaggedHosts && taggedHosts.add(host)) {
+            return host;
+        }
+        return "other";
+    }
+}
@@ -0,0 +1,232 @@
+package viettel.telecom.backend.service.flow;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.params.SetParams;
+import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in response cache for data nodes whose calls are idempotent lookups.
+ *
+ * A node enables it with cacheTtlSeconds; for cacheStaleSeconds after that the cached response is still
+ * served while one background call refreshes it (stale-while-revalidate).
+ * The key is the method, resolved URL, body (with map keys sorted), tenant and response projection. There is no tenant id in a flow,
+ * so the credential the call is made with stands in for it.
+ *
+ * Entries live in a local cache bounded by flow.data.cache.max-entries (metrics: cache=dataResponses) and, with
+ * flow.data.cache.redis-enabled, in Redis as well so replicas share them.
+ * Counter flow.data.cache.requests (node, result=hit|stale|miss) gives the hit ratio per node.
+ * Cached bodies are shared between callers and must not be modified.
+ */
+@Slf4j
+@Component
+public class DataResponseCache {
+
+    private static final String REDIS_KEY_PREFIX = "flow:data:cache:";
+    private static final TypeReference<CachedResponse> ENTRY_TYPE = new TypeReference<>() {};
+
+    private final Cache<String, CachedResponse> local;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final JedisPooled jedisPooled;
+    private final boolean redisEnabled;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    // Sorting map keys makes the serialized body a canonical form of it
+    private final ObjectMapper canonicalMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    @Autowired
+    public DataResponseCache(JedisPooled jedisPooled,
+                             MeterRegistry meterRegistry,
+                             @Value("${flow.data.cache.max-entries:10000}") long maxEntries,
+                             @Value("${flow.data.cache.redis-enabled:false}") boolean redisEnabled) {
+        this(jedisPooled, meterRegistry, maxEntries, redisEnabled, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock decides when entries turn stale and expire (a clock moved by hand in tests)
+     */
+    DataResponseCache(JedisPooled jedisPooled, MeterRegistry meterRegistry, long maxEntries, boolean redisEnabled,
+                      Clock clock) {
+        this.jedisPooled = jedisPooled;
+        this.redisEnabled = redisEnabled;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                // Keep an entry until its stale window is over
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse entry, long currentTime) {
+                        return nanosUntil(entry.staleUntil());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse entry, long currentTime, long currentDuration) {
+                        return nanosUntil(entry.staleUntil());
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "dataResponses");
+    }
+
+    /**
+     * POST through the cache if the node enables it, otherwise just run {@code call}.
+     *
+     * @param call performs the actual request; it also refreshes stale entries in the background
+     */
+    public Mono<Map<String, Object>> post(FlowNode node, String url, Map<String, Object> body, String bearerToken,
+                                          ResponseProjection projection, Supplier<Mono<Map<String, Object>>> call) {
+        Flow.Node.NodeData data = node.getData();
+        long ttlMillis = data != null && data.getCacheTtlSeconds() != null ? data.getCacheTtlSeconds() * 1000 : 0;
+        if (ttlMillis <= 0) {
+            return call.get();
+        }
+        long staleMillis = data.getCacheStaleSeconds() != null ? Math.max(0, data.getCacheStaleSeconds() * 1000) : 0;
+
+        String key;
+        try {
+            key = key("POST", url, body, bearerToken, projection);
+        } catch (Exception e) {
+            log.warn("Cannot build cache key for node {}; calling without cache: {}", node.getId(), e.getMessage());
+            return call.get();
+        }
+
+        return Mono.defer(() -> {
+            CachedResponse cached = usable(local.getIfPresent(key));
+            if (cached != null || !redisEnabled) {
+                return serve(node, key, cached, ttlMillis, staleMillis, call);
+            }
+            return Mono.fromCallable(() -> Optional.ofNullable(usable(readRedis(key))))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(shared -> {
+                        shared.ifPresent(entry -> local.put(key, entry));
+                        return serve(node, key, shared.orElse(null), ttlMillis, staleMillis, call);
+                    });
+        });
+    }
+
+    private Mono<Map<String, Object>> serve(FlowNode node, String key, CachedResponse cached,
+                                            long ttlMillis, long staleMillis,
+                                            Supplier<Mono<Map<String, Object>>> call) {
+        if (cached == null) {
+            record(node, "miss");
+            return call.get().doOnNext(response -> store(key, response, ttlMillis, staleMillis));
+        }
+        if (clock.millis() < cached.freshUntil()) {
+            record(node, "hit");
+        } else {
+            record(node, "stale");
+            refresh(node, key, ttlMillis, staleMillis, call);
+        }
+        return Mono.just(cached.body());
+    }
+
+    /**
+     * Refresh a stale entry in the background, at most once at a time per key on this replica.
+     * On failure the stale entry keeps being served until its window ends.
+     */
+    private void refresh(FlowNode node, String key, long ttlMillis, long staleMillis,
+                         Supplier<Mono<Map<String, Object>>> call) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        call.get()
+                .doFinally(signal -> refreshing.remove(key))
+                .subscribe(response -> store(key, response, ttlMillis, staleMillis),
+                        e -> log.warn("Background refresh for node {} failed: {}", node.getId(), e.getMessage()));
+    }
+
+    private void store(String key, Map<String, Object> response, long ttlMillis, long staleMillis) {
+        long now = clock.millis();
+        CachedResponse entry = new CachedResponse(response, now + ttlMillis, now + ttlMillis + staleMillis);
+        local.put(key, entry);
+        if (redisEnabled) {
+            Schedulers.boundedElastic().schedule(() -> writeRedis(key, entry, ttlMillis + staleMillis));
+        }
+    }
+
+    private CachedResponse readRedis(String key) {
+        try {
+            String json = jedisPooled.get(REDIS_KEY_PREFIX + key);
+            return json != null ? canonicalMapper.readValue(json, ENTRY_TYPE) : null;
+        } catch (Exception e) {
+            log.warn("Failed to read cached data response {} from Redis: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, CachedResponse entry, long expireMillis) {
+        try {
+            jedisPooled.set(REDIS_KEY_PREFIX + key, canonicalMapper.writeValueAsString(entry),
+                    SetParams.setParams().px(expireMillis));
+        } catch (Exception e) {
+            log.warn("Failed to write cached data response {} to Redis: {}", key, e.getMessage());
+        }
+    }
+
+    private String key(String method, String url, Map<String, Object> body, String bearerToken,
+                       ResponseProjection projection) throws Exception {
+        String canonicalBody = canonicalMapper.writeValueAsString(body);
+        String tenant = bearerToken != null ? sha256(bearerToken) : "";
+        // Cached bodies are projected, so the projection is part of the key
+        String fields = projection != null ? projection.key() : "";
+        return sha256(method + '\n' + url + '\n' + canonicalBody + '\n' + tenant + '\n' + fields);
+    }
+
+    private long nanosUntil(long epochMillis) {
+        return Duration.ofMillis(Math.max(0, epochMillis - clock.millis())).toNanos();
+    }
+
+    private CachedResponse usable(CachedResponse entry) {
+        return entry != null && clock.millis() < entry.staleUntil() ? entry : null;
+    }
+
+    private void record(FlowNode node, String result) {
+        meterRegistry.counter("flow.data.cache.requests", "node", node.getId() != null ? node.getId() : "unknown", "result", result).increment();
+    }
+
+    private static String sha256(String value) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * A cached response; fresh until freshUntil, served stale until staleUntil (epoch millis).
+     */
+    record CachedResponse(Map<String, Object> body, long freshUntil, long staleUntil) {
+    }
+}
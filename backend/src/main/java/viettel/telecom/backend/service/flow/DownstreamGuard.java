@@ -0,0 +1,236 @@
+package viettel.telecom.backend.service.flow;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import viettel.telecom.backend.exception.DownstreamUnavailableException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Protects data node calls per downstream host, so one slow API cannot hold every chat turn.
+ *
+ * - Bulkhead: at most flow.data.resilience.max-concurrent-per-host calls in flight per host; extra calls fail at once.
+ * - Circuit breaker per host (see {@link CircuitBreaker}); timeouts, I/O errors and 5xx count as failures,
+ *   4xx responses do not. While it is open, calls fail at once with {@link DownstreamUnavailableException}.
+ * - Retry with jittered exponential backoff, only for calls marked idempotent and only for failures
+ *   of the downstream (never for rejected calls or 4xx responses).
+ *
+ * Metrics: flow.data.circuit.state{host} (0 closed, 1 open, 2 half-open), flow.data.bulkhead.active{host}
+ * and flow.data.downstream.rejected{host,reason=circuit_open|bulkhead_full}.
+ * At most flow.data.resilience.max-hosts hosts are tracked; the least recently used ones are dropped.
+ */
+@Slf4j
+@Component
+public class DownstreamGuard {
+
+    private final Cache<String, HostGuard> guards;
+    private final MeterRegistry meterRegistry;
+
+    private final int maxConcurrentPerHost;
+    private final int retryAttempts;
+    private final Duration retryBackoff;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    public DownstreamGuard(MeterRegistry meterRegistry,
+                           @Value("${flow.data.resilience.max-concurrent-per-host:20}") int maxConcurrentPerHost,
+                           @Value("${flow.data.resilience.retry.max-attempts:2}") int retryAttempts,
+                           @Value("${flow.data.resilience.retry.backoff-millis:100}") long retryBackoffMs,
+                           @Value("${flow.data.resilience.circuit.window-size:20}") int windowSize,
+                           @Value("${flow.data.resilience.circuit.minimum-calls:10}") int minimumCalls,
+                           @Value("${flow.data.resilience.circuit.failure-rate-threshold:50}") int failureRateThreshold,
+                           @Value("${flow.data.resilience.circuit.open-seconds:30}") long openSeconds,
+                           @Value("${flow.data.resilience.circuit.half-open-calls:3}") int halfOpenCalls,
+                           @Value("${flow.data.resilience.max-hosts:1000}") long maxHosts) {
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.retryAttempts = retryAttempts;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMs);
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = Duration.ofSeconds(openSeconds).toMillis();
+        this.halfOpenCalls = halfOpenCalls;
+        this.guards = Caffeine.newBuilder()
+                .maximumSize(maxHosts)
+                .removalListener((String host, HostGuard guard, RemovalCause cause) -> {
+                    if (guard != null) {
+                        guard.meters.forEach(meterRegistry::remove);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Run a call to {@code url} behind its host's bulkhead and circuit breaker.
+     *
+     * @param idempotent whether the call may be retried
+     */
+    public <T> Mono<T> execute(String url, boolean idempotent, Supplier<Mono<T>> call) {
+        String host = hostOf(url);
+        Mono<T> attempt = Mono.defer(() -> guards.get(host, this::newGuard).attempt(call));
+        if (idempotent && retryAttempts > 0) {
+            attempt = attempt.retryWhen(Retry.backoff(retryAttempts, retryBackoff)
+                    .jitter(0.5)
+                    .filter(DownstreamGuard::isDownstreamFailure)
+                    .doBeforeRetry(signal -> log.debug("Retrying call to {} (attempt {}): {}",
+                            host, signal.totalRetries() + 2, signal.failure().toString()))
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        }
+        return attempt;
+    }
+
+    /**
+     * Breaker and bulkhead state of every tracked host.
+     */
+    public List<DownstreamStatus> status() {
+        List<DownstreamStatus> result = new ArrayList<>();
+        guards.asMap().forEach((host, guard) -> {
+            CircuitBreaker.Snapshot snapshot = guard.breaker.snapshot();
+            result.add(new DownstreamStatus(host, snapshot.state().name(), snapshot.failureRate(),
+                    snapshot.bufferedCalls(), snapshot.openUntil(), guard.active.get(), maxConcurrentPerHost));
+        });
+        result.sort(Comparator.comparing(DownstreamStatus::host));
+        return result;
+    }
+
+    /**
+     * Close the circuit breaker of a host.
+     *
+     * @return false if the host is not tracked
+     */
+    public boolean reset(String host) {
+        HostGuard guard = guards.getIfPresent(host);
+        if (guard == null) {
+            return false;
+        }
+        guard.breaker.reset();
+        log.info("Circuit breaker for {} reset", host);
+        return true;
+    }
+
+    private HostGuard newGuard(String host) {
+        return new HostGuard(host, new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openMillis,
+                halfOpenCalls));
+    }
+
+    /**
+     * Failures that say something about the downstream: timeouts, connection errors and 5xx responses.
+     */
+    static boolean isDownstreamFailure(Throwable e) {
+        if (e instanceof DownstreamUnavailableException) {
+            return false;
+        }
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError();
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException || t instanceof ReadTimeoutException || t instanceof ConnectTimeoutException
+                    || t instanceof WebClientRequestException || t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host : "unknown";
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    private final class HostGuard {
+        private final String host;
+        private final CircuitBreaker breaker;
+        private final AtomicInteger active = new AtomicInteger();
+        private final List<Meter> meters = new ArrayList<>();
+
+        private HostGuard(String host, CircuitBreaker breaker) {
+            this.host = host;
+            this.breaker = breaker;
+            meters.add(Gauge.builder("flow.data.circuit.state", breaker, b -> b.snapshot().state().ordinal())
+                    .description("Circuit breaker state per data node host (0 closed, 1 open, 2 half-open)")
+                    .tag("host", host)
+                    .register(meterRegistry));
+            meters.add(Gauge.builder("flow.data.bulkhead.active", active, AtomicInteger::get)
+                    .description("Data node calls in flight per host")
+                    .tag("host", host)
+                    .register(meterRegistry));
+        }
+
+        private <T> Mono<T> attempt(Supplier<Mono<T>> call) {
+            if (!breaker.tryAcquire()) {
+                return reject("circuit_open", "Circuit breaker for " + host + " is open");
+            }
+            if (active.incrementAndGet() > maxConcurrentPerHost) {
+                active.decrementAndGet();
+                breaker.release();
+                return reject("bulkhead_full", "Too many concurrent calls to " + host);
+            }
+
+            AtomicBoolean recorded = new AtomicBoolean();
+            return call.get()
+                    .doOnSuccess(value -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.onSuccess();
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            if (isDownstreamFailure(e)) {
+                                breaker.onFailure();
+                            } else {
+                                breaker.onSuccess();
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        // Cancelled by an outer deadline: the downstream was too slow
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.onFailure();
+                        }
+                    })
+                    .doFinally(signal -> active.decrementAndGet());
+        }
+
+        private <T> Mono<T> reject(String reason, String message) {
+            meterRegistry.counter("flow.data.downstream.rejected", "host", host, "reason", reason).increment();
+            return Mono.error(new DownstreamUnavailableException(message));
+        }
+    }
+
+    /**
+     * Admin view of one downstream host.
+     */
+    public record DownstreamStatus(String host, String circuitState, double failureRate, int bufferedCalls,
+                                   Long openUntil, int activeCalls, int maxConcurrentCalls) {
+    }
+}
@@ -0,0 +1,169 @@
+package viettel.telecom.backend.service.flow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.service.flow.runtime.FlowCompiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Bounded in-process cache of deserialized flows, in front of the Elasticsearch "flows" index.
+ *
+ * Entries are keyed by flow ID and remember the flow version (updatedAt) they were loaded with.
+ * An entry older than flow.cache.revalidate-after-millis is checked against the stored version
+ * (a lookup of updatedAt only) before it is served, and reloaded if the flow was changed or deleted,
+ * e.g. through another replica. The cache is bounded by an estimate of the serialized size of each
+ * flow, and entries still expire after flow.cache.expire-after-write-seconds.
+ * Metrics are published as "cache.*" meters with the tag cache=flowDefinitions.
+ */
+@Slf4j
+@Component
+public class FlowDefinitionCache {
+
+    /**
+     * Loads a flow from the backing store on a cache miss.
+     */
+    @FunctionalInterface
+    public interface FlowLoader {
+        Flow load(String flowId) throws IOException;
+    }
+
+    /**
+     * Reads only the current version (updatedAt) of a flow; null if the flow no longer exists.
+     */
+    @FunctionalInterface
+    public interface VersionLoader {
+        String version(String flowId) throws IOException;
+    }
+
+    private final Cache<String, CachedFlow> cache;
+    private final FlowCompiler flowCompiler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long revalidateAfterNanos;
+
+    public FlowDefinitionCache(FlowCompiler flowCompiler,
+                               MeterRegistry meterRegistry,
+                               @Value("${flow.cache.max-weight-bytes:67108864}") long maxWeightBytes,
+                               @Value("${flow.cache.expire-after-write-seconds:300}") long expireAfterWriteSeconds,
+                               @Value("${flow.cache.revalidate-after-millis:2000}") long revalidateAfterMillis) {
+        this.flowCompiler = flowCompiler;
+        this.revalidateAfterNanos = Duration.ofMillis(revalidateAfterMillis).toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((String flowId, CachedFlow entry) -> entry.weight())
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds))
+                .removalListener((String flowId, CachedFlow entry, RemovalCause cause) -> {
+                    // Keep the compiled form in step with the cached definition
+                    if (flowId != null && cause != RemovalCause.REPLACED) {
+                        flowCompiler.evict(flowId);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "flowDefinitions");
+    }
+
+    /**
+     * Returns the cached flow, or loads it with the given loader on a miss or when its version is outdated.
+     * Concurrent misses for the same ID share a single load.
+     */
+    public Flow get(String flowId, FlowLoader loader, VersionLoader versionLoader) throws IOException {
+        CachedFlow cached = cache.getIfPresent(flowId);
+        if (cached != null && !isCurrent(flowId, cached, versionLoader)) {
+            // Only drop the entry we checked, not one a concurrent caller just reloaded
+            cache.asMap().remove(flowId, cached);
+            log.debug("Flow cache entry outdated: {} (version {})", flowId, cached.version());
+        }
+        try {
+            return cache.get(flowId, id -> {
+                try {
+                    Flow flow = loader.load(id);
+                    return new CachedFlow(flow, flow.getUpdatedAt(), estimateWeight(flow), System.nanoTime());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).flow();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean isCurrent(String flowId, CachedFlow cached, VersionLoader versionLoader) {
+        long now = System.nanoTime();
+        if (now - cached.checkedAt < revalidateAfterNanos) {
+            return true;
+        }
+        try {
+            if (!Objects.equals(cached.version(), versionLoader.version(flowId))) {
+                return false;
+            }
+        } catch (Exception e) {
+            // Keep serving the cached flow; the next call checks again
+            log.debug("Cannot check the version of flow {}: {}", flowId, e.getMessage());
+            return true;
+        }
+        cached.checkedAt = now;
+        return true;
+    }
+
+    /**
+     * Drop a flow from the cache, e.g. after it was created, updated or deleted.
+     */
+    public void invalidate(String flowId) {
+        if (flowId != null) {
+            cache.invalidate(flowId);
+            log.debug("Flow cache invalidated: {}", flowId);
+        }
+    }
+
+    /**
+     * Rough size of a flow in bytes, based on its JSON form. Only computed on a miss.
+     */
+    private int estimateWeight(Flow flow) {
+        try {
+            return Math.max(1, objectMapper.writeValueAsBytes(flow).length);
+        } catch (Exception e) {
+            int nodes = flow.getNodes() != null ? flow.getNodes().size() : 0;
+            int edges = flow.getEdges() != null ? flow.getEdges().size() : 0;
+            return 1024 + nodes * 1024 + edges * 128;
+        }
+    }
+
+    private static final class CachedFlow {
+        private final Flow flow;
+        private final String version;
+        private final int weight;
+        // When the version was last confirmed against the store
+        private volatile long checkedAt;
+
+        CachedFlow(Flow flow, String version, int weight, long checkedAt) {
+            this.flow = flow;
+            this.version = version;
+            this.weight = weight;
+            this.checkedAt = checkedAt;
+        }
+
+        Flow flow() {
+            return flow;
+        }
+
+        String version() {
+            return version;
+        }
+
+        int weight() {
+            return weight;
+        }
+    }
+}
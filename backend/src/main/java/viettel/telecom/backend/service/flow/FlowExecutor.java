@@ -1,24 +1,45 @@
 package viettel.telecom.backend.service.flow;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import viettel.telecom.backend.entity.flow.Flow;
-import viettel.telecom.backend.entity.flow.Flow.Node;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import viettel.telecom.backend.exception.FlowExecutionLimitException;
+import viettel.telecom.backend.exception.FlowJoinException;
+import viettel.telecom.backend.service.flow.runtime.CompiledFlow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+import viettel.telecom.backend.service.flow.runtime.FlowTurnRecord;
 import viettel.telecom.backend.service.redis.memory.ChatMemoryService;
+import viettel.telecom.backend.service.session.ConversationIds;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 
 
 /**
  * A single-step flow executor that processes each node
  * and returns the ID of the next node (or null if flow ends).
+ *
+ * Automated nodes (data, logic, hidden LLM) are chained in a loop rather than by recursion,
+ * so a turn runs in constant stack space and is bounded by a step budget and a deadline.
+ *
+ * {@link #executeTurnAsync} runs the same turn without blocking: data and LLM nodes use their
+ * non-blocking handlers and chat memory is written with the async Redis client.
+ *
+ * LLM nodes with stream=true whose conversation is shown relay their tokens to the client as they arrive.
  */
 @Service
 public class FlowExecutor {
@@ -29,6 +50,12 @@ public class FlowExecutor {
     private final DataHandler dataHandler;
     private final LLMHandler llmHandler;
     private final LogicHandler logicHandler;  // <--- (NEW) we inject this to handle multi-branch logic
+    private final ForkJoinHandler forkJoinHandler;
+
+    private final int maxStepsPerTurn;
+    private final long maxTurnNanos;
+    private final long streamCoalesceMillis;
+    private final Timer timeToFirstToken;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -38,139 +65,378 @@ public class FlowExecutor {
     public FlowExecutor(InteractionHandler interactionHandler,
                         DataHandler dataHandler,
                         LLMHandler llmHandler,
-                        LogicHandler logicHandler) {
+                        LogicHandler logicHandler,
+                        ForkJoinHandler forkJoinHandler,
+                        MeterRegistry meterRegistry,
+                        @Value("${flow.execution.max-steps-per-turn:100}") int maxStepsPerTurn,
+                        @Value("${flow.execution.max-turn-millis:60000}") long maxTurnMillis,
+                        @Value("${flow.llm.stream-coalesce-millis:50}") long streamCoalesceMillis) {
         this.interactionHandler = interactionHandler;
         this.dataHandler = dataHandler;
         this.llmHandler = llmHandler;
         this.logicHandler = logicHandler;
+        this.forkJoinHandler = forkJoinHandler;
+        this.maxStepsPerTurn = maxStepsPerTurn;
+        this.maxTurnNanos = maxTurnMillis * 1_000_000L;
+        this.streamCoalesceMillis = streamCoalesceMillis;
+        this.timeToFirstToken = Timer.builder("flow.llm.time-to-first-token")
+                .description("Time from the start of a streamed LLM call to the first token sent to the client")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
     }
 
-    public String processNode(Flow flow, Node node, Map<String, Object> context, WebSocketSession session) {
-        try {
-            logger.debug("processNode() - ID: {}, Type: {}", node.getId(), node.getType());
-
-            switch (node.getType()) {
-                case "interactionNode": {
-                    // Example: send a bot message
-                    String botResponse = node.getData().getBotResponse();
-                    if (botResponse != null && !botResponse.isEmpty()) {
-                        sendMessage(session, botResponse);
-                        logger.info("Sent bot response: {}", botResponse);
-                    }
-                    // Possibly read userResponse from context...
-                    break;
-                }
+    public String processNode(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        return executeTurn(flow, node, context, session).getNextNodeId();
+    }
 
-                case "dataNode": {
-                    dataHandler.handle(node, context, session);
-                    String apiResponse = (String) context.get("lastResponse");
-                    sendMessage(session, apiResponse);
-                    logger.info("Data node processed: {}", node.getId());
-                    // Auto-process next node
-                    Node nextNode = getNextNode(flow, node);
-                    if (nextNode == null) {
-                        logger.info("No more edges from node: {} => flow ended.", node.getId());
-                        sendMessage(session, "Flow ended. No further nodes.");
-                        return null;
-                    }
-                    return processNode(flow, nextNode, context, session);
-                }
+    /**
+     * Run one turn starting at the given node: process it and keep following automated nodes
+     * until the flow pauses for user input or ends.
+     *
+     * @return the execution record of this turn; its nextNodeId is null if the flow ended.
+     */
+    public FlowTurnRecord executeTurn(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        FlowTurnRecord record = new FlowTurnRecord(flow.getId(), node.getId());
+        long turnStart = System.nanoTime();
+        FlowNode current = node;
 
-                case "llmNode": {
-                    llmHandler.handle(node, context, session);
-                    String llmResponse = (String) context.get("llmResponse");
-                    chatMemoryService.storeUserChat(session.getId(), "assistant", llmResponse);
-
-                    // If showConversation=false, auto-chain to next
-                    Boolean showConversation = node.getData().getShowConversation();
-                    if (showConversation != null && !showConversation) {
-                        context.put("userResponse", llmResponse);
-                        Node nextNode = getNextNode(flow, node);
-                        if (nextNode == null) {
-                            logger.info("No more edges => flow ended.");
-                            sendMessage(session, "Flow ended. No further nodes.");
-                            return null;
-                        }
-                        return processNode(flow, nextNode, context, session);
-                    } else {
-                        // Otherwise, just send the response
-                        if (llmResponse != null && session != null && session.isOpen()) {
-                            sendMessage(session, llmResponse);
-                            logger.info("LLM response sent: {}", llmResponse);
+        while (true) {
+            checkLimits(record, current, turnStart, session, this::sendMessage);
+
+            long stepStart = System.nanoTime();
+            Step step;
+            try {
+                step = executeStep(flow, current, context, session, this::sendMessage);
+            } catch (Exception e) {
+                record.addVisit(current.getId(), current.getType(), System.nanoTime() - stepStart);
+                record.finish(FlowTurnRecord.Outcome.FAILED, null, System.nanoTime() - turnStart);
+                logger.error("Error processing node: {}. Details: {} ({})", current.getId(), e.getMessage(), record, e);
+                sendMessage(session, "Error processing node: " + current.getId());
+                throw new RuntimeException("Error processing node: " + e.getMessage(), e);
+            }
+            record.addVisit(current.getId(), current.getType(), System.nanoTime() - stepStart);
+
+            if (step.continueWith != null) {
+                current = step.continueWith;
+                continue;
+            }
+
+            record.finish(step.pauseAt != null ? FlowTurnRecord.Outcome.PAUSED : FlowTurnRecord.Outcome.ENDED,
+                    step.pauseAt, System.nanoTime() - turnStart);
+            logger.info("Flow turn finished: {}", record);
+            return record;
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #executeTurn}. The returned Mono completes with the turn record,
+     * or errors like executeTurn throws (FlowExecutionLimitException, RuntimeException on node failure).
+     */
+    public Mono<FlowTurnRecord> executeTurnAsync(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        FlowTurnRecord record = new FlowTurnRecord(flow.getId(), node.getId());
+        return continueTurnAsync(flow, node, context, session, record, System.nanoTime());
+    }
+
+    private Mono<FlowTurnRecord> continueTurnAsync(CompiledFlow flow, FlowNode current, Map<String, Object> context,
+                                                   WebSocketSession session, FlowTurnRecord record, long turnStart) {
+        return Mono.defer(() -> {
+            checkLimits(record, current, turnStart, session, this::sendMessageAsync);
+
+            long stepStart = System.nanoTime();
+            return executeStepAsync(flow, current, context, session)
+                    .onErrorResume(e -> {
+                        record.addVisit(current.getId(), current.getType(), System.nanoTime() - stepStart);
+                        record.finish(FlowTurnRecord.Outcome.FAILED, null, System.nanoTime() - turnStart);
+                        logger.error("Error processing node: {}. Details: {} ({})", current.getId(), e.getMessage(), record, e);
+                        sendMessageAsync(session, "Error processing node: " + current.getId());
+                        return Mono.error(new RuntimeException("Error processing node: " + e.getMessage(), e));
+                    })
+                    .flatMap(step -> {
+                        record.addVisit(current.getId(), current.getType(), System.nanoTime() - stepStart);
+
+                        if (step.continueWith != null) {
+                            return continueTurnAsync(flow, step.continueWith, context, session, record, turnStart);
                         }
-                    }
-                    break;
-                }
 
-                // (NEW) MULTI-BRANCH LOGIC NODE:
-                case "logicNode": {
-                    // Evaluate expressions via LogicHandler
-                    String nextNodeId = logicHandler.handle(node, context);
-
-                    if (nextNodeId == null) {
-                        // No match => flow ends or fallback
-                        logger.info("No match in logic node => using node.next or ending flow: {}", node.getId());
-                        sendMessage(session, "Flow ended or fallback not found for logic node.");
-                        return null;
-                    }
-                    Node nextNode = getNodeById(flow, nextNodeId);
-                    if (nextNode == null) {
-                        logger.warn("No node found with ID {} => flow ended.", nextNodeId);
-                        sendMessage(session, "Flow ended. Next node not found: " + nextNodeId);
-                        return null;
-                    }
-                    logger.info("Logic node matched => jumping to node: {}", nextNodeId);
-                    return processNode(flow, nextNode, context, session);
+                        record.finish(step.pauseAt != null ? FlowTurnRecord.Outcome.PAUSED : FlowTurnRecord.Outcome.ENDED,
+                                step.pauseAt, System.nanoTime() - turnStart);
+                        logger.info("Flow turn finished: {}", record);
+                        return Mono.just(record);
+                    });
+        });
+    }
+
+    private void checkLimits(FlowTurnRecord record, FlowNode current, long turnStart, WebSocketSession session,
+                             Messenger messenger) {
+        String reason = null;
+        if (record.getStepCount() >= maxStepsPerTurn) {
+            reason = "step budget of " + maxStepsPerTurn + " nodes exceeded";
+        } else if (System.nanoTime() - turnStart > maxTurnNanos) {
+            reason = "turn deadline of " + (maxTurnNanos / 1_000_000L) + " ms exceeded";
+        }
+        if (reason == null) {
+            return;
+        }
+        record.finish(FlowTurnRecord.Outcome.LIMIT_EXCEEDED, null, System.nanoTime() - turnStart);
+        logger.warn("Flow turn stopped before node {}: {} ({})", current.getId(), reason, record);
+        messenger.send(session, "Flow stopped: " + reason + ".");
+        throw new FlowExecutionLimitException("Flow " + record.getFlowId() + " stopped before node "
+                + current.getId() + ": " + reason);
+    }
+
+    /**
+     * Process exactly one node and decide what happens next.
+     */
+    private Step executeStep(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session,
+                             Messenger messenger) {
+        logger.debug("processNode() - ID: {}, Type: {}", node.getId(), node.getType());
+
+        switch (node.getType()) {
+            case "interactionNode": {
+                // Example: send a bot message
+                String botResponse = node.getData().getBotResponse();
+                if (botResponse != null && !botResponse.isEmpty()) {
+                    messenger.send(session, botResponse);
+                    logger.info("Sent bot response: {}", botResponse);
                 }
+                // Possibly read userResponse from context...
+                break;
+            }
+
+            case "dataNode": {
+                String next = dataHandler.isScatterGather(node)
+                        ? dataHandler.gather(node, context, session).block()
+                        : dataHandler.handle(node, context, session);
+                // Auto-process next node
+                return afterData(flow, node, context, session, next, messenger);
+            }
 
-                case "endNode": {
-                    logger.info("Reached end node: {}", node.getId());
-                    sendMessage(session, "Flow completed at end node: " + node.getId());
-                    return null;
+            case "llmNode": {
+                if (streamsToSession(node, session)) {
+                    String llmResponse = streamLlm(node, context, session).block();
+                    chatMemoryService.storeUserChat(ConversationIds.of(session), "assistant", llmResponse);
+                    return pauseOrEnd(flow, node, session, messenger);
                 }
+                llmHandler.handle(node, context, session);
+                String llmResponse = (String) context.get("llmResponse");
+                chatMemoryService.storeUserChat(ConversationIds.of(session), "assistant", llmResponse);
+                return afterLlm(flow, node, context, session, llmResponse, messenger);
+            }
+
+            // (NEW) MULTI-BRANCH LOGIC NODE:
+            case "logicNode": {
+                // Evaluate expressions via LogicHandler
+                String nextNodeId = logicHandler.handle(node, context);
 
-                default: {
-                    logger.warn("Unknown node type encountered: {}", node.getType());
-                    sendMessage(session, "Unknown node type: " + node.getType());
-                    throw new IllegalArgumentException("Unknown node type: " + node.getType());
+                if (nextNodeId == null) {
+                    // No match => flow ends or fallback
+                    logger.info("No match in logic node => using node.next or ending flow: {}", node.getId());
+                    messenger.send(session, "Flow ended or fallback not found for logic node.");
+                    return Step.END;
                 }
+                FlowNode nextNode = flow.getNode(nextNodeId);
+                if (nextNode == null) {
+                    logger.warn("No node found with ID {} => flow ended.", nextNodeId);
+                    messenger.send(session, "Flow ended. Next node not found: " + nextNodeId);
+                    return Step.END;
+                }
+                logger.info("Logic node matched => jumping to node: {}", nextNodeId);
+                return Step.continueWith(nextNode);
+            }
+
+            // PARALLEL FORK/JOIN:
+            case "forkNode": {
+                return fork(flow, node, context, session, messenger);
+            }
+
+            case "joinNode": {
+                // Only reached outside of a fork (the fork itself continues after its join)
+                return continueOrEnd(flow, node, session, messenger);
             }
 
-            // If we reach here, handle next node but don't auto-process
-            Node nextNode = getNextNode(flow, node);
-            if (nextNode == null) {
-                logger.info("No more edges from node: {} => flow ended.", node.getId());
-                sendMessage(session, "Flow ended. No further nodes.");
-                return null;
+            case "endNode": {
+                logger.info("Reached end node: {}", node.getId());
+                messenger.send(session, "Flow completed at end node: " + node.getId());
+                return Step.END;
             }
-            return nextNode.getId();
 
-        } catch (Exception e) {
-            logger.error("Error processing node: {}. Details: {}", node.getId(), e.getMessage(), e);
-            sendMessage(session, "Error processing node: " + node.getId());
-            throw new RuntimeException("Error processing node: " + e.getMessage(), e);
+            default: {
+                logger.warn("Unknown node type encountered: {}", node.getType());
+                messenger.send(session, "Unknown node type: " + node.getType());
+                throw new IllegalArgumentException("Unknown node type: " + node.getType());
+            }
+        }
+
+        // If we reach here, handle next node but don't auto-process
+        return pauseOrEnd(flow, node, session, messenger);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #executeStep}. Only data and LLM nodes do I/O;
+     * the other node types are cheap and reuse the synchronous step.
+     */
+    private Mono<Step> executeStepAsync(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        Messenger messenger = this::sendMessageAsync;
+        switch (node.getType()) {
+            case "dataNode":
+                return (dataHandler.isScatterGather(node)
+                        ? dataHandler.gather(node, context, session)
+                        : dataHandler.handleAsync(node, context, session))
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .map(next -> afterData(flow, node, context, session, next.orElse(null), messenger));
+
+            case "llmNode":
+                if (streamsToSession(node, session)) {
+                    return streamLlm(node, context, session)
+                            .flatMap(llmResponse -> chatMemoryService.storeUserChatAsync(ConversationIds.of(session), "assistant", llmResponse))
+                            .then(Mono.fromCallable(() -> pauseOrEnd(flow, node, session, messenger)));
+                }
+                return llmHandler.handleAsync(node, context, session)
+                        .then(Mono.defer(() -> {
+                            String llmResponse = (String) context.get("llmResponse");
+                            return chatMemoryService.storeUserChatAsync(ConversationIds.of(session), "assistant", llmResponse)
+                                    .then(Mono.fromCallable(() -> afterLlm(flow, node, context, session, llmResponse, messenger)));
+                        }));
+
+            case "forkNode":
+                // Branches block on the fork pool; keep that off the reactive threads
+                return Mono.fromCallable(() -> executeStep(flow, node, context, session, messenger))
+                        .subscribeOn(Schedulers.boundedElastic());
+
+            default:
+                return Mono.fromCallable(() -> executeStep(flow, node, context, session, messenger));
+        }
+    }
+
+    /**
+     * Send the API response and go to the node chosen by the data handler (e.g. onErrorNextNode when the call
+     * failed or its circuit is open), or follow the edges when it chose none ("END" included, as before).
+     */
+    private Step afterData(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session,
+                           String next, Messenger messenger) {
+        messenger.send(session, (String) context.get("lastResponse"));
+        logger.info("Data node processed: {}", node.getId());
+        if ("END".equals(next)) {
+            next = null;
         }
+        FlowNode nextNode = next != null ? flow.getNode(next) : null;
+        if (next != null && nextNode == null) {
+            logger.warn("Data node {} routes to unknown node {}; following its edges", node.getId(), next);
+        }
+        return nextNode != null ? Step.continueWith(nextNode) : continueOrEnd(flow, node, session, messenger);
+    }
+
+    private boolean streamsToSession(FlowNode node, WebSocketSession session) {
+        return session != null && session.isOpen() && llmHandler.streamsToUser(node);
     }
 
     /**
-     * Find the next node by looking at the first edge with source == currentNode.id
+     * Stream an LLM node's response to the client as it is generated (see {@link LlmStreamRelay}).
+     *
+     * @return the full response, once the stream is complete
      */
-    private Node getNextNode(Flow flow, Node currentNode) {
-        return flow.getEdges().stream()
-                .filter(edge -> edge.getSource().equals(currentNode.getId()))
-                .map(edge -> getNodeById(flow, edge.getTarget()))
-                .findFirst()
-                .orElse(null);
+    private Mono<String> streamLlm(FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        return Mono.defer(() -> {
+            LlmStreamRelay relay = new LlmStreamRelay(session, streamCoalesceMillis, timeToFirstToken);
+            return llmHandler.handleStream(node, context, relay::onDelta)
+                    .doOnNext(relay::complete);
+        });
+    }
+
+    private Step afterLlm(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session,
+                          String llmResponse, Messenger messenger) {
+        // If showConversation=false, auto-chain to next
+        Boolean showConversation = node.getData().getShowConversation();
+        if (showConversation != null && !showConversation) {
+            context.put("userResponse", llmResponse);
+            return continueOrEnd(flow, node, session, messenger);
+        }
+        // Otherwise, just send the response
+        if (llmResponse != null && session != null && session.isOpen()) {
+            messenger.send(session, llmResponse);
+            logger.info("LLM response sent: {}", llmResponse);
+        }
+        return pauseOrEnd(flow, node, session, messenger);
+    }
+
+    private Step pauseOrEnd(CompiledFlow flow, FlowNode node, WebSocketSession session, Messenger messenger) {
+        FlowNode nextNode = flow.getNextNode(node);
+        if (nextNode == null) {
+            logger.info("No more edges from node: {} => flow ended.", node.getId());
+            messenger.send(session, "Flow ended. No further nodes.");
+            return Step.END;
+        }
+        return Step.pauseAt(nextNode.getId());
     }
 
     /**
-     * Utility method to find a node by ID in the flow
+     * Run all outgoing branches of a fork node concurrently, merge them at the matching join node
+     * and continue after the join. If the join policy fails, go to onErrorNextNode when it is set.
      */
-    private Node getNodeById(Flow flow, String nodeId) {
-        return flow.getNodes().stream()
-                .filter(n -> n.getId().equals(nodeId))
-                .findFirst()
-                .orElse(null);
+    private Step fork(CompiledFlow flow, FlowNode node, Map<String, Object> context, WebSocketSession session,
+                      Messenger messenger) {
+        List<FlowNode> branches = new ArrayList<>();
+        for (String target : flow.getOutgoingTargets(node.getId())) {
+            FlowNode branch = flow.getNode(target);
+            if (branch != null) {
+                branches.add(branch);
+            }
+        }
+        if (branches.isEmpty()) {
+            return continueOrEnd(flow, node, session, messenger);
+        }
+
+        FlowNode join = flow.getJoinNode(node.getId());
+        try {
+            List<String> merged = forkJoinHandler.forkAndJoin(node, join, branches, context,
+                    (branch, branchContext) -> runBranch(flow, branch, join, branchContext, session, messenger));
+            logger.info("Fork {} joined at {} with branches {}", node.getId(), join != null ? join.getId() : "<none>", merged);
+        } catch (FlowJoinException e) {
+            FlowNode errorNode = node.getData() != null ? flow.getNode(node.getData().getOnErrorNextNode()) : null;
+            if (errorNode == null) {
+                throw e;
+            }
+            logger.warn("{} => continuing at error node {}", e.getMessage(), errorNode.getId());
+            return Step.continueWith(errorNode);
+        }
+
+        if (join == null) {
+            logger.info("Fork {} has no join node => flow ended.", node.getId());
+            messenger.send(session, "Flow ended. No further nodes.");
+            return Step.END;
+        }
+        return continueOrEnd(flow, join, session, messenger);
+    }
+
+    /**
+     * Follow one branch until it reaches the join node. A branch also stops where the flow
+     * would end or wait for the user, since a branch cannot pause on its own.
+     */
+    private void runBranch(CompiledFlow flow, FlowNode start, FlowNode join, Map<String, Object> branchContext,
+                           WebSocketSession session, Messenger messenger) {
+        FlowNode current = start;
+        int steps = 0;
+        while (current != null && (join == null || !join.getId().equals(current.getId()))) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Branch " + start.getId() + " cancelled at node " + current.getId());
+            }
+            if (++steps > maxStepsPerTurn) {
+                throw new FlowExecutionLimitException("Branch " + start.getId() + " exceeded the step budget of "
+                        + maxStepsPerTurn + " nodes");
+            }
+            current = executeStep(flow, current, branchContext, session, messenger).continueWith;
+        }
+    }
+
+    private Step continueOrEnd(CompiledFlow flow, FlowNode node, WebSocketSession session, Messenger messenger) {
+        FlowNode nextNode = flow.getNextNode(node);
+        if (nextNode == null) {
+            logger.info("No more edges from node: {} => flow ended.", node.getId());
+            messenger.send(session, "Flow ended. No further nodes.");
+            return Step.END;
+        }
+        return Step.continueWith(nextNode);
     }
 
     private void sendMessage(WebSocketSession session, String message) {
@@ -178,9 +444,25 @@ public class FlowExecutor {
             logger.debug("No open session; cannot send message: {}", message);
             return;
         }
-        try {
-            chatMemoryService.storeUserChat(session.getId(), "assistant", message);
+        chatMemoryService.storeUserChat(ConversationIds.of(session), "assistant", message);
+        sendFrame(session, message);
+    }
+
+    /**
+     * Like {@link #sendMessage}, but the chat memory write does not block the caller.
+     * Writes share one Redis connection, so they are still applied in send order.
+     */
+    private void sendMessageAsync(WebSocketSession session, String message) {
+        if (session == null || !session.isOpen()) {
+            logger.debug("No open session; cannot send message: {}", message);
+            return;
+        }
+        chatMemoryService.storeUserChatAsync(ConversationIds.of(session), "assistant", message).subscribe();
+        sendFrame(session, message);
+    }
 
+    private void sendFrame(WebSocketSession session, String message) {
+        try {
             Map<String, String> response = new HashMap<>();
             response.put("sender", "bot");
             response.put("message", message);
@@ -191,4 +473,36 @@ public class FlowExecutor {
             logger.error("Failed to send WebSocket message: {}", e.getMessage(), e);
         }
     }
+
+    /**
+     * Sends a bot message to the session (blocking or not, depending on the execution mode).
+     */
+    @FunctionalInterface
+    private interface Messenger {
+        void send(WebSocketSession session, String message);
+    }
+
+    /**
+     * Outcome of a single node: continue with another node in the same turn,
+     * pause at a node until the next user message, or end the flow.
+     */
+    private static final class Step {
+        static final Step END = new Step(null, null);
+
+        final FlowNode continueWith;
+        final String pauseAt;
+
+        private Step(FlowNode continueWith, String pauseAt) {
+            this.continueWith = continueWith;
+            this.pauseAt = pauseAt;
+        }
+
+        static Step continueWith(FlowNode node) {
+            return new Step(node, null);
+        }
+
+        static Step pauseAt(String nodeId) {
+            return new Step(null, nodeId);
+        }
+    }
 }
@@ -7,6 +7,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import viettel.telecom.backend.entity.flow.Flow;
 import viettel.telecom.backend.entity.flow.FlowSummary;
+import viettel.telecom.backend.service.flow.runtime.CompiledFlow;
+import viettel.telecom.backend.service.flow.runtime.FlowCompiler;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -20,9 +22,15 @@ import java.util.stream.Collectors;
 public class FlowService {
 
     private final ElasticsearchClient elasticsearchClient;
+    private final FlowCompiler flowCompiler;
+    private final FlowDefinitionCache flowDefinitionCache;
 
-    public FlowService(ElasticsearchClient elasticsearchClient) {
+    public FlowService(ElasticsearchClient elasticsearchClient,
+                       FlowCompiler flowCompiler,
+                       FlowDefinitionCache flowDefinitionCache) {
         this.elasticsearchClient = elasticsearchClient;
+        this.flowCompiler = flowCompiler;
+        this.flowDefinitionCache = flowDefinitionCache;
     }
 
     /**
@@ -51,6 +59,8 @@ public class FlowService {
                 .document(flow)
         );
 
+        flowDefinitionCache.invalidate(response.id());
+
         log.info("Flow created/updated with ID: {}, createdAt: {}, updatedAt: {}",
                 response.id(), flow.getCreatedAt(), flow.getUpdatedAt());
         return response.id();
@@ -58,12 +68,25 @@ public class FlowService {
 
     /**
      * Retrieve a flow by its ID (full details).
+     * Served from the in-process flow cache when possible, once its version is confirmed to be current.
      *
      * @param id The ID of the flow to retrieve.
      * @return The retrieved flow.
      * @throws IOException If an error occurs while interacting with Elasticsearch.
      */
     public Flow getFlow(String id) throws IOException {
+        return flowDefinitionCache.get(id, this::fetchFlow, this::fetchVersion);
+    }
+
+    private String fetchVersion(String id) throws IOException {
+        GetResponse<Flow> response = elasticsearchClient.get(g -> g
+                .index("flows")
+                .id(id)
+                .sourceIncludes("updatedAt"), Flow.class);
+        return response.found() && response.source() != null ? response.source().getUpdatedAt() : null;
+    }
+
+    private Flow fetchFlow(String id) throws IOException {
         GetResponse<Flow> response = elasticsearchClient.get(g -> g
                 .index("flows")
                 .id(id), Flow.class);
@@ -77,6 +100,18 @@ public class FlowService {
         }
     }
 
+    /**
+     * Retrieve a flow by its ID in its compiled, execution-ready form.
+     * The compilation is reused as long as the flow version (updatedAt) does not change.
+     *
+     * @param id The ID of the flow to retrieve.
+     * @return The compiled flow.
+     * @throws IOException If an error occurs while interacting with Elasticsearch.
+     */
+    public CompiledFlow getCompiledFlow(String id) throws IOException {
+        return flowCompiler.compile(getFlow(id));
+    }
+
     /**
      * Retrieve a paginated list of flows (full details).
      *
@@ -146,6 +181,8 @@ public class FlowService {
             log.error("Flow with ID {} does not exist", flowId);
             throw new IllegalArgumentException("Flow with ID " + flowId + " does not exist");
         }
+        flowDefinitionCache.invalidate(flowId);
+        flowCompiler.evict(flowId);
 
         log.info("Flow deleted successfully with ID: {}", flowId);
     }
@@ -165,6 +202,7 @@ public class FlowService {
                 .index("flows")
                 .id(flowId)
                 .doc(updates), Flow.class);
+        flowDefinitionCache.invalidate(flowId);
 
         log.info("Flow with ID {} updated successfully", response.id());
     }
@@ -0,0 +1,200 @@
+package viettel.telecom.backend.service.flow;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import viettel.telecom.backend.exception.FlowJoinException;
+import viettel.telecom.backend.service.flow.runtime.BranchContext;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+import viettel.telecom.backend.service.flow.runtime.JoinPolicy;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the branches of a "forkNode" concurrently and joins them according to the policy
+ * of the matching "joinNode" (all, firstSuccess or quorum) and its timeout.
+ *
+ * Branches run on a bounded pool (flow.fork.max-threads threads, flow.fork.max-queued waiting branches).
+ * A branch the pool cannot take counts as a failed branch; it is never run on the forking thread, so the
+ * join timeout and policy always apply. Nested forks use the same pool and are bounded by their own timeout.
+ *
+ * Every branch works on its own {@link BranchContext} over one snapshot of the flow context.
+ * Only the branches kept by the join are merged back, in edge order (later branches win on
+ * conflicting keys). The changes of each kept branch are also stored under "branchResults",
+ * keyed by the ID of the branch's first node.
+ */
+@Slf4j
+@Service
+public class ForkJoinHandler {
+
+    /**
+     * Runs one branch, from its first node up to (not including) the join node.
+     */
+    @FunctionalInterface
+    public interface BranchRunner {
+        void run(FlowNode branchStart, Map<String, Object> branchContext);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final long defaultTimeoutMillis;
+
+    public ForkJoinHandler(@Value("${flow.fork.max-threads:64}") int maxThreads,
+                           @Value("${flow.fork.max-queued:256}") int maxQueued,
+                           @Value("${flow.fork.default-join-timeout-millis:30000}") long defaultTimeoutMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                maxThreads, maxThreads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueued)),
+                r -> {
+                    Thread t = new Thread(r, "flow-fork-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run all branches and merge the ones kept by the join policy into the context.
+     *
+     * @param join the join node holding the policy; null means "wait for all, default timeout"
+     * @return the IDs of the merged branches, in edge order
+     * @throws FlowJoinException if the policy cannot be satisfied within the timeout
+     */
+    public List<String> forkAndJoin(FlowNode fork,
+                                    FlowNode join,
+                                    List<FlowNode> branches,
+                                    Map<String, Object> context,
+                                    BranchRunner runner) {
+        JoinSettings settings = JoinSettings.of(join, branches.size(), defaultTimeoutMillis);
+        Map<String, Object> snapshot = new HashMap<>(context);
+
+        CompletionService<BranchResult> completion = new ExecutorCompletionService<>(executor);
+        List<Future<BranchResult>> futures = new ArrayList<>(branches.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.timeoutMillis());
+        int failed = 0;
+        Throwable firstError = null;
+        for (int i = 0; i < branches.size(); i++) {
+            int index = i;
+            FlowNode branch = branches.get(i);
+            try {
+                futures.add(completion.submit(() -> {
+                    BranchContext branchContext = new BranchContext(snapshot);
+                    runner.run(branch, branchContext);
+                    return new BranchResult(index, branch.getId(), branchContext);
+                }));
+            } catch (RejectedExecutionException e) {
+                failed++;
+                firstError = firstError != null ? firstError : new RejectedExecutionException(
+                        "fork pool is saturated (" + executor.getQueue().size() + " branches queued)", e);
+                log.warn("Branch {} of fork {} rejected: fork pool is saturated", branch.getId(), fork.getId());
+            }
+        }
+
+        List<BranchResult> succeeded = new ArrayList<>();
+        try {
+            while (succeeded.size() < settings.required() && succeeded.size() + failed < branches.size()
+                    && (failed == 0 || settings.policy() != JoinPolicy.ALL)) {
+                long remaining = deadline - System.nanoTime();
+                Future<BranchResult> done = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    break; // timed out
+                }
+                try {
+                    succeeded.add(done.get());
+                } catch (ExecutionException e) {
+                    failed++;
+                    firstError = firstError != null ? firstError : e.getCause();
+                    log.warn("Branch of fork {} failed: {}", fork.getId(), e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new FlowJoinException("Interrupted while waiting for the branches of fork " + fork.getId(), e);
+        }
+
+        // Branches the join does not need any more (or that are too late) are cancelled
+        futures.forEach(f -> f.cancel(true));
+
+        if (succeeded.size() < settings.required()) {
+            String reason = failed > 0 && firstError != null
+                    ? failed + " branch(es) failed, first error: " + firstError.getMessage()
+                    : "timed out after " + settings.timeoutMillis() + " ms";
+            throw new FlowJoinException("Fork " + fork.getId() + " did not satisfy join policy " + settings.policy()
+                    + " (" + succeeded.size() + "/" + settings.required() + " branches succeeded): " + reason, firstError);
+        }
+
+        return merge(succeeded, context);
+    }
+
+    private List<String> merge(List<BranchResult> succeeded, Map<String, Object> context) {
+        succeeded.sort(Comparator.comparingInt(BranchResult::index));
+
+        Map<String, Object> branchResults = new LinkedHashMap<>();
+        List<String> merged = new ArrayList<>(succeeded.size());
+        for (BranchResult result : succeeded) {
+            result.context().applyTo(context);
+            branchResults.put(result.branchId(), result.context().getChanges());
+            merged.add(result.branchId());
+        }
+        context.put("branchResults", branchResults);
+        return merged;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record BranchResult(int index, String branchId, BranchContext context) {
+    }
+
+    private record JoinSettings(JoinPolicy policy, int required, long timeoutMillis) {
+
+        static JoinSettings of(FlowNode join, int branchCount, long defaultTimeoutMillis) {
+            JoinPolicy policy = JoinPolicy.ALL;
+            Integer quorum = null;
+            long timeoutMillis = defaultTimeoutMillis;
+            if (join != null && join.getData() != null) {
+                policy = JoinPolicy.from(join.getData().getJoinPolicy());
+                quorum = join.getData().getJoinQuorum();
+                if (join.getData().getJoinTimeoutMs() != null && join.getData().getJoinTimeoutMs() > 0) {
+                    timeoutMillis = join.getData().getJoinTimeoutMs();
+                }
+            }
+
+            int required;
+            switch (policy) {
+                case FIRST_SUCCESS:
+                    required = 1;
+                    break;
+                case QUORUM:
+                    // Default to a majority when no quorum is configured
+                    int wanted = quorum != null ? quorum : branchCount / 2 + 1;
+                    required = Math.max(1, Math.min(wanted, branchCount));
+                    break;
+                default:
+                    required = branchCount;
+            }
+            return new JoinSettings(policy, required, timeoutMillis);
+        }
+    }
+}
@@ -3,13 +3,17 @@ package viettel.telecom.backend.service.flow;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
 import viettel.telecom.backend.service.llm.LLMService;
 import viettel.telecom.backend.service.promptbuilder.TemplateService;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -23,82 +27,157 @@ public class LLMHandler {
         this.templateService = templateService;
     }
 
-    public String handle(Flow.Node node, Map<String, Object> context, WebSocketSession session) {
+    public String handle(FlowNode node, Map<String, Object> context, WebSocketSession session) {
         try {
-            log.debug("Handling LLM node with ID: {}", node.getId());
-
-            // Fetch the template details from the node using its templateId.
-            String templateId = node.getData().getTemplateId();
-            log.debug("Fetching template with ID: {}", templateId);
-            var template = templateService.getTemplate(templateId);
-
-            // Extract the system prompt from the fetched template.
-            String systemPrompt = template.getSystemPrompt();
-            log.debug("System prompt: {}", systemPrompt);
-
-            // Retrieve the user input from the execution context.
-            String userInput = (String) context.getOrDefault("userResponse", "");
-            log.debug("User input: {}", userInput);
-
-            // Retrieve the LLM configuration from the node's data.
-            var llmConfigData = node.getData().getLlmconfig();
-            if (llmConfigData == null) {
-                log.warn("LLM configuration is missing in node data. Using default configuration.");
-                // Create a default configuration.
-                llmConfigData = new Flow.Node.NodeData.LLMConfig();
-                llmConfigData.setAiModel("gpt-4o");      // default AI model
-                llmConfigData.setTemperature(0.7);       // default temperature
-                llmConfigData.setMax_tokens(100);        // default maximum tokens
-                llmConfigData.setStream(false);          // default: non-streaming
-            }
-            String aiModel = llmConfigData.getAiModel();
-            log.debug("AI Model from LLMConfig: {}", aiModel);
-
-            // Build a configuration map for LLM processing using values from llmConfigData.
-            Map<String, Object> config = new HashMap<>();
-            config.put("aiModel", aiModel);
-            config.put("temperature", llmConfigData.getTemperature());
-            config.put("max_tokens", llmConfigData.getMax_tokens());
-            config.put("stream", llmConfigData.getStream());
-
-            // Optionally, you can also pass selectedTemplate details if needed:
-            var selectedTemplate = node.getData().getSelectedTemplate();
-            if (selectedTemplate != null) {
-                config.put("selectedTemplateFields", selectedTemplate.getFields());
-                config.put("selectedTemplateDescription", selectedTemplate.getDescription());
-            }
+            LLMRequest request = buildRequest(node, context);
 
             // Process the LLM request using the provided configuration.
             Map<String, Object> response = llmService.processRequest(
-                    aiModel,
-                    systemPrompt,
-                    userInput,
-                    config
+                    request.aiModel(),
+                    request.systemPrompt(),
+                    request.userInput(),
+                    request.config()
             );
-
-            // Extract the content from the response.
-            String llmResponse = "";
-            if (response != null && response.get("choices") != null) {
-                List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
-                if (choices != null && !choices.isEmpty()) {
-                    Map<String, Object> firstChoice = choices.get(0);
-                    Map<String, Object> messageMap = (Map<String, Object>) firstChoice.get("message");
-                    if (messageMap != null && messageMap.get("content") != null) {
-                        llmResponse = (String) messageMap.get("content");
-                    }
-                }
-            }
-
-            // Save the LLM response in the context for further processing.
-            context.put("llmResponse", llmResponse);
-            log.debug("LLM response: {}", llmResponse);
-
-            // Return the next step identifier (here we simply return the templateId as a placeholder).
-            return node.getData().getTemplateId();
+            return applyResponse(node, response, context);
         } catch (Exception e) {
             log.error("Error handling LLM node: {}", e.getMessage(), e);
             // In case of error, return a fallback value (e.g. node label).
             return node.getData().getLabel();
         }
     }
+
+    /**
+     * Non-blocking variant of {@link #handle}: the template lookup is offloaded and the LLM call
+     * runs on WebClient. Completes empty if the fallback value (node label) is null.
+     */
+    public Mono<String> handleAsync(FlowNode node, Map<String, Object> context, WebSocketSession session) {
+        return Mono.fromCallable(() -> buildRequest(node, context))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(request -> llmService.processRequestAsync(
+                        request.aiModel(),
+                        request.systemPrompt(),
+                        request.userInput(),
+                        request.config()
+                ))
+                .flatMap(response -> Mono.justOrEmpty(applyResponse(node, response, context)))
+                .onErrorResume(e -> {
+                    log.error("Error handling LLM node: {}", e.getMessage(), e);
+                    return Mono.justOrEmpty(node.getData().getLabel());
+                });
+    }
+
+    /**
+     * True if the node's response is streamed to the user: stream=true in its LLM config and
+     * the conversation is shown.
+     */
+    public boolean streamsToUser(FlowNode node) {
+        var data = node.getData();
+        return data != null && data.getLlmconfig() != null && Boolean.TRUE.equals(data.getLlmconfig().getStream())
+                && !Boolean.FALSE.equals(data.getShowConversation());
+    }
+
+    /**
+     * Streaming variant of {@link #handle}: each text delta is passed to {@code onDelta} as it arrives and the
+     * full text is stored as llmResponse.
+     *
+     * @return the full response, or the node label (empty if none) if the call fails
+     */
+    public Mono<String> handleStream(FlowNode node, Map<String, Object> context, Consumer<String> onDelta) {
+        return Mono.fromCallable(() -> buildRequest(node, context))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(request -> llmService.streamRequest(
+                                request.aiModel(),
+                                request.systemPrompt(),
+                                request.userInput(),
+                                request.config())
+                        .doOnNext(onDelta)
+                        .collect(StringBuilder::new, StringBuilder::append)
+                        .map(StringBuilder::toString))
+                .onErrorResume(e -> {
+                    log.error("Error handling LLM node: {}", e.getMessage(), e);
+                    String label = node.getData().getLabel();
+                    return Mono.just(label != null ? label : "");
+                })
+                .doOnNext(llmResponse -> {
+                    context.put("llmResponse", llmResponse);
+                    log.debug("LLM response: {}", llmResponse);
+                });
+    }
+
+    private LLMRequest buildRequest(FlowNode node, Map<String, Object> context) {
+        log.debug("Handling LLM node with ID: {}", node.getId());
+
+        // Fetch the template details from the node using its templateId.
+        String templateId = node.getData().getTemplateId();
+        log.debug("Fetching template with ID: {}", templateId);
+        var template = templateService.getTemplate(templateId);
+
+        // Extract the system prompt from the fetched template.
+        String systemPrompt = template.getSystemPrompt();
+        log.debug("System prompt: {}", systemPrompt);
+
+        // Retrieve the user input from the execution context.
+        String userInput = (String) context.getOrDefault("userResponse", "");
+        log.debug("User input: {}", userInput);
+
+        // Retrieve the LLM configuration from the node's data.
+        var llmConfigData = node.getData().getLlmconfig();
+        if (llmConfigData == null) {
+            log.warn("LLM configuration is missing in node data. Using default configuration.");
+            // Create a default configuration.
+            llmConfigData = new Flow.Node.NodeData.LLMConfig();
+            llmConfigData.setAiModel("gpt-4o");      // default AI model
+            llmConfigData.setTemperature(0.7);       // default temperature
+            llmConfigData.setMax_tokens(100);        // default maximum tokens
+            llmConfigData.setStream(false);          // default: non-streaming
+        }
+        String aiModel = llmConfigData.getAiModel();
+        log.debug("AI Model from LLMConfig: {}", aiModel);
+
+        // Build a configuration map for LLM processing using values from llmConfigData.
+        Map<String, Object> config = new HashMap<>();
+        config.put("aiModel", aiModel);
+        config.put("temperature", llmConfigData.getTemperature());
+        config.put("max_tokens", llmConfigData.getMax_tokens());
+        config.put("stream", llmConfigData.getStream());
+        config.put("cache", llmConfigData.getCache());
+        config.put("priority", llmConfigData.getPriority());
+        config.put("allowedModels", llmConfigData.getAllowedModels());
+        config.put("templateId", templateId);
+        config.put("semanticCacheThreshold", template.getSemanticCacheThreshold());
+
+        // Optionally, you can also pass selectedTemplate details if needed:
+        var selectedTemplate = node.getData().getSelectedTemplate();
+        if (selectedTemplate != null) {
+            config.put("selectedTemplateFields", selectedTemplate.getFields());
+            config.put("selectedTemplateDescription", selectedTemplate.getDescription());
+        }
+        return new LLMRequest(aiModel, systemPrompt, userInput, config);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String applyResponse(FlowNode node, Map<String, Object> response, Map<String, Object> context) {
+        // Extract the content from the response.
+        String llmResponse = "";
+        if (response != null && response.get("choices") != null) {
+            List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+            if (choices != null && !choices.isEmpty()) {
+                Map<String, Object> firstChoice = choices.get(0);
+                Map<String, Object> messageMap = (Map<String, Object>) firstChoice.get("message");
+                if (messageMap != null && messageMap.get("content") != null) {
+                    llmResponse = (String) messageMap.get("content");
+                }
+            }
+        }
+
+        // Save the LLM response in the context for further processing.
+        context.put("llmResponse", llmResponse);
+        log.debug("LLM response: {}", llmResponse);
+
+        // Return the next step identifier (here we simply return the templateId as a placeholder).
+        return node.getData().getTemplateId();
+    }
+
+    private record LLMRequest(String aiModel, String systemPrompt, String userInput, Map<String, Object> config) {
+    }
 }
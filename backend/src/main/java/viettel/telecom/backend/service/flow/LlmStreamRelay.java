@@ -0,0 +1,122 @@
+package viettel.telecom.backend.service.flow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays the token deltas of one streamed LLM response to a WebSocket client.
+ *
+ * Frames (all with sender=bot and the same streamId):
+ *   {"type": "delta", "message": "<text to append>"}                   while the response streams
+ *   {"type": "end", "message": "<full response>", "ttftMs": <number>}   once it is complete
+ *
+ * The first delta is sent right away; later ones are coalesced into one frame per interval.
+ * Time to first token (from the start of the call to the first delta frame) goes to the timer
+ * and the end frame. Frames are sent one at a time, whichever thread the deltas arrive on.
+ */
+@Slf4j
+class LlmStreamRelay {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final WebSocketSession session;
+    private final long coalesceMillis;
+    private final Timer timeToFirstToken;
+    private final String streamId = UUID.randomUUID().toString();
+    private final long startNanos = System.nanoTime();
+
+    private final StringBuilder pending = new StringBuilder();
+    private long firstTokenNanos = -1;
+    private Disposable scheduledFlush;
+    private boolean completed;
+
+    LlmStreamRelay(WebSocketSession session, long coalesceMillis, Timer timeToFirstToken) {
+        this.session = session;
+        this.coalesceMillis = coalesceMillis;
+        this.timeToFirstToken = timeToFirstToken;
+    }
+
+    synchronized void onDelta(String delta) {
+        if (completed || delta == null || delta.isEmpty()) {
+            return;
+        }
+        pending.append(delta);
+        if (firstTokenNanos < 0) {
+            firstTokenNanos = System.nanoTime() - startNanos;
+            timeToFirstToken.record(firstTokenNanos, TimeUnit.NANOSECONDS);
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = Schedulers.parallel().schedule(this::scheduledFlush, coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send what is still pending and the end frame with the full response.
+     */
+    synchronized void complete(String fullResponse) {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+        flush();
+
+        Map<String, Object> frame = frame("end", fullResponse);
+        if (firstTokenNanos >= 0) {
+            frame.put("ttftMs", Duration.ofNanos(firstTokenNanos).toMillis());
+        }
+        send(frame);
+        log.debug("Stream {} done: ttft={}ms, total={}ms", streamId,
+                firstTokenNanos >= 0 ? Duration.ofNanos(firstTokenNanos).toMillis() : null,
+                Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+    }
+
+    private synchronized void scheduledFlush() {
+        scheduledFlush = null;
+        if (!completed) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        send(frame("delta", pending.toString()));
+        pending.setLength(0);
+    }
+
+    private Map<String, Object> frame(String type, String message) {
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("sender", "bot");
+        frame.put("type", type);
+        frame.put("streamId", streamId);
+        frame.put("message", message);
+        return frame;
+    }
+
+    private void send(Map<String, Object> frame) {
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+        try {
+            session.sendMessage(new TextMessage(MAPPER.writeValueAsString(frame)));
+        } catch (Exception e) {
+            log.warn("Failed to send stream frame to session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+}
@@ -1,24 +1,33 @@
 package viettel.telecom.backend.service.flow;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.stereotype.Service;
-import viettel.telecom.backend.entity.flow.Flow;
-import viettel.telecom.backend.entity.flow.Flow.Node;
 import viettel.telecom.backend.entity.flow.LogicCase;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
 
-import java.util.List;
 import java.util.Map;
 
 /**
  * Evaluates a "logicNode" with multiple expressions (cases).
  * The first matching expression determines the next node ID.
+ *
+ * The cases of each node are compiled once (see {@link LogicNodeCompiler}): simple equality checks
+ * on one context key are dispatched with a hash lookup, other expressions are evaluated as SpEL.
+ * Compiled nodes are held weakly, so they go away with the compiled flow they belong to.
  */
 @Service
 public class LogicHandler {
 
     private final ConditionEvaluator conditionEvaluator;
+    private final LogicNodeCompiler logicNodeCompiler;
+    private final Cache<FlowNode, CompiledLogic> compiledLogic = Caffeine.newBuilder()
+            .weakKeys()
+            .build();
 
-    public LogicHandler(ConditionEvaluator conditionEvaluator) {
+    public LogicHandler(ConditionEvaluator conditionEvaluator, LogicNodeCompiler logicNodeCompiler) {
         this.conditionEvaluator = conditionEvaluator;
+        this.logicNodeCompiler = logicNodeCompiler;
     }
 
     /**
@@ -26,24 +35,18 @@ public class LogicHandler {
      * against the context map. The first that matches => returns that nextNode.
      * If none match, returns node.getNext() as a fallback.
      */
-    public String handle(Node node, Map<String, Object> context) {
+    public String handle(FlowNode node, Map<String, Object> context) {
         if (node.getData() == null || node.getData().getLogicCases() == null) {
             // No logic cases => fallback to node.getNext()
             return node.getNext();
         }
 
-        List<LogicCase> logicCases = node.getData().getLogicCases();
-        for (LogicCase logicCase : logicCases) {
-            String expression = logicCase.getExpression();
-            if (expression == null || expression.isEmpty()) {
-                continue; // skip blank expressions
-            }
-
-            boolean matched = conditionEvaluator.evaluate(expression, context);
-            if (matched) {
-                // Return the nextNode for this case
-                return logicCase.getNextNode();
-            }
+        CompiledLogic logic = compiledLogic.get(node,
+                n -> logicNodeCompiler.compile(n.getId(), n.getData().getLogicCases()));
+        LogicCase matched = logic.match(context, conditionEvaluator);
+        if (matched != null) {
+            // Return the nextNode for this case
+            return matched.getNextNode();
         }
 
         // If no expression matched, fallback to node.getNext()
@@ -0,0 +1,171 @@
+package viettel.telecom.backend.service.flow;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.CompoundExpression;
+import org.springframework.expression.spel.ast.Indexer;
+import org.springframework.expression.spel.ast.InlineList;
+import org.springframework.expression.spel.ast.MethodReference;
+import org.springframework.expression.spel.ast.OpEQ;
+import org.springframework.expression.spel.ast.OpOr;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.StringLiteral;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import viettel.telecom.backend.entity.flow.LogicCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the logic cases of a "logicNode" into a {@link CompiledLogic}.
+ *
+ * A case goes into a lookup table when its SpEL expression only checks one context key against
+ * string literals, e.g.:
+ *   userResponse == 'Yes'          ['userResponse'] == 'Yes'       'Yes' == #root['userResponse']
+ *   userResponse == 'A' or userResponse == 'B'                      {'A', 'B'}.contains(userResponse)
+ * Anything else is left to the SpEL evaluator.
+ */
+@Slf4j
+@Component
+public class LogicNodeCompiler {
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+
+    public CompiledLogic compile(String nodeId, List<LogicCase> logicCases) {
+        List<CompiledLogic.Segment> segments = new ArrayList<>();
+        String tableKey = null;
+        Map<String, LogicCase> table = null;
+        int tableCases = 0;
+
+        for (LogicCase logicCase : logicCases) {
+            String expression = logicCase.getExpression();
+            if (expression == null || expression.isEmpty()) {
+                continue; // skip blank expressions
+            }
+
+            KeyCheck check = analyze(expression);
+            if (check == null) {
+                if (table != null) {
+                    segments.add(new CompiledLogic.TableSegment(tableKey, table));
+                    table = null;
+                }
+                segments.add(new CompiledLogic.ExpressionSegment(logicCase));
+                continue;
+            }
+
+            if (table == null || !tableKey.equals(check.key())) {
+                if (table != null) {
+                    segments.add(new CompiledLogic.TableSegment(tableKey, table));
+                }
+                tableKey = check.key();
+                table = new HashMap<>();
+            }
+            for (String value : check.values()) {
+                // An earlier case with the same value wins, as in sequential evaluation
+                table.putIfAbsent(value, logicCase);
+            }
+            tableCases++;
+        }
+        if (table != null) {
+            segments.add(new CompiledLogic.TableSegment(tableKey, table));
+        }
+
+        log.debug("Compiled logic node {}: {} cases into {} segments ({} cases as lookups)",
+                nodeId, logicCases.size(), segments.size(), tableCases);
+        return new CompiledLogic(segments);
+    }
+
+    /**
+     * Returns the key and literal values checked by a simple expression, or null if it is not simple.
+     */
+    private KeyCheck analyze(String expression) {
+        try {
+            SpelNode ast = ((SpelExpression) parser.parseExpression(expression)).getAST();
+            return analyzeNode(ast);
+        } catch (Exception e) {
+            // Invalid expressions are reported (and evaluate to false) in the evaluator
+            return null;
+        }
+    }
+
+    private KeyCheck analyzeNode(SpelNode node) {
+        if (node instanceof OpEQ) {
+            String key = keyOf(node.getChild(0));
+            String value = literalOf(node.getChild(1));
+            if (key == null || value == null) {
+                key = keyOf(node.getChild(1));
+                value = literalOf(node.getChild(0));
+            }
+            return key != null && value != null ? new KeyCheck(key, Set.of(value)) : null;
+        }
+
+        if (node instanceof OpOr) {
+            KeyCheck left = analyzeNode(node.getChild(0));
+            KeyCheck right = analyzeNode(node.getChild(1));
+            if (left == null || right == null || !left.key().equals(right.key())) {
+                return null;
+            }
+            Set<String> values = new LinkedHashSet<>(left.values());
+            values.addAll(right.values());
+            return new KeyCheck(left.key(), values);
+        }
+
+        // {'A', 'B'}.contains(key)
+        if (node instanceof CompoundExpression && node.getChildCount() == 2
+                && node.getChild(0) instanceof InlineList list
+                && node.getChild(1) instanceof MethodReference method
+                && "contains".equals(method.getName()) && method.getChildCount() == 1) {
+            String key = keyOf(method.getChild(0));
+            if (key == null) {
+                return null;
+            }
+            Set<String> values = new LinkedHashSet<>();
+            for (int i = 0; i < list.getChildCount(); i++) {
+                String value = literalOf(list.getChild(i));
+                if (value == null) {
+                    return null;
+                }
+                values.add(value);
+            }
+            return new KeyCheck(key, values);
+        }
+        return null;
+    }
+
+    /**
+     * Context key read by: key, ['key'] or #root['key'].
+     */
+    private String keyOf(SpelNode node) {
+        if (node instanceof PropertyOrFieldReference property && !property.isNullSafe()) {
+            return property.getName();
+        }
+        if (node instanceof Indexer && node.getChildCount() == 1) {
+            return literalOf(node.getChild(0));
+        }
+        if (node instanceof CompoundExpression && node.getChildCount() == 2
+                && node.getChild(0) instanceof VariableReference
+                && "#root".equals(node.getChild(0).toStringAST())
+                && node.getChild(1) instanceof Indexer) {
+            return keyOf(node.getChild(1));
+        }
+        return null;
+    }
+
+    private String literalOf(SpelNode node) {
+        if (node instanceof StringLiteral literal) {
+            Object value = literal.getLiteralValue().getValue();
+            return value instanceof String ? (String) value : null;
+        }
+        return null;
+    }
+
+    private record KeyCheck(String key, Set<String> values) {
+    }
+}
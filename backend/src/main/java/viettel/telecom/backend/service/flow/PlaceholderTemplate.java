@@ -0,0 +1,80 @@
+package viettel.telecom.backend.service.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A string with "[name]" placeholders, parsed once into literal parts and variable slots.
+ *
+ * Rendering replaces each slot with the context value (toString) or "" if it is missing,
+ * using one builder sized from the literal length.
+ */
+public final class PlaceholderTemplate {
+
+    private final String[] literals;   // literals[i] comes before slots[i]; the last one is the tail
+    private final String[] slots;
+    private final int literalLength;
+
+    private PlaceholderTemplate(String[] literals, String[] slots, int literalLength) {
+        this.literals = literals;
+        this.slots = slots;
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * Parse a template. A placeholder is "[" + at least one character other than "]" + "]",
+     * like the \[([^\]]+)] pattern used before.
+     */
+    public static PlaceholderTemplate parse(String raw) {
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int literalLength = 0;
+        int pos = 0;
+        int search = 0;
+        while (true) {
+            int open = raw.indexOf('[', search);
+            if (open < 0) {
+                break;
+            }
+            int close = raw.indexOf(']', open + 1);
+            if (close < 0) {
+                break;
+            }
+            if (close == open + 1) {
+                // "[]" is not a placeholder
+                search = open + 1;
+                continue;
+            }
+            String literal = raw.substring(pos, open);
+            literals.add(literal);
+            literalLength += literal.length();
+            slots.add(raw.substring(open + 1, close));
+            pos = close + 1;
+            search = pos;
+        }
+        String tail = raw.substring(pos);
+        literals.add(tail);
+        literalLength += tail.length();
+        return new PlaceholderTemplate(literals.toArray(new String[0]), slots.toArray(new String[0]), literalLength);
+    }
+
+    public boolean hasPlaceholders() {
+        return slots.length > 0;
+    }
+
+    public String render(Map<String, Object> context) {
+        if (slots.length == 0) {
+            return literals[0];
+        }
+        StringBuilder sb = new StringBuilder(literalLength + slots.length * 16);
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(literals[i]);
+            Object value = context.get(slots[i]);
+            if (value != null) {
+                sb.append(value);
+            }
+        }
+        return sb.append(literals[slots.length]).toString();
+    }
+}
@@ -0,0 +1,76 @@
+package viettel.telecom.backend.service.flow;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled {@link PlaceholderTemplate}s for data node URLs and request bodies.
+ *
+ * The URL and body of a data node come from the last chat message, so the same template text
+ * shows up turn after turn; templates are therefore cached by their text (metrics: cache=placeholderTemplates).
+ */
+@Component
+public class PlaceholderTemplateCache {
+
+    private final Cache<String, PlaceholderTemplate> templates;
+
+    public PlaceholderTemplateCache(MeterRegistry meterRegistry,
+                                    @Value("${flow.data.template-cache-size:10000}") long templateCacheSize) {
+        this.templates = Caffeine.newBuilder()
+                .maximumSize(templateCacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, templates, "placeholderTemplates");
+    }
+
+    public String resolve(String raw, Map<String, Object> context) {
+        if (raw == null) {
+            return "";
+        }
+        // Nothing to resolve: skip the cache entirely
+        if (raw.indexOf('[') < 0) {
+            return raw;
+        }
+        return templates.get(raw, PlaceholderTemplate::parse).render(context);
+    }
+
+    /**
+     * Resolve placeholders in every string of a request body, including nested maps and lists.
+     * Other values (numbers, booleans, null) are kept as they are.
+     */
+    public Map<String, Object> resolve(Map<String, Object> rawMap, Map<String, Object> context) {
+        Map<String, Object> result = new LinkedHashMap<>(Math.max(16, rawMap.size() * 4 / 3 + 1));
+        for (Map.Entry<String, Object> e : rawMap.entrySet()) {
+            result.put(e.getKey(), resolveValue(e.getValue(), context));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object resolveValue(Object value, Map<String, Object> context) {
+        if (value instanceof String) {
+            return resolve((String) value, context);
+        }
+        if (value instanceof Map) {
+            return resolve((Map<String, Object>) value, context);
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> resolved = new ArrayList<>(list.size());
+            for (Object element : list) {
+                resolved.add(resolveValue(element, context));
+            }
+            return resolved;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,148 @@
+package viettel.telecom.backend.service.flow;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects fields from a data node response: output name => JSON pointer (e.g. "tier" => "/customer/tier",
+ * "firstItem" => "/items/0").
+ *
+ * The response is read with a streaming parser. Only the selected values are materialized, everything
+ * else is skipped token by token, and parsing stops as soon as every pointer has been found.
+ * Pointers that do not match are left out of the result.
+ */
+public final class ResponseProjection {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path root = new Path();
+    private final int outputCount;
+    private final String key;
+
+    private ResponseProjection(Map<String, String> fields) {
+        List<String> keyParts = new ArrayList<>();
+        int outputs = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            // JsonPointer.compile rejects pointers that do not start with "/"
+            JsonPointer pointer = JsonPointer.compile(field.getValue());
+            Path path = root;
+            for (JsonPointer p = pointer; !p.matches(); p = p.tail()) {
+                path = path.children.computeIfAbsent(p.getMatchingProperty(), name -> new Path());
+            }
+            path.outputs.add(field.getKey());
+            keyParts.add(field.getKey() + "=" + field.getValue());
+            outputs++;
+        }
+        this.outputCount = outputs;
+        this.key = String.join(",", keyParts);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a pointer is not a valid JSON pointer
+     */
+    public static ResponseProjection compile(Map<String, String> fields) {
+        return new ResponseProjection(fields);
+    }
+
+    /**
+     * Canonical description of the selection, used to tell cached responses of different projections apart.
+     */
+    public String key() {
+        return key;
+    }
+
+    public Map<String, Object> project(byte[] json) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (outputCount == 0 || json == null || json.length == 0) {
+            return result;
+        }
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            if (parser.nextToken() != null) {
+                walk(parser, root, result, new int[]{outputCount});
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot parse data node response", e);
+        }
+        return result;
+    }
+
+    /**
+     * Walk the value the parser is positioned on. Returns false once every output has been found.
+     */
+    private boolean walk(JsonParser parser, Path path, Map<String, Object> result, int[] remaining) throws IOException {
+        if (!path.outputs.isEmpty()) {
+            // Selected value: materialize it, and pick deeper selections from the materialized copy
+            Object value = MAPPER.readValue(parser, Object.class);
+            collect(value, path, result, remaining);
+            return remaining[0] > 0;
+        }
+
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Path child = path.children.get(parser.currentName());
+                parser.nextToken();
+                if (child == null) {
+                    parser.skipChildren();
+                } else if (!walk(parser, child, result, remaining)) {
+                    return false;
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                Path child = path.children.get(Integer.toString(index++));
+                if (child == null) {
+                    parser.skipChildren();
+                } else if (!walk(parser, child, result, remaining)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void collect(Object value, Path path, Map<String, Object> result, int[] remaining) {
+        for (String output : path.outputs) {
+            result.put(output, value);
+            remaining[0]--;
+        }
+        for (Map.Entry<String, Path> child : path.children.entrySet()) {
+            // Same as the streaming walk: a present null is selected, a missing value is left out
+            if (value instanceof Map<?, ?> map && map.containsKey(child.getKey())) {
+                collect(map.get(child.getKey()), child.getValue(), result, remaining);
+            } else if (value instanceof List<?> list) {
+                int index = indexOf(child.getKey());
+                if (index >= 0 && index < list.size()) {
+                    collect(list.get(index), child.getValue(), result, remaining);
+                }
+            }
+        }
+    }
+
+    private static int indexOf(String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * One pointer segment: the outputs that end here and the segments below it.
+     */
+    private static final class Path {
+        private final Map<String, Path> children = new HashMap<>();
+        private final List<String> outputs = new ArrayList<>();
+    }
+}
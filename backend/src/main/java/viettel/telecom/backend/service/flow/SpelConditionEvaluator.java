@@ -1,35 +1,126 @@
 package viettel.telecom.backend.service.flow;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.expression.MapAccessor;
 import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.expression.spel.support.StandardTypeConverter;
+import org.springframework.expression.spel.support.StandardTypeLocator;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * A Spring Expression Language-based implementation of ConditionEvaluator.
  * It parses the given expression as SpEL and evaluates it against a Map context.
+ *
+ * Parsed expressions are cached per expression string (metrics: cache=spelExpressions) and run in
+ * SpEL's MIXED compiler mode, so expressions evaluated often are compiled to bytecode.
+ * Each evaluation gets its own evaluation context (expressions may assign #variables), built from accessors,
+ * type locator and converter configured once; the context map is passed as root object.
+ * Map keys can be used as properties (userResponse == 'Yes') or with an indexer (['userResponse'] == 'Yes').
+ * Either way a missing key reads as null, in interpreted and compiled form alike, so a flow takes the same
+ * branch before and after an expression gets compiled.
  */
+@Slf4j
 @Service
 public class SpelConditionEvaluator implements ConditionEvaluator {
 
-    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final SpelExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, SpelConditionEvaluator.class.getClassLoader()));
+
+    private final List<PropertyAccessor> propertyAccessors =
+            List.of(new NullSafeMapAccessor(), new ReflectivePropertyAccessor());
+    private final StandardTypeLocator typeLocator = new StandardTypeLocator(SpelConditionEvaluator.class.getClassLoader());
+    private final StandardTypeConverter typeConverter = new StandardTypeConverter();
+    private final Cache<String, ParsedExpression> expressions;
+
+    public SpelConditionEvaluator(MeterRegistry meterRegistry,
+                                  @Value("${flow.logic.expression-cache-size:10000}") long expressionCacheSize) {
+        this.expressions = Caffeine.newBuilder()
+                .maximumSize(expressionCacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, expressions, "spelExpressions");
+    }
 
     @Override
     public boolean evaluate(String expression, Map<String, Object> context) {
+        ParsedExpression parsed = expressions.get(expression, this::parse);
+        if (parsed.expression() == null) {
+            return false;
+        }
         try {
-            // Create an evaluation context from the given map
-            EvaluationContext evalContext = new StandardEvaluationContext(context);
-
-            // Parse and evaluate the expression, expecting a Boolean result
-            Boolean result = parser.parseExpression(expression).getValue(evalContext, Boolean.class);
+            // Evaluate against the context map, expecting a Boolean result
+            Boolean result = parsed.expression().getValue(evaluationContext(), context, Boolean.class);
 
             // Return true only if the parsed result is explicitly true
             return Boolean.TRUE.equals(result);
         } catch (Exception e) {
-            // If there's a parsing or runtime error, treat it as false or handle differently
+            // If there's a runtime error, treat it as false
             return false;
         }
     }
+
+    /**
+     * A fresh context per evaluation, so #variables set by one expression never reach another flow or thread.
+     * The accessors, type locator and converter are stateless and shared.
+     */
+    private EvaluationContext evaluationContext() {
+        StandardEvaluationContext evaluationContext = new StandardEvaluationContext();
+        evaluationContext.setPropertyAccessors(propertyAccessors);
+        evaluationContext.setTypeLocator(typeLocator);
+        evaluationContext.setTypeConverter(typeConverter);
+        return evaluationContext;
+    }
+
+    /**
+     * Parse once per expression string. Invalid expressions are cached too, so they are not re-parsed every turn.
+     */
+    private ParsedExpression parse(String expression) {
+        try {
+            return new ParsedExpression(parser.parseExpression(expression));
+        } catch (Exception e) {
+            log.warn("Invalid logic expression '{}': {}", expression, e.getMessage());
+            return new ParsedExpression(null);
+        }
+    }
+
+    private record ParsedExpression(Expression expression) {
+    }
+
+    /**
+     * MapAccessor that reads a missing key as null instead of failing over to the next accessor.
+     * Its compiled form (inherited) is a plain Map.get, so both forms give the same result.
+     */
+    static final class NullSafeMapAccessor extends MapAccessor {
+
+        NullSafeMapAccessor() {
+            super(false);
+        }
+
+        @Override
+        public boolean canRead(EvaluationContext context, @Nullable Object target, String name) {
+            return target instanceof Map;
+        }
+
+        @Override
+        public TypedValue read(EvaluationContext context, @Nullable Object target, String name) {
+            return new TypedValue(((Map<?, ?>) target).get(name));
+        }
+    }
 }
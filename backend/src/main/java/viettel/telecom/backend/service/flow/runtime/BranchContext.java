@@ -0,0 +1,150 @@
+package viettel.telecom.backend.service.flow.runtime;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copy-on-write view of the flow context used by one fork branch.
+ *
+ * Reads fall through to a snapshot of the context taken when the fork started; writes and removals
+ * are kept in the branch's own overlay, so concurrent branches never see each other's changes.
+ * Nested maps and lists of the snapshot (e.g. merged API responses) are shared by all branches, so
+ * they are deep-copied on first read; a copy counts as a change only if the branch modified it.
+ * The join then applies the overlays of the branches it keeps with {@link #applyTo(Map)}.
+ * A branch context is only used by the thread running its branch.
+ */
+public class BranchContext extends AbstractMap<String, Object> {
+
+    private static final Object REMOVED = new Object();
+
+    private final Map<String, Object> base;
+    private final Map<String, Object> writes = new HashMap<>();
+    // Private copies of nested snapshot values read by this branch
+    private final Map<String, Object> copies = new HashMap<>();
+
+    /**
+     * @param base read-only snapshot shared by all branches of the fork
+     */
+    public BranchContext(Map<String, Object> base) {
+        this.base = base;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (writes.containsKey(key)) {
+            Object value = writes.get(key);
+            return value == REMOVED ? null : value;
+        }
+        Object value = base.get(key);
+        if (key instanceof String name && (value instanceof Map || value instanceof List)) {
+            return copies.computeIfAbsent(name, k -> deepCopy(value));
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (writes.containsKey(key)) {
+            return writes.get(key) != REMOVED;
+        }
+        return base.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = get(key);
+        writes.put(key, value);
+        copies.remove(key);
+        return previous;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Object previous = get(key);
+        copies.remove(key);
+        if (base.containsKey(key)) {
+            writes.put((String) key, REMOVED);
+        } else {
+            writes.remove(key);
+        }
+        return previous;
+    }
+
+    /**
+     * Merged, read-only view of the snapshot and this branch's changes.
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Set<String> keys = new LinkedHashSet<>(base.keySet());
+        keys.addAll(writes.keySet());
+        Map<String, Object> merged = new HashMap<>();
+        for (String key : keys) {
+            if (containsKey(key)) {
+                merged.put(key, get(key));
+            }
+        }
+        return Collections.unmodifiableMap(merged).entrySet();
+    }
+
+    /**
+     * Values written or modified in place by this branch (removals are not included).
+     */
+    public Map<String, Object> getChanges() {
+        Map<String, Object> changes = new HashMap<>();
+        writes.forEach((key, value) -> {
+            if (value != REMOVED) {
+                changes.put(key, value);
+            }
+        });
+        changes.putAll(modifiedCopies());
+        return changes;
+    }
+
+    /**
+     * Replay this branch's writes and removals onto the given map.
+     */
+    public void applyTo(Map<String, Object> target) {
+        writes.forEach((key, value) -> {
+            if (value == REMOVED) {
+                target.remove(key);
+            } else {
+                target.put(key, value);
+            }
+        });
+        target.putAll(modifiedCopies());
+    }
+
+    private Map<String, Object> modifiedCopies() {
+        Map<String, Object> modified = new HashMap<>();
+        copies.forEach((key, copy) -> {
+            if (!copy.equals(base.get(key))) {
+                modified.put(key, copy);
+            }
+        });
+        return modified;
+    }
+
+    private static Object deepCopy(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            map.forEach((k, v) -> copy.put(k, deepCopy(v)));
+            return copy;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(v -> copy.add(deepCopy(v)));
+            return copy;
+        }
+        return value;
+    }
+}
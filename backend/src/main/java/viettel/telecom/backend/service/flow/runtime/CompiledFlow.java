@@ -0,0 +1,89 @@
+package viettel.telecom.backend.service.flow.runtime;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, indexed form of a Flow built once per flow version by {@link FlowCompiler}.
+ * Node lookups and edge traversal are O(1) instead of scanning the node/edge lists.
+ */
+public class CompiledFlow {
+
+    @Getter
+    private final String id;
+
+    @Getter
+    private final String version;
+
+    private final FlowNode startNode;
+    private final Map<String, FlowNode> nodesById;
+    private final Map<String, List<String>> outgoingTargets;
+    private final Map<String, String> joinNodeIds;
+
+    CompiledFlow(String id,
+                 String version,
+                 FlowNode startNode,
+                 Map<String, FlowNode> nodesById,
+                 Map<String, List<String>> outgoingTargets,
+                 Map<String, String> joinNodeIds) {
+        this.id = id;
+        this.version = version;
+        this.startNode = startNode;
+        this.nodesById = nodesById;
+        this.outgoingTargets = outgoingTargets;
+        this.joinNodeIds = joinNodeIds;
+    }
+
+    /**
+     * Returns the node with the given ID, or null if the flow has no such node.
+     */
+    public FlowNode getNode(String nodeId) {
+        return nodeId == null ? null : nodesById.get(nodeId);
+    }
+
+    /**
+     * Returns the target node IDs of all edges leaving the given node, in edge order.
+     */
+    public List<String> getOutgoingTargets(String nodeId) {
+        List<String> targets = outgoingTargets.get(nodeId);
+        return targets != null ? targets : Collections.emptyList();
+    }
+
+    /**
+     * Find the next node by looking at the first edge with source == node.id
+     */
+    public FlowNode getNextNode(FlowNode node) {
+        List<String> targets = outgoingTargets.get(node.getId());
+        if (targets == null || targets.isEmpty()) {
+            return null;
+        }
+        return nodesById.get(targets.get(0));
+    }
+
+    /**
+     * Returns the "joinNode" where the branches of the given fork node meet, or null if they never do.
+     */
+    public FlowNode getJoinNode(String forkNodeId) {
+        String joinId = joinNodeIds.get(forkNodeId);
+        return joinId != null ? nodesById.get(joinId) : null;
+    }
+
+    /**
+     * Returns the "startNode" of this flow.
+     *
+     * @throws IllegalArgumentException if the flow has no start node.
+     */
+    public FlowNode getStartNode() {
+        if (startNode == null) {
+            throw new IllegalArgumentException("Start node not found in flow");
+        }
+        return startNode;
+    }
+
+    public int getNodeCount() {
+        return nodesById.size();
+    }
+}
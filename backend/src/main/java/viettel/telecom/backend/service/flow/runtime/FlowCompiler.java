@@ -0,0 +1,142 @@
+package viettel.telecom.backend.service.flow.runtime;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import viettel.telecom.backend.entity.flow.Flow;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a stored {@link Flow} into a {@link CompiledFlow}.
+ * The compiled form is kept per flow ID and reused as long as the flow version (updatedAt) is unchanged.
+ */
+@Slf4j
+@Service
+public class FlowCompiler {
+
+    private final Map<String, CompiledFlow> compiledFlows = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the compiled form of the given flow, compiling it only if this version has not been seen yet.
+     */
+    public CompiledFlow compile(Flow flow) {
+        if (flow == null) {
+            throw new IllegalArgumentException("Flow cannot be null");
+        }
+        String version = flow.getUpdatedAt();
+        if (flow.getId() == null || version == null) {
+            // No stable identity => cannot safely reuse a previous compilation
+            return doCompile(flow);
+        }
+
+        CompiledFlow cached = compiledFlows.get(flow.getId());
+        if (cached != null && version.equals(cached.getVersion())) {
+            return cached;
+        }
+
+        CompiledFlow compiled = doCompile(flow);
+        compiledFlows.put(flow.getId(), compiled);
+        return compiled;
+    }
+
+    /**
+     * Drop the compiled form of a flow (e.g. when the flow is deleted).
+     */
+    public void evict(String flowId) {
+        if (flowId != null) {
+            compiledFlows.remove(flowId);
+        }
+    }
+
+    private CompiledFlow doCompile(Flow flow) {
+        List<Flow.Node> nodes = flow.getNodes() != null ? flow.getNodes() : Collections.emptyList();
+        List<Flow.Edge> edges = flow.getEdges() != null ? flow.getEdges() : Collections.emptyList();
+
+        Map<String, FlowNode> nodesById = new HashMap<>(nodes.size() * 2);
+        FlowNode startNode = null;
+        for (Flow.Node node : nodes) {
+            if (node == null || node.getId() == null) {
+                continue;
+            }
+            FlowNode runtimeNode = FlowNode.from(node);
+            // Keep the first definition, like the previous linear scan did
+            nodesById.putIfAbsent(runtimeNode.getId(), runtimeNode);
+            if (startNode == null && "startNode".equals(runtimeNode.getType())) {
+                startNode = runtimeNode;
+            }
+        }
+
+        Map<String, List<String>> outgoing = new HashMap<>();
+        for (Flow.Edge edge : edges) {
+            if (edge == null || edge.getSource() == null) {
+                continue;
+            }
+            outgoing.computeIfAbsent(edge.getSource(), k -> new ArrayList<>()).add(edge.getTarget());
+        }
+        outgoing.replaceAll((source, targets) -> Collections.unmodifiableList(targets));
+
+        Map<String, String> joinNodeIds = new HashMap<>();
+        for (FlowNode node : nodesById.values()) {
+            if ("forkNode".equals(node.getType())) {
+                String joinId = findJoin(node.getId(), nodesById, outgoing);
+                if (joinId != null) {
+                    joinNodeIds.put(node.getId(), joinId);
+                } else {
+                    log.warn("Fork node {} in flow {} has no matching join node", node.getId(), flow.getId());
+                }
+            }
+        }
+
+        log.debug("Compiled flow {} (version {}): {} nodes, {} edges",
+                flow.getId(), flow.getUpdatedAt(), nodesById.size(), edges.size());
+        return new CompiledFlow(flow.getId(), flow.getUpdatedAt(), startNode,
+                Collections.unmodifiableMap(nodesById), Collections.unmodifiableMap(outgoing),
+                Collections.unmodifiableMap(joinNodeIds));
+    }
+
+    /**
+     * Breadth-first search from a fork node for the join node its branches meet at.
+     * Nested fork/join pairs on the way are skipped by tracking the fork depth.
+     */
+    private String findJoin(String forkId, Map<String, FlowNode> nodesById, Map<String, List<String>> outgoing) {
+        Deque<Map.Entry<String, Integer>> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        for (String target : outgoing.getOrDefault(forkId, Collections.emptyList())) {
+            if (target != null) {
+                queue.add(Map.entry(target, 0));
+            }
+        }
+        while (!queue.isEmpty()) {
+            Map.Entry<String, Integer> entry = queue.poll();
+            FlowNode node = nodesById.get(entry.getKey());
+            int depth = entry.getValue();
+            // The depth bound stops cycles through fork nodes from growing forever
+            if (node == null || depth > nodesById.size() || !visited.add(node.getId() + '#' + depth)) {
+                continue;
+            }
+            if ("joinNode".equals(node.getType())) {
+                if (depth == 0) {
+                    return node.getId();
+                }
+                depth--;
+            } else if ("forkNode".equals(node.getType())) {
+                depth++;
+            }
+            for (String target : outgoing.getOrDefault(node.getId(), Collections.emptyList())) {
+                if (target != null) {
+                    queue.add(Map.entry(target, depth));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package viettel.telecom.backend.service.flow.runtime;
+
+import lombok.Getter;
+import viettel.telecom.backend.entity.flow.Flow;
+
+/**
+ * Lean, read-only runtime view of a {@link Flow.Node}.
+ * Only carries what the executor needs (no UI-only data such as Position).
+ */
+@Getter
+public class FlowNode {
+
+    private final String id;
+    private final String type;
+    private final Flow.Node.NodeData data;
+    private final String next;
+
+    public FlowNode(String id, String type, Flow.Node.NodeData data, String next) {
+        this.id = id;
+        this.type = type;
+        this.data = data;
+        this.next = next;
+    }
+
+    /**
+     * Build a runtime node from a stored node (e.g. for tools that receive a raw Flow.Node).
+     */
+    public static FlowNode from(Flow.Node node) {
+        if (node == null) {
+            return null;
+        }
+        return new FlowNode(node.getId(), node.getType(), node.getData(), node.getNext());
+    }
+
+    @Override
+    public String toString() {
+        return "FlowNode{id='" + id + "', type='" + type + "'}";
+    }
+}
@@ -0,0 +1,92 @@
+package viettel.telecom.backend.service.flow.runtime;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact record of one executor turn: which nodes were visited, how long each took,
+ * and where the flow paused (or that it ended).
+ */
+@Getter
+public class FlowTurnRecord {
+
+    public enum Outcome {
+        RUNNING,
+        PAUSED,
+        ENDED,
+        FAILED,
+        LIMIT_EXCEEDED
+    }
+
+    /**
+     * A single visited node and the time spent in it.
+     */
+    @Getter
+    public static class NodeVisit {
+        private final String nodeId;
+        private final String type;
+        private final long durationMicros;
+
+        NodeVisit(String nodeId, String type, long durationMicros) {
+            this.nodeId = nodeId;
+            this.type = type;
+            this.durationMicros = durationMicros;
+        }
+    }
+
+    private final String flowId;
+    private final String entryNodeId;
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final List<NodeVisit> visits = new ArrayList<>(4);
+    private Outcome outcome = Outcome.RUNNING;
+    private String nextNodeId;
+    private long totalMicros;
+
+    public FlowTurnRecord(String flowId, String entryNodeId) {
+        this.flowId = flowId;
+        this.entryNodeId = entryNodeId;
+    }
+
+    public void addVisit(String nodeId, String type, long durationNanos) {
+        visits.add(new NodeVisit(nodeId, type, durationNanos / 1_000));
+    }
+
+    public void finish(Outcome outcome, String nextNodeId, long totalNanos) {
+        this.outcome = outcome;
+        this.nextNodeId = nextNodeId;
+        this.totalMicros = totalNanos / 1_000;
+    }
+
+    public List<NodeVisit> getVisits() {
+        return Collections.unmodifiableList(visits);
+    }
+
+    public int getStepCount() {
+        return visits.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(64 + visits.size() * 32);
+        sb.append("flow=").append(flowId)
+                .append(" outcome=").append(outcome)
+                .append(" steps=").append(visits.size())
+                .append(" total=").append(totalMicros / 1_000).append("ms");
+        if (nextNodeId != null) {
+            sb.append(" next=").append(nextNodeId);
+        }
+        sb.append(" [");
+        for (int i = 0; i < visits.size(); i++) {
+            NodeVisit visit = visits.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(visit.nodeId).append(':').append(visit.type)
+                    .append(' ').append(visit.durationMicros / 1_000).append("ms");
+        }
+        return sb.append(']').toString();
+    }
+}
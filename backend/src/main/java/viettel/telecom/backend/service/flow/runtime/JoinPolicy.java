@@ -0,0 +1,36 @@
+package viettel.telecom.backend.service.flow.runtime;
+
+/**
+ * How a "joinNode" decides that the branches of its fork are done.
+ */
+public enum JoinPolicy {
+
+    /** Every branch must succeed; the first failure fails the join. */
+    ALL,
+
+    /** The first branch that succeeds wins; the others are cancelled. */
+    FIRST_SUCCESS,
+
+    /** A given number of branches must succeed; the others are cancelled. */
+    QUORUM;
+
+    /**
+     * Parse the joinPolicy of a node ("all", "firstSuccess", "first-success", "quorum").
+     * Missing or unknown values fall back to ALL.
+     */
+    public static JoinPolicy from(String value) {
+        if (value == null || value.isBlank()) {
+            return ALL;
+        }
+        switch (value.trim().replace("-", "").replace("_", "").toLowerCase()) {
+            case "firstsuccess":
+            case "first":
+            case "any":
+                return FIRST_SUCCESS;
+            case "quorum":
+                return QUORUM;
+            default:
+                return ALL;
+        }
+    }
+}
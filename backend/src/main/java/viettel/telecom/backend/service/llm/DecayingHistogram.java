@@ -0,0 +1,82 @@
+package viettel.telecom.backend.service.llm;
+
+/**
+ * Latency histogram whose old samples fade out: every weight halves once per half-life, so its quantiles
+ * follow how a provider behaves now rather than since startup.
+ *
+ * Buckets are log-spaced (x1.5) from 10 ms up to about two minutes; quantiles are interpolated within a bucket.
+ */
+final class DecayingHistogram {
+
+    private static final double FIRST_BOUND_MILLIS = 10;
+    private static final double GROWTH = 1.5;
+    private static final int BUCKETS = 24;
+
+    private final double[] weights = new double[BUCKETS];
+    private final long halfLifeNanos;
+    private long decayedAt = System.nanoTime();
+    private double total;
+
+    DecayingHistogram(long halfLifeNanos) {
+        this.halfLifeNanos = halfLifeNanos;
+    }
+
+    synchronized void record(double millis) {
+        decay(System.nanoTime());
+        weights[bucket(millis)] += 1;
+        total += 1;
+    }
+
+    /**
+     * Decayed number of samples.
+     */
+    synchronized double weight() {
+        decay(System.nanoTime());
+        return total;
+    }
+
+    /**
+     * @return the q-quantile in milliseconds, NaN without samples
+     */
+    synchronized double quantile(double q) {
+        decay(System.nanoTime());
+        if (total <= 0) {
+            return Double.NaN;
+        }
+        double target = q * total;
+        double cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (cumulative + weights[i] >= target && weights[i] > 0) {
+                double lower = i == 0 ? 0 : upperBound(i - 1);
+                return lower + (upperBound(i) - lower) * (target - cumulative) / weights[i];
+            }
+            cumulative += weights[i];
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private void decay(long now) {
+        long elapsed = now - decayedAt;
+        if (elapsed <= 0) {
+            return;
+        }
+        double factor = Math.pow(0.5, (double) elapsed / halfLifeNanos);
+        for (int i = 0; i < BUCKETS; i++) {
+            weights[i] *= factor;
+        }
+        total *= factor;
+        decayedAt = now;
+    }
+
+    private static int bucket(double millis) {
+        if (millis <= FIRST_BOUND_MILLIS) {
+            return 0;
+        }
+        int index = (int) Math.ceil(Math.log(millis / FIRST_BOUND_MILLIS) / Math.log(GROWTH));
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    private static double upperBound(int bucket) {
+        return FIRST_BOUND_MILLIS * Math.pow(GROWTH, bucket);
+    }
+}
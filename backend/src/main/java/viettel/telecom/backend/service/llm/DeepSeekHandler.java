@@ -1,14 +1,13 @@
 package viettel.telecom.backend.service.llm;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.http.*;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import viettel.telecom.backend.service.model.ModelHandler;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,24 +15,14 @@ import java.util.Map;
 @Service("deepseek")
 public class DeepSeekHandler implements ModelHandler {
 
-    private final RestTemplate restTemplate;
+    private final LlmTransport.Provider transport;
     private final WebClient webClient;
-    private final String apiUrl;
-    private final String apiKey;
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public DeepSeekHandler(RestTemplate restTemplate,
-                         WebClient.Builder webClientBuilder,
+    public DeepSeekHandler(LlmTransport llmTransport,
                          @Value("${deepseek.api.url}") String apiUrl,
                          @Value("${deepseek.api.key}") String apiKey) {
-        this.restTemplate = restTemplate;
-        this.apiUrl = apiUrl;
-        this.apiKey = apiKey;
-        this.webClient = webClientBuilder
-                .baseUrl(apiUrl)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                .build();
+        this.transport = llmTransport.provider("deepseek", apiUrl, apiKey);
+        this.webClient = transport.webClient();
     }
 
     @Override
@@ -42,72 +31,89 @@ public class DeepSeekHandler implements ModelHandler {
         boolean stream = (boolean) config.getOrDefault("stream", false);
 
         if (stream) {
-            // --- Streaming Mode using WebClient ---
-            StringBuilder responseBuilder = new StringBuilder();
+            // --- Streaming Mode ---
+            SseChunkDecoder.Accumulator completion = new SseChunkDecoder.Accumulator();
             // The API returns a stream of chunks (each is a JSON object prefixed by "data:")
-            webClient.post()
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToFlux(String.class)
+            transport.withDeadline(webClient.post()
+                            .attributes(LlmRateLimiter.attributes(requestBody, config))
+                            .bodyValue(requestBody)
+                            .retrieve()
+                            .bodyToFlux(String.class))
                     .toStream()
-                    .forEach(chunk -> {
-                        String trimmed = chunk.trim();
-                        // Skip "[DONE]" messages
-                        if (trimmed.equals("[DONE]")) {
-                            return;
-                        }
-                        // Remove any "data:" prefix
-                        String data = trimmed.startsWith("data:") ? trimmed.substring(5).trim() : trimmed;
-                        if (!data.isEmpty()) {
-                            try {
-                                Map<String, Object> chunkMap = objectMapper.readValue(data, Map.class);
-                                // Check if this chunk contains a "choices" array
-                                if (chunkMap.containsKey("choices")) {
-                                    List<Map<String, Object>> choices = (List<Map<String, Object>>) chunkMap.get("choices");
-                                    if (choices != null && !choices.isEmpty()) {
-                                        Map<String, Object> choice = choices.get(0);
-                                        // In streaming mode, OpenAI sends "delta" objects
-                                        if (choice.containsKey("delta")) {
-                                            Map<String, Object> delta = (Map<String, Object>) choice.get("delta");
-                                            if (delta != null && delta.get("content") != null) {
-                                                responseBuilder.append(delta.get("content").toString());
-                                            }
-                                        }
-                                        // Fallback: if no "delta", try to get "message"
-                                        else if (choice.containsKey("message")) {
-                                            Map<String, Object> messageMap = (Map<String, Object>) choice.get("message");
-                                            if (messageMap != null && messageMap.get("content") != null) {
-                                                responseBuilder.append(messageMap.get("content").toString());
-                                            }
-                                        }
-                                    }
-                                }
-                            } catch (IOException e) {
-                                // Log and ignore individual chunk errors
-                                e.printStackTrace();
-                            }
-                        }
-                    });
-            // Build a result map that mimics a non-streaming response structure.
-            Map<String, Object> result = new HashMap<>();
-            // Option 1: Put the accumulated text under a key "content"
-            result.put("content", responseBuilder.toString());
-            // Option 2: Mimic the "choices" structure:
-            result.put("choices", List.of(Map.of("message", Map.of("content", responseBuilder.toString()))));
-            return result;
+                    .forEach(completion::append);
+            return buildStreamResult(completion);
         } else {
-            // --- Non-Streaming Mode using RestTemplate ---
+            // --- Non-Streaming Mode ---
             // Force stream to false in the payload.
             requestBody.put("stream", false);
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-            HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<Map> response = restTemplate.exchange(apiUrl, HttpMethod.POST, requestEntity, Map.class);
-            return response.getBody();
+            return transport.withDeadline(webClient.post()
+                            .attributes(LlmRateLimiter.attributes(requestBody, config))
+                            .bodyValue(requestBody)
+                            .retrieve()
+                            .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}))
+                    .block();
         }
     }
 
+    /**
+     * Non-blocking variant of {@link #generateResponse}, on the same pooled transport.
+     */
+    @Override
+    public Mono<Map<String, Object>> generateResponseAsync(String systemPrompt, String userInput, Map<String, Object> config) {
+        Map<String, Object> requestBody = buildRequestBody(systemPrompt, userInput, config);
+        boolean stream = Boolean.TRUE.equals(config.get("stream"));
+
+        if (stream) {
+            return transport.withDeadline(webClient.post()
+                            .attributes(LlmRateLimiter.attributes(requestBody, config))
+                            .bodyValue(requestBody)
+                            .retrieve()
+                            .bodyToFlux(String.class))
+                    .reduceWith(SseChunkDecoder.Accumulator::new, SseChunkDecoder.Accumulator::append)
+                    .map(this::buildStreamResult);
+        }
+        requestBody.put("stream", false);
+        return transport.withDeadline(webClient.post()
+                .attributes(LlmRateLimiter.attributes(requestBody, config))
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}));
+    }
+
+    /**
+     * Token deltas of a streamed completion, relayed as they arrive (no buffering of the whole response).
+     */
+    @Override
+    public Flux<String> streamResponse(String systemPrompt, String userInput, Map<String, Object> config) {
+        Map<String, Object> requestBody = buildRequestBody(systemPrompt, userInput, config);
+        requestBody.put("stream", true);
+        return transport.withDeadline(webClient.post()
+                        .attributes(LlmRateLimiter.attributes(requestBody, config))
+                        .bodyValue(requestBody)
+                        .retrieve()
+                        .bodyToFlux(String.class))
+                .mapNotNull(chunk -> {
+                    SseChunkDecoder.Delta delta = SseChunkDecoder.decode(chunk);
+                    return delta != null ? delta.content() : null;
+                });
+    }
+
+    /**
+     * Build a result map that mimics a non-streaming response structure.
+     */
+    private Map<String, Object> buildStreamResult(SseChunkDecoder.Accumulator completion) {
+        String content = completion.content();
+        Map<String, Object> result = new HashMap<>();
+        // Option 1: Put the accumulated text under a key "content"
+        result.put("content", content);
+        // Option 2: Mimic the "choices" structure:
+        Map<String, Object> choice = new HashMap<>();
+        choice.put("message", Map.of("content", content));
+        choice.put("finish_reason", completion.finishReason());
+        result.put("choices", List.of(choice));
+        return result;
+    }
+
     private Map<String, Object> buildRequestBody(String systemPrompt, String userInput, Map<String, Object> config) {
         Map<String, Object> requestBody = new HashMap<>();
         // Use the provided aiModel or default to "gpt-4"
@@ -0,0 +1,101 @@
+package viettel.telecom.backend.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Local, deterministic embedder: words, word pairs and character trigrams of the lower-cased text
+ * (accents removed) are hashed into a fixed number of signed buckets and the vector is L2-normalized.
+ *
+ * It only captures lexical similarity, so paraphrases with different words score lower than with a
+ * model embedder; it needs no network call and gives the same vector on every replica.
+ */
+@Component("hashingEmbedder")
+public class HashingTextEmbedder implements TextEmbedder {
+
+    private final int dimensions;
+
+    public HashingTextEmbedder(@Value("${llm.semantic-cache.hashing.dimensions:384}") int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public String id() {
+        return "hashing_" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        if (text == null) {
+            return vector;
+        }
+        List<String> words = words(text);
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            add(vector, "w:" + word, 1.0f);
+            if (i > 0) {
+                add(vector, "b:" + words.get(i - 1) + ' ' + word, 0.5f);
+            }
+            // Trigrams make typos and inflections land close to the original word
+            String padded = '<' + word + '>';
+            for (int j = 0; j + 3 <= padded.length(); j++) {
+                add(vector, "t:" + padded.substring(j, j + 3), 0.25f);
+            }
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    private static List<String> words(String text) {
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('\u0111', 'd'); // d with stroke has no combining form
+        List<String> words = new ArrayList<>();
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private void add(float[] vector, String feature, float weight) {
+        int hash = mix(feature.hashCode());
+        // One bit of the hash picks the sign, so unrelated features cancel out instead of piling up
+        vector[Math.floorMod(hash >>> 1, dimensions)] += (hash & 1) == 0 ? weight : -weight;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static void normalize(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        if (sum == 0) {
+            return;
+        }
+        float norm = (float) Math.sqrt(sum);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= norm;
+        }
+    }
+}
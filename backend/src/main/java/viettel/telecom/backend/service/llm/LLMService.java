@@ -1,20 +1,185 @@
 package viettel.telecom.backend.service.llm;
 
 import org.springframework.stereotype.Service;
-import viettel.telecom.backend.service.model.ModelHandler;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class LLMService {
 
-    private final Map<String, ModelHandler> modelHandlers;
+    private final LlmRouter router;
+    private final LlmResponseCache responseCache;
+    private final SemanticLlmCache semanticCache;
+    private final LlmRequestCoalescer coalescer;
 
-    public LLMService(Map<String, ModelHandler> modelHandlers) {
-        this.modelHandlers = modelHandlers;
+    public LLMService(LlmRouter router, LlmResponseCache responseCache,
+                      SemanticLlmCache semanticCache, LlmRequestCoalescer coalescer) {
+        this.router = router;
+        this.responseCache = responseCache;
+        this.semanticCache = semanticCache;
+        this.coalescer = coalescer;
     }
 
     public Map<String, Object> processRequest(String modelType, String systemPrompt, String userInput, Map<String, Object> config) {
+        String resolvedKey = resolveKey(modelType, config);
+
+        System.out.println("System Prompt: " + systemPrompt);
+        System.out.println("User Input: " + userInput);
+        System.out.println("Config: " + config);
+
+        String key = responseCache.key(resolvedKey, systemPrompt, userInput, config);
+        String cacheKey = responseCache.isCacheable(config) ? key : null;
+        if (cacheKey != null) {
+            Map<String, Object> cached = responseCache.get(cacheKey, config);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return coalescer.join(key, () -> generate(resolvedKey, systemPrompt, userInput, config, cacheKey));
+    }
+
+    /**
+     * Non-blocking variant of {@link #processRequest}, used by the reactive flow execution mode.
+     */
+    public Mono<Map<String, Object>> processRequestAsync(String modelType, String systemPrompt, String userInput, Map<String, Object> config) {
+        return Mono.defer(() -> {
+            String resolvedKey = resolveKey(modelType, config);
+            String key = responseCache.key(resolvedKey, systemPrompt, userInput, config);
+            if (!responseCache.isCacheable(config)) {
+                return coalescer.joinAsync(key, () -> generateAsync(resolvedKey, systemPrompt, userInput, config, null));
+            }
+            return responseCache.getAsync(key, config)
+                    .switchIfEmpty(coalescer.joinAsync(key,
+                            () -> generateAsync(resolvedKey, systemPrompt, userInput, config, key)));
+        });
+    }
+
+    /**
+     * Streamed variant of {@link #processRequest}: emits the text deltas of the response as they arrive.
+     * A cached response (exact or semantic) is emitted as a single delta.
+     */
+    public Flux<String> streamRequest(String modelType, String systemPrompt, String userInput, Map<String, Object> config) {
+        return Flux.defer(() -> {
+            String resolvedKey = resolveKey(modelType, config);
+            Map<String, Object> streamConfig = new HashMap<>(config);
+            streamConfig.put("stream", true);
+            String key = responseCache.key(resolvedKey, systemPrompt, userInput, streamConfig);
+            if (!responseCache.isCacheable(config)) {
+                return coalescer.joinStream(key, () -> generateStream(resolvedKey, systemPrompt, userInput, config, null));
+            }
+            return responseCache.getAsync(key, config)
+                    .flatMapMany(cached -> Flux.just(contentOf(cached)))
+                    .switchIfEmpty(coalescer.joinStream(key,
+                            () -> generateStream(resolvedKey, systemPrompt, userInput, config, key)));
+        });
+    }
+
+    /**
+     * Provider call of a cache miss, after a look into the semantic cache; run once per group of identical calls.
+     */
+    private Map<String, Object> generate(String resolvedKey, String systemPrompt, String userInput,
+                                         Map<String, Object> config, String cacheKey) {
+        SemanticLlmCache.Lookup similar = null;
+        if (semanticCache.isEligible(config)) {
+            // Same key as the exact cache, minus the user input: the answer must come from the same prompt and model
+            similar = semanticCache.lookup(responseCache.key(resolvedKey, systemPrompt, "", config), userInput, config);
+            if (similar != null && similar.response() != null) {
+                if (cacheKey != null) {
+                    responseCache.put(cacheKey, similar.response());
+                }
+                return similar.response();
+            }
+        }
+
+        long start = System.nanoTime();
+        Map<String, Object> result = router.call(resolvedKey, config,
+                (handler, routeConfig) -> handler.generateResponseAsync(systemPrompt, userInput, routeConfig))
+                .block();
+        System.out.println("Generated Response: " + result);
+        if (cacheKey != null) {
+            responseCache.put(cacheKey, result);
+        }
+        semanticCache.put(similar, result, (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * Non-blocking {@link #generate}: the semantic lookup runs on the bounded elastic scheduler.
+     */
+    private Mono<Map<String, Object>> generateAsync(String resolvedKey, String systemPrompt, String userInput,
+                                                    Map<String, Object> config, String cacheKey) {
+        return lookupSimilar(resolvedKey, systemPrompt, userInput, config).flatMap(similar -> {
+            if (similar.isPresent() && similar.get().response() != null) {
+                Map<String, Object> response = similar.get().response();
+                if (cacheKey != null) {
+                    responseCache.put(cacheKey, response);
+                }
+                return Mono.just(response);
+            }
+            long start = System.nanoTime();
+            return router.call(resolvedKey, config,
+                            (handler, routeConfig) -> handler.generateResponseAsync(systemPrompt, userInput, routeConfig))
+                    .doOnNext(result -> {
+                        if (cacheKey != null) {
+                            responseCache.put(cacheKey, result);
+                        }
+                        semanticCache.put(similar.orElse(null), result, (System.nanoTime() - start) / 1_000_000);
+                    });
+        });
+    }
+
+    /**
+     * Streamed {@link #generate}: a semantic hit is emitted as a single delta, a streamed answer is cached once complete.
+     */
+    private Flux<String> generateStream(String resolvedKey, String systemPrompt, String userInput,
+                                        Map<String, Object> config, String cacheKey) {
+        return lookupSimilar(resolvedKey, systemPrompt, userInput, config).flatMapMany(similar -> {
+            if (similar.isPresent() && similar.get().response() != null) {
+                Map<String, Object> response = similar.get().response();
+                if (cacheKey != null) {
+                    responseCache.put(cacheKey, response);
+                }
+                return Flux.just(contentOf(response));
+            }
+            long start = System.nanoTime();
+            StringBuilder content = new StringBuilder();
+            return router.stream(resolvedKey, config,
+                            (handler, routeConfig) -> handler.streamResponse(systemPrompt, userInput, routeConfig))
+                    .doOnNext(content::append)
+                    .doOnComplete(() -> {
+                        if (content.isEmpty()) {
+                            return;
+                        }
+                        Map<String, Object> result = streamResult(content.toString());
+                        if (cacheKey != null) {
+                            responseCache.put(cacheKey, result);
+                        }
+                        semanticCache.put(similar.orElse(null), result, (System.nanoTime() - start) / 1_000_000);
+                    });
+        });
+    }
+
+    /**
+     * Semantic lookup for the async and streamed paths; empty if the template did not opt in or the lookup failed.
+     * The scope is the same as in {@link #generate}, so buffered and streamed calls share their entries.
+     */
+    private Mono<Optional<SemanticLlmCache.Lookup>> lookupSimilar(String resolvedKey, String systemPrompt,
+                                                                 String userInput, Map<String, Object> config) {
+        if (!semanticCache.isEligible(config)) {
+            return Mono.just(Optional.empty());
+        }
+        String scope = responseCache.key(resolvedKey, systemPrompt, "", config);
+        return Mono.fromCallable(() -> Optional.ofNullable(semanticCache.lookup(scope, userInput, config)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private String resolveKey(String modelType, Map<String, Object> config) {
         // If modelType is null, try to extract it from the nested configuration
         if (modelType == null && config != null && config.get("modelType") != null) {
             modelType = config.get("modelType").toString();
@@ -29,19 +194,33 @@ public class LLMService {
             throw new IllegalArgumentException("Unsupported model type: " + modelType);
         }
 
-        // Retrieve the appropriate handler based on the canonical key
-        ModelHandler handler = modelHandlers.get(resolvedKey);
-        if (handler == null) {
-            throw new IllegalArgumentException("No handler found for model type: " + resolvedKey);
-        }
-
         System.out.println("Resolved model type: " + resolvedKey);
-        System.out.println("System Prompt: " + systemPrompt);
-        System.out.println("User Input: " + userInput);
-        System.out.println("Config: " + config);
+        return resolvedKey;
+    }
 
-        Map<String, Object> result = handler.generateResponse(systemPrompt, userInput, config);
-        System.out.println("Generated Response: " + result);
+    /**
+     * Text of a response, buffered (choices[0].message.content) or streamed.
+     */
+    private static String contentOf(Map<String, Object> response) {
+        if (response.get("choices") instanceof List<?> choices && !choices.isEmpty()
+                && choices.get(0) instanceof Map<?, ?> choice
+                && choice.get("message") instanceof Map<?, ?> message
+                && message.get("content") != null) {
+            return message.get("content").toString();
+        }
+        Object content = response.get("content");
+        return content != null ? content.toString() : "";
+    }
+
+    /**
+     * Same shape as the handlers' result for a streamed completion.
+     */
+    private static Map<String, Object> streamResult(String content) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("content", content);
+        Map<String, Object> choice = new HashMap<>();
+        choice.put("message", Map.of("content", content));
+        result.put("choices", List.of(choice));
         return result;
     }
 }
@@ -0,0 +1,404 @@
+package viettel.telecom.backend.service.llm;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import viettel.telecom.backend.exception.LlmRateLimitException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client-side rate limit of the LLM providers, applied as a filter of their {@link LlmTransport} clients.
+ *
+ * Every provider and model has a token bucket for requests per minute and one for tokens per minute.
+ * Limits come from llm.rate-limit.{provider}.{model}.*, llm.rate-limit.{provider}.* or llm.rate-limit.*
+ * (0 = no limit), and are then kept in line with the provider's x-ratelimit-* response headers.
+ * A 429 pauses the bucket for its Retry-After and the call is queued again (up to
+ * llm.rate-limit.max-throttle-retries times).
+ *
+ * A call that does not fit waits in a bounded queue (llm.rate-limit.max-queued per bucket), served by
+ * priority (higher first) then arrival; it fails with {@link LlmRateLimitException} if the queue is full or
+ * it waited longer than llm.rate-limit.max-wait-millis.
+ *
+ * Metrics, tagged with provider and model: gauge llm.rate_limit.queue.depth, timer llm.rate_limit.wait,
+ * counters llm.rate_limit.rejected{reason} and llm.rate_limit.throttled.
+ */
+@Slf4j
+@Component
+public class LlmRateLimiter {
+
+    public static final String MODEL_ATTRIBUTE = LlmRateLimiter.class.getName() + ".model";
+    public static final String TOKENS_ATTRIBUTE = LlmRateLimiter.class.getName() + ".tokens";
+    public static final String PRIORITY_ATTRIBUTE = LlmRateLimiter.class.getName() + ".priority";
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+    private static final long MAX_DRAIN_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final int maxThrottleRetries;
+
+    public LlmRateLimiter(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.enabled = environment.getProperty("llm.rate-limit.enabled", Boolean.class, true);
+        this.maxQueued = environment.getProperty("llm.rate-limit.max-queued", Integer.class, 1000);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(environment.getProperty("llm.rate-limit.max-wait-millis", Long.class, 30000L));
+        this.maxThrottleRetries = environment.getProperty("llm.rate-limit.max-throttle-retries", Integer.class, 3);
+    }
+
+    /**
+     * Request attributes read by the filter: model from the request body, an estimate of the tokens the call
+     * uses (prompt characters / 4 + max_tokens) and the priority from the config ("priority", default 0).
+     */
+    public static Consumer<Map<String, Object>> attributes(Map<String, Object> requestBody, Map<String, Object> config) {
+        long characters = 0;
+        if (requestBody.get("messages") instanceof List<?> messages) {
+            for (Object message : messages) {
+                if (message instanceof Map<?, ?> map && map.get("content") != null) {
+                    characters += map.get("content").toString().length();
+                }
+            }
+        } else if (requestBody.get("input") != null) {
+            characters += requestBody.get("input").toString().length();
+        }
+        long maxTokens = requestBody.get("max_tokens") instanceof Number number ? number.longValue() : 0;
+        long tokens = characters / 4 + maxTokens;
+        Object model = requestBody.get("model");
+        int priority = config != null && config.get("priority") instanceof Number number ? number.intValue() : 0;
+        return attributes -> {
+            if (model != null) {
+                attributes.put(MODEL_ATTRIBUTE, model.toString());
+            }
+            attributes.put(TOKENS_ATTRIBUTE, tokens);
+            attributes.put(PRIORITY_ATTRIBUTE, priority);
+        };
+    }
+
+    /**
+     * Filter for the client of one provider; each call waits for its permit before it is sent.
+     */
+    public ExchangeFilterFunction filter(String provider) {
+        return (request, next) -> {
+            if (!enabled) {
+                return next.exchange(request);
+            }
+            String model = request.attribute(MODEL_ATTRIBUTE).map(Object::toString).orElse("default");
+            long tokens = request.attribute(TOKENS_ATTRIBUTE).map(value -> ((Number) value).longValue()).orElse(0L);
+            int priority = request.attribute(PRIORITY_ATTRIBUTE).map(value -> ((Number) value).intValue()).orElse(0);
+            Bucket bucket = buckets.computeIfAbsent(provider + '/' + model, key -> new Bucket(provider, model));
+            return Mono.defer(() -> {
+                long deadline = System.nanoTime() + maxWaitNanos;
+                return bucket.acquire(tokens, priority, deadline)
+                        .then(Mono.defer(() -> next.exchange(request)))
+                        .flatMap(response -> {
+                            bucket.update(response.headers().asHttpHeaders());
+                            if (response.statusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value()) {
+                                return Mono.just(response);
+                            }
+                            bucket.throttle(response.headers().asHttpHeaders());
+                            return response.releaseBody().then(Mono.error(new Throttled()));
+                        })
+                        .retryWhen(Retry.max(maxThrottleRetries)
+                                .filter(Throttled.class::isInstance)
+                                .onRetryExhaustedThrow((spec, signal) -> new LlmRateLimitException(
+                                        provider + "/" + model + " still rate limited after " + maxThrottleRetries + " retries")));
+            });
+        };
+    }
+
+    private <T> T setting(String provider, String model, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty("llm.rate-limit." + provider + "." + model + "." + key, type);
+        if (value == null) {
+            value = environment.getProperty("llm.rate-limit." + provider + "." + key, type);
+        }
+        return value != null ? value : environment.getProperty("llm.rate-limit." + key, type, defaultValue);
+    }
+
+    /**
+     * Duration of a Retry-After (seconds) or x-ratelimit-reset-* header ("1s", "6m0s", "20ms").
+     */
+    static long parseNanos(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return (long) (Double.parseDouble(trimmed) * 1e9);
+        } catch (NumberFormatException e) {
+            // not plain seconds
+        }
+        Matcher matcher = DURATION_PART.matcher(trimmed);
+        double nanos = 0;
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            nanos += switch (matcher.group(2)) {
+                case "ms" -> amount * 1e6;
+                case "s" -> amount * 1e9;
+                case "m" -> amount * 60e9;
+                default -> amount * 3600e9;
+            };
+        }
+        return found ? (long) nanos : -1;
+    }
+
+    private static Double number(HttpHeaders headers, String name) {
+        String value = headers.getFirst(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Marks a 429 so that only those are retried.
+     */
+    private static final class Throttled extends RuntimeException {
+        Throttled() {
+            super(null, null, false, false);
+        }
+    }
+
+    private record Waiter(MonoSink<Void> sink, long tokens, int priority, long deadline, long sequence, long queuedAt) {
+    }
+
+    /**
+     * Request and token buckets of one provider and model, and the calls waiting for them.
+     */
+    private final class Bucket {
+        private final String provider;
+        private final String model;
+        private final Timer waitTimer;
+        private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+                Comparator.comparingInt((Waiter waiter) -> -waiter.priority()).thenComparingLong(Waiter::sequence));
+
+        private double requestLimit;
+        private double tokenLimit;
+        private double requests;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private long pausedUntil = refilledAt;
+        private long sequence;
+        private boolean drainScheduled;
+
+        Bucket(String provider, String model) {
+            this.provider = provider;
+            this.model = model;
+            this.requestLimit = setting(provider, model, "requests-per-minute", Double.class, 0.0);
+            this.tokenLimit = setting(provider, model, "tokens-per-minute", Double.class, 0.0);
+            this.requests = requestLimit;
+            this.tokens = tokenLimit;
+            Tags tags = Tags.of("provider", provider, "model", model);
+            this.waitTimer = Timer.builder("llm.rate_limit.wait")
+                    .description("Time LLM calls waited for their rate limit")
+                    .tags(tags)
+                    .register(meterRegistry);
+            Gauge.builder("llm.rate_limit.queue.depth", this, Bucket::queued)
+                    .description("LLM calls waiting for their rate limit")
+                    .tags(tags)
+                    .register(meterRegistry);
+        }
+
+        Mono<Void> acquire(long needed, int priority, long deadline) {
+            return Mono.create(sink -> {
+                Waiter waiter = null;
+                boolean granted = false;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    if (queue.isEmpty() && tryTake(needed, now)) {
+                        granted = true;
+                    } else if (queue.size() < maxQueued) {
+                        waiter = new Waiter(sink, needed, priority, deadline, sequence++, now);
+                        queue.add(waiter);
+                        scheduleDrain(now);
+                    }
+                }
+                if (granted) {
+                    waitTimer.record(0, TimeUnit.NANOSECONDS);
+                    sink.success();
+                } else if (waiter == null) {
+                    reject(sink, "queue_full", "queue of " + provider + "/" + model + " is full");
+                } else {
+                    Waiter queued = waiter;
+                    sink.onCancel(() -> {
+                        synchronized (this) {
+                            queue.remove(queued);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Let through the waiting calls that fit, fail the expired ones, and come back when the next one fits.
+         */
+        void drain() {
+            List<Runnable> signals = new ArrayList<>();
+            synchronized (this) {
+                drainScheduled = false;
+                long now = System.nanoTime();
+                refill(now);
+                queue.removeIf(waiter -> {
+                    if (waiter.deadline() - now > 0) {
+                        return false;
+                    }
+                    signals.add(() -> reject(waiter.sink(), "deadline",
+                            "waited too long for the rate limit of " + provider + "/" + model));
+                    return true;
+                });
+                while (!queue.isEmpty() && tryTake(queue.peek().tokens(), now)) {
+                    Waiter waiter = queue.poll();
+                    waitTimer.record(now - waiter.queuedAt(), TimeUnit.NANOSECONDS);
+                    signals.add(waiter.sink()::success);
+                }
+                if (!queue.isEmpty()) {
+                    scheduleDrain(now);
+                }
+            }
+            // Outside the lock: a released call goes on to send its request
+            signals.forEach(Runnable::run);
+        }
+
+        /**
+         * Align the buckets with the provider's view (x-ratelimit-limit/remaining/reset-requests|tokens).
+         */
+        void update(HttpHeaders headers) {
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                Double limit = number(headers, "x-ratelimit-limit-requests");
+                Double remaining = number(headers, "x-ratelimit-remaining-requests");
+                boolean requestLimitLearned = requestLimit <= 0;
+                if (limit != null && limit > 0) {
+                    requestLimit = limit;
+                }
+                if (remaining != null) {
+                    requests = requestLimitLearned ? remaining : Math.min(requests, remaining);
+                    if (remaining < 1) {
+                        pauseFor(parseNanos(headers.getFirst("x-ratelimit-reset-requests")), now);
+                    }
+                }
+                limit = number(headers, "x-ratelimit-limit-tokens");
+                remaining = number(headers, "x-ratelimit-remaining-tokens");
+                boolean tokenLimitLearned = tokenLimit <= 0;
+                if (limit != null && limit > 0) {
+                    tokenLimit = limit;
+                }
+                if (remaining != null) {
+                    tokens = tokenLimitLearned ? remaining : Math.min(tokens, remaining);
+                    if (remaining < 1) {
+                        pauseFor(parseNanos(headers.getFirst("x-ratelimit-reset-tokens")), now);
+                    }
+                }
+            }
+        }
+
+        void throttle(HttpHeaders headers) {
+            long retryAfter = parseNanos(headers.getFirst(HttpHeaders.RETRY_AFTER));
+            long pause = retryAfter > 0 ? retryAfter : TimeUnit.SECONDS.toNanos(1);
+            synchronized (this) {
+                pauseFor(pause, System.nanoTime());
+            }
+            meterRegistry.counter("llm.rate_limit.throttled", "provider", provider, "model", model).increment();
+            log.warn("{}/{} answered 429, pausing calls for {} ms", provider, model, TimeUnit.NANOSECONDS.toMillis(pause));
+        }
+
+        synchronized int queued() {
+            return queue.size();
+        }
+
+        private void pauseFor(long nanos, long now) {
+            if (nanos > 0 && now + nanos - pausedUntil > 0) {
+                pausedUntil = now + nanos;
+            }
+        }
+
+        private void refill(long now) {
+            double minutes = (double) (now - refilledAt) / NANOS_PER_MINUTE;
+            refilledAt = now;
+            if (requestLimit > 0) {
+                requests = Math.min(requestLimit, requests + requestLimit * minutes);
+            }
+            if (tokenLimit > 0) {
+                tokens = Math.min(tokenLimit, tokens + tokenLimit * minutes);
+            }
+        }
+
+        private boolean tryTake(long needed, long now) {
+            if (pausedUntil - now > 0) {
+                return false;
+            }
+            // A call larger than the whole bucket goes once the bucket is full
+            double neededTokens = Math.min(needed, tokenLimit);
+            if ((requestLimit > 0 && requests < 1) || (tokenLimit > 0 && tokens < neededTokens)) {
+                return false;
+            }
+            if (requestLimit > 0) {
+                requests -= 1;
+            }
+            if (tokenLimit > 0) {
+                tokens -= neededTokens;
+            }
+            return true;
+        }
+
+        private void scheduleDrain(long now) {
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+            Waiter head = queue.peek();
+            long delay = Math.max(0, pausedUntil - now);
+            if (requestLimit > 0 && requests < 1) {
+                delay = Math.max(delay, (long) ((1 - requests) / requestLimit * NANOS_PER_MINUTE));
+            }
+            double neededTokens = Math.min(head.tokens(), tokenLimit);
+            if (tokenLimit > 0 && tokens < neededTokens) {
+                delay = Math.max(delay, (long) ((neededTokens - tokens) / tokenLimit * NANOS_PER_MINUTE));
+            }
+            for (Waiter waiter : queue) {
+                delay = Math.min(delay, Math.max(0, waiter.deadline() - now));
+            }
+            // Check again at least every second, headers of other calls may have changed the limits
+            delay = Math.max(TimeUnit.MILLISECONDS.toNanos(1), Math.min(delay, MAX_DRAIN_DELAY_NANOS));
+            Schedulers.parallel().schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private void reject(MonoSink<Void> sink, String reason, String message) {
+            meterRegistry.counter("llm.rate_limit.rejected", "provider", provider, "model", model, "reason", reason).increment();
+            sink.error(new LlmRateLimitException(message));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package viettel.telecom.backend.service.llm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for LLM calls: concurrent calls with the same key (see {@link LlmResponseCache#key}) share one
+ * upstream call and all get its result, or its error.
+ *
+ * - Buffered calls, blocking or not, wait for the same future. The call runs to completion even if the caller
+ *   that started it goes away, since others may be waiting for it.
+ * - Streamed calls share one upstream stream; a caller joining late first gets the deltas emitted so far.
+ *   The upstream stream is cancelled once all its callers are gone.
+ * A key is released as soon as its call ends, so this never serves a finished result; that is the cache's job.
+ *
+ * Counter llm.coalesce.requests{mode=buffered|stream, role=leader|follower}; followers are the calls saved.
+ */
+@Component
+public class LlmRequestCoalescer {
+
+    private final Map<String, CompletableFuture<Map<String, Object>>> inflight = new ConcurrentHashMap<>();
+    private final Map<String, Flux<String>> inflightStreams = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+
+    public LlmRequestCoalescer(MeterRegistry meterRegistry,
+                               @Value("${llm.coalesce.enabled:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        meterRegistry.gaugeMapSize("llm.coalesce.inflight", Tags.empty(), inflight);
+    }
+
+    /**
+     * Blocking: runs the call on this thread, or waits for the identical call already running.
+     */
+    public Map<String, Object> join(String key, Supplier<Map<String, Object>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        CompletableFuture<Map<String, Object>> created = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> running = inflight.putIfAbsent(key, created);
+        if (running != null) {
+            record("buffered", "follower");
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        record("buffered", "leader");
+        try {
+            Map<String, Object> result = call.get();
+            created.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, created);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #join}; shares its calls with the blocking callers.
+     */
+    public Mono<Map<String, Object>> joinAsync(String key, Supplier<Mono<Map<String, Object>>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            CompletableFuture<Map<String, Object>> created = new CompletableFuture<>();
+            CompletableFuture<Map<String, Object>> running = inflight.putIfAbsent(key, created);
+            if (running != null) {
+                record("buffered", "follower");
+                return Mono.fromFuture(running, true);
+            }
+            record("buffered", "leader");
+            Mono.defer(call)
+                    .doFinally(signal -> inflight.remove(key, created))
+                    .subscribe(created::complete, created::completeExceptionally, () -> created.complete(null));
+            return Mono.fromFuture(created, true);
+        });
+    }
+
+    /**
+     * Streams the deltas of the identical stream already running, from its first delta, or starts it.
+     */
+    public Flux<String> joinStream(String key, Supplier<Flux<String>> call) {
+        if (!enabled) {
+            return Flux.defer(call);
+        }
+        return Flux.defer(() -> {
+            boolean[] leader = {false};
+            Flux<String> shared = inflightStreams.computeIfAbsent(key, k -> {
+                leader[0] = true;
+                AtomicReference<Flux<String>> self = new AtomicReference<>();
+                self.set(Flux.defer(call)
+                        .doFinally(signal -> inflightStreams.remove(key, self.get()))
+                        .replay()
+                        .refCount());
+                return self.get();
+            });
+            record("stream", leader[0] ? "leader" : "follower");
+            return shared;
+        });
+    }
+
+    private void record(String mode, String role) {
+        meterRegistry.counter("llm.coalesce.requests", "mode", mode, "role", role).increment();
+    }
+}
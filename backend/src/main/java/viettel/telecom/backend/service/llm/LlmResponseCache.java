@@ -0,0 +1,187 @@
+package viettel.telecom.backend.service.llm;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.params.SetParams;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Exact-match cache of LLM responses, in heap and in Redis.
+ *
+ * Only deterministic calls (temperature 0) or calls whose config sets cache=true are cached. The key is a hash of
+ * the resolved model type, system prompt, user input and the config values that change the output (aiModel,
+ * temperature, max_tokens, stream); "stream" only matters because buffered and streamed calls return differently
+ * shaped maps, both with choices[0].message.content.
+ *
+ * The heap tier is bounded by llm.cache.max-entries (metrics: cache=llmResponses); entries expire after
+ * llm.cache.ttl-seconds in both tiers. Counter llm.cache.requests{template, result=hit|miss} gives the hit
+ * rate per template (config templateId, "none" without one).
+ * Cached responses are shared between callers and must not be modified.
+ */
+@Slf4j
+@Component
+public class LlmResponseCache {
+
+    private static final String REDIS_KEY_PREFIX = "llm:cache:";
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    private final Cache<String, Map<String, Object>> local;
+    private final JedisPooled jedisPooled;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final long ttlMillis;
+
+    // Sorting map keys makes the serialized config a canonical form of it
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    public LlmResponseCache(JedisPooled jedisPooled,
+                            MeterRegistry meterRegistry,
+                            @Value("${llm.cache.enabled:true}") boolean enabled,
+                            @Value("${llm.cache.redis-enabled:true}") boolean redisEnabled,
+                            @Value("${llm.cache.max-entries:5000}") long maxEntries,
+                            @Value("${llm.cache.ttl-seconds:3600}") long ttlSeconds) {
+        this.jedisPooled = jedisPooled;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.redisEnabled = redisEnabled;
+        this.ttlMillis = Duration.ofSeconds(ttlSeconds).toMillis();
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "llmResponses");
+    }
+
+    /**
+     * True if the response of this call may be cached.
+     */
+    public boolean isCacheable(Map<String, Object> config) {
+        if (!enabled || config == null) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(config.get("cache"))) {
+            return true;
+        }
+        Object temperature = config.get("temperature");
+        return temperature instanceof Number number && number.doubleValue() == 0.0;
+    }
+
+    /**
+     * Key of a cacheable call; see {@link #isCacheable}.
+     */
+    public String key(String modelType, String systemPrompt, String userInput, Map<String, Object> config) {
+        Map<String, Object> relevant = new TreeMap<>();
+        relevant.put("stream", Boolean.TRUE.equals(config.get("stream")));
+        for (String name : new String[]{"aiModel", "temperature", "max_tokens"}) {
+            Object value = config.get(name);
+            if (value != null) {
+                // 0 and 0.0 are the same temperature
+                relevant.put(name, value instanceof Number number ? number.doubleValue() : value);
+            }
+        }
+        try {
+            return sha256(modelType + '\u0000' + systemPrompt + '\u0000' + userInput + '\u0000'
+                    + mapper.writeValueAsString(relevant));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot build LLM cache key", e);
+        }
+    }
+
+    /**
+     * Blocking lookup in both tiers; records a hit or a miss.
+     */
+    public Map<String, Object> get(String key, Map<String, Object> config) {
+        Map<String, Object> cached = local.getIfPresent(key);
+        if (cached == null && redisEnabled) {
+            cached = readRedis(key);
+            if (cached != null) {
+                local.put(key, cached);
+            }
+        }
+        record(config, cached != null);
+        return cached;
+    }
+
+    /**
+     * Non-blocking lookup in both tiers; completes empty on a miss.
+     */
+    public Mono<Map<String, Object>> getAsync(String key, Map<String, Object> config) {
+        Map<String, Object> cached = local.getIfPresent(key);
+        if (cached != null || !redisEnabled) {
+            record(config, cached != null);
+            return Mono.justOrEmpty(cached);
+        }
+        return Mono.fromCallable(() -> Optional.ofNullable(readRedis(key)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(shared -> {
+                    shared.ifPresent(response -> local.put(key, response));
+                    record(config, shared.isPresent());
+                    return Mono.justOrEmpty(shared);
+                });
+    }
+
+    /**
+     * Store a response in both tiers; the Redis write happens in the background.
+     */
+    public void put(String key, Map<String, Object> response) {
+        if (response == null || response.isEmpty()) {
+            return;
+        }
+        local.put(key, response);
+        if (redisEnabled) {
+            Schedulers.boundedElastic().schedule(() -> writeRedis(key, response));
+        }
+    }
+
+    private Map<String, Object> readRedis(String key) {
+        try {
+            String json = jedisPooled.get(REDIS_KEY_PREFIX + key);
+            return json != null ? mapper.readValue(json, MAP_TYPE) : null;
+        } catch (Exception e) {
+            log.warn("Failed to read cached LLM response {} from Redis: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, Map<String, Object> response) {
+        try {
+            jedisPooled.set(REDIS_KEY_PREFIX + key, mapper.writeValueAsString(response), SetParams.setParams().px(ttlMillis));
+        } catch (Exception e) {
+            log.warn("Failed to write cached LLM response {} to Redis: {}", key, e.getMessage());
+        }
+    }
+
+    private void record(Map<String, Object> config, boolean hit) {
+        Object template = config.get("templateId");
+        meterRegistry.counter("llm.cache.requests",
+                "template", template != null ? template.toString() : "none",
+                "result", hit ? "hit" : "miss").increment();
+    }
+
+    private static String sha256(String value) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,580 @@
+package viettel.telecom.backend.service.llm;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import viettel.telecom.backend.exception.DownstreamUnavailableException;
+import viettel.telecom.backend.exception.LlmRateLimitException;
+import viettel.telecom.backend.service.flow.CircuitBreaker;
+import viettel.telecom.backend.service.model.ModelHandler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * Routes LLM calls over the providers, so one provider's outage does not take down every flow using it.
+ *
+ * - Adaptive choice: when the config lists allowedModels (equivalent models of a node), the call goes to the one
+ *   with the best live score: median latency (buffered) or time to first token plus max_tokens at the observed
+ *   tokens/sec (streams), divided by its success rate. Telemetry decays with llm.routing.adaptive.half-life-seconds.
+ *   The pick is weighted by 1/score^2, and with probability llm.routing.adaptive.exploration (or while nothing
+ *   is known) a random candidate is tried instead, so that new and recovered models get measured. The other
+ *   candidates follow as failover, best first.
+ * - Failover chains: llm.routing.failover.{model} lists the models to try, in order, when a call to the model
+ *   (config aiModel, or the provider key without one) fails with a timeout, a connection error, a 5xx or a
+ *   rate limit. A stream only fails over before its first delta.
+ * - Hedging (opt-in, llm.routing.hedge.enabled): once a model has llm.routing.hedge.min-samples recent calls, a
+ *   buffered call still running after its p95 latency (at least llm.routing.hedge.min-delay-millis) gets a backup
+ *   call to the next model of the chain; the first answer wins and the other call is cancelled. If the first call
+ *   fails before that, the backup goes out at once. Without a next model there is no hedge, unless
+ *   llm.routing.hedge.same-route allows a second call to the same model.
+ * - Circuit breaker per provider ({@link CircuitBreaker}, llm.routing.circuit.*); an open provider is skipped.
+ *
+ * Metrics: llm.provider.latency{provider,model} (with p95), llm.routing.attempts{provider,model,outcome},
+ * llm.routing.hedges{provider,model,result=fired|failover|won}, llm.routing.circuit.state{provider},
+ * llm.routing.decisions{model,reason=exploit|explore}. The routing table is served by LlmRoutingAdminController.
+ */
+@Slf4j
+@Component
+public class LlmRouter {
+
+    private final Map<String, ModelHandler> modelHandlers;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> latencies = new ConcurrentHashMap<>();
+    private final Map<String, RouteStats> stats = new ConcurrentHashMap<>();
+
+    private final boolean hedgeEnabled;
+    private final boolean hedgeSameRoute;
+    private final long hedgeMinSamples;
+    private final Duration hedgeMinDelay;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final boolean adaptiveEnabled;
+    private final double exploration;
+    private final long adaptiveMinSamples;
+    private final long halfLifeNanos;
+
+    public LlmRouter(Map<String, ModelHandler> modelHandlers,
+                     Environment environment,
+                     MeterRegistry meterRegistry,
+                     @Value("${llm.routing.hedge.enabled:false}") boolean hedgeEnabled,
+                     @Value("${llm.routing.hedge.same-route:false}") boolean hedgeSameRoute,
+                     @Value("${llm.routing.hedge.min-samples:20}") long hedgeMinSamples,
+                     @Value("${llm.routing.hedge.min-delay-millis:500}") long hedgeMinDelayMs,
+                     @Value("${llm.routing.circuit.window-size:20}") int windowSize,
+                     @Value("${llm.routing.circuit.minimum-calls:10}") int minimumCalls,
+                     @Value("${llm.routing.circuit.failure-rate-threshold:50}") int failureRateThreshold,
+                     @Value("${llm.routing.circuit.open-seconds:30}") long openSeconds,
+                     @Value("${llm.routing.circuit.half-open-calls:3}") int halfOpenCalls,
+                     @Value("${llm.routing.adaptive.enabled:true}") boolean adaptiveEnabled,
+                     @Value("${llm.routing.adaptive.exploration:0.05}") double exploration,
+                     @Value("${llm.routing.adaptive.min-samples:5}") long adaptiveMinSamples,
+                     @Value("${llm.routing.adaptive.half-life-seconds:300}") long halfLifeSeconds) {
+        this.modelHandlers = modelHandlers;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeSameRoute = hedgeSameRoute;
+        this.hedgeMinSamples = hedgeMinSamples;
+        this.hedgeMinDelay = Duration.ofMillis(hedgeMinDelayMs);
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = Duration.ofSeconds(openSeconds).toMillis();
+        this.halfOpenCalls = halfOpenCalls;
+        this.adaptiveEnabled = adaptiveEnabled;
+        this.exploration = exploration;
+        this.adaptiveMinSamples = adaptiveMinSamples;
+        this.halfLifeNanos = TimeUnit.SECONDS.toNanos(halfLifeSeconds);
+    }
+
+    /**
+     * Buffered call over the failover chain of the config's model.
+     *
+     * @param resolvedKey provider key of the requested model type
+     * @param call        the call to one provider, with the config of its route
+     */
+    public Mono<Map<String, Object>> call(String resolvedKey, Map<String, Object> config,
+                                          BiFunction<ModelHandler, Map<String, Object>, Mono<Map<String, Object>>> call) {
+        return Mono.defer(() -> attempt(routes(resolvedKey, config, false), 0, call, null));
+    }
+
+    /**
+     * Streamed call over the failover chain of the config's model; never hedged.
+     */
+    public Flux<String> stream(String resolvedKey, Map<String, Object> config,
+                               BiFunction<ModelHandler, Map<String, Object>, Flux<String>> call) {
+        return Flux.defer(() -> streamAttempt(routes(resolvedKey, config, true), 0, call, null));
+    }
+
+    /**
+     * Routing table: live telemetry and breaker state of every provider and model called so far.
+     */
+    public List<RouteStatus> status() {
+        List<RouteStatus> result = new ArrayList<>();
+        stats.forEach((key, routeStats) -> {
+            String provider = key.substring(0, key.indexOf('/'));
+            String model = key.substring(key.indexOf('/') + 1);
+            CircuitBreaker.Snapshot breaker = breaker(provider).snapshot();
+            result.add(new RouteStatus(provider, model, breaker.state().name(), breaker.openUntil(),
+                    routeStats.errorRate(),
+                    known(routeStats.latency.quantile(0.5)), known(routeStats.latency.quantile(0.95)),
+                    known(routeStats.timeToFirstToken.quantile(0.5)), known(routeStats.timeToFirstToken.quantile(0.95)),
+                    known(routeStats.tokensPerSecond()),
+                    routeStats.latency.weight() + routeStats.timeToFirstToken.weight()));
+        });
+        result.sort(Comparator.comparing(RouteStatus::provider).thenComparing(RouteStatus::model));
+        return result;
+    }
+
+    /**
+     * Close the circuit breaker of a provider.
+     *
+     * @return false if the provider has not been called yet
+     */
+    public boolean reset(String provider) {
+        CircuitBreaker breaker = breakers.get(provider);
+        if (breaker == null) {
+            return false;
+        }
+        breaker.reset();
+        log.info("Circuit breaker for LLM provider {} reset", provider);
+        return true;
+    }
+
+    /**
+     * Routes to try, in order: the adaptive pick among the requested and allowed models (or just the requested
+     * model), then the other candidates, then the requested model's failover chain.
+     */
+    private List<Route> routes(String resolvedKey, Map<String, Object> config, boolean streaming) {
+        Object aiModel = config.get("aiModel");
+        String model = aiModel != null ? aiModel.toString() : resolvedKey;
+        List<Route> routes = new ArrayList<>();
+        routes.add(new Route(resolvedKey, model, config));
+
+        if (adaptiveEnabled && config.get("allowedModels") instanceof List<?> allowed) {
+            for (Object name : allowed) {
+                addRoute(routes, name != null ? name.toString().trim() : "", config, model);
+            }
+            if (routes.size() > 1) {
+                routes = rank(routes, config, streaming);
+            }
+        }
+
+        String chain = environment.getProperty("llm.routing.failover." + model);
+        if (chain != null && !chain.isBlank()) {
+            for (String name : chain.split(",")) {
+                addRoute(routes, name.trim(), config, model);
+            }
+        }
+        return routes;
+    }
+
+    private void addRoute(List<Route> routes, String model, Map<String, Object> config, String requestedModel) {
+        for (Route route : routes) {
+            if (route.model().equals(model)) {
+                return;
+            }
+        }
+        String provider = ModelType.resolve(model);
+        if (provider == null || !modelHandlers.containsKey(provider)) {
+            log.warn("Ignoring unknown model '{}' in the routes of {}", model, requestedModel);
+            return;
+        }
+        Map<String, Object> routeConfig = new HashMap<>(config);
+        routeConfig.put("aiModel", model);
+        routeConfig.put("modelType", model);
+        routes.add(new Route(provider, model, routeConfig));
+    }
+
+    /**
+     * Weighted least-latency pick with exploration; the result starts with the pick, then the others by score.
+     */
+    private List<Route> rank(List<Route> candidates, Map<String, Object> config, boolean streaming) {
+        List<ScoredRoute> available = new ArrayList<>();
+        List<ScoredRoute> all = new ArrayList<>();
+        for (Route route : candidates) {
+            ScoredRoute scored = new ScoredRoute(route, score(route, config, streaming));
+            all.add(scored);
+            if (breaker(route.provider()).snapshot().state() != CircuitBreaker.State.OPEN) {
+                available.add(scored);
+            }
+        }
+        if (available.isEmpty()) {
+            available = all;
+        }
+        List<ScoredRoute> known = new ArrayList<>();
+        List<ScoredRoute> unknown = new ArrayList<>();
+        for (ScoredRoute scored : available) {
+            (Double.isNaN(scored.score()) ? unknown : known).add(scored);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ScoredRoute chosen;
+        String reason;
+        if (known.isEmpty() || random.nextDouble() < exploration) {
+            List<ScoredRoute> pool = unknown.isEmpty() ? available : unknown;
+            chosen = pool.get(random.nextInt(pool.size()));
+            reason = "explore";
+        } else {
+            double totalWeight = 0;
+            for (ScoredRoute scored : known) {
+                totalWeight += 1 / (scored.score() * scored.score());
+            }
+            double target = random.nextDouble() * totalWeight;
+            chosen = known.get(known.size() - 1);
+            for (ScoredRoute scored : known) {
+                target -= 1 / (scored.score() * scored.score());
+                if (target <= 0) {
+                    chosen = scored;
+                    break;
+                }
+            }
+            reason = "exploit";
+        }
+        meterRegistry.counter("llm.routing.decisions", "model", chosen.route().model(), "reason", reason).increment();
+
+        List<ScoredRoute> rest = new ArrayList<>(all);
+        rest.remove(chosen);
+        rest.sort(Comparator.comparingDouble(scored -> Double.isNaN(scored.score()) ? Double.MAX_VALUE : scored.score()));
+        List<Route> ranked = new ArrayList<>();
+        ranked.add(chosen.route());
+        rest.forEach(scored -> ranked.add(scored.route()));
+        return ranked;
+    }
+
+    /**
+     * Expected milliseconds until the answer, divided by the success rate; NaN while too little is known.
+     */
+    private double score(Route route, Map<String, Object> config, boolean streaming) {
+        RouteStats routeStats = stats(route);
+        double expected;
+        if (streaming && routeStats.timeToFirstToken.weight() >= adaptiveMinSamples) {
+            expected = routeStats.timeToFirstToken.quantile(0.5);
+            double tokensPerSecond = routeStats.tokensPerSecond();
+            if (tokensPerSecond > 0) {
+                long maxTokens = config.get("max_tokens") instanceof Number number ? number.longValue() : 100;
+                expected += 1000.0 * maxTokens / tokensPerSecond;
+            }
+        } else if (routeStats.latency.weight() >= adaptiveMinSamples) {
+            expected = routeStats.latency.quantile(0.5);
+        } else if (routeStats.timeToFirstToken.weight() >= adaptiveMinSamples) {
+            expected = routeStats.timeToFirstToken.quantile(0.5);
+        } else {
+            return Double.NaN;
+        }
+        return Math.max(1, expected) / Math.max(0.05, 1 - routeStats.errorRate());
+    }
+
+    private Mono<Map<String, Object>> attempt(List<Route> routes, int index,
+                                              BiFunction<ModelHandler, Map<String, Object>, Mono<Map<String, Object>>> call,
+                                              Throwable previous) {
+        if (index >= routes.size()) {
+            return Mono.error(previous);
+        }
+        Route route = routes.get(index);
+        CircuitBreaker breaker = breaker(route.provider());
+        if (!breaker.tryAcquire()) {
+            count(route, "circuit_open");
+            return attempt(routes, index + 1, call,
+                    new DownstreamUnavailableException("Circuit breaker for LLM provider " + route.provider() + " is open"));
+        }
+
+        // Routes are distinct models, so the next one (if any) is a real backup
+        boolean hasBackup = index + 1 < routes.size();
+        Duration delay = hasBackup || hedgeSameRoute ? hedgeDelay(route) : null;
+        if (delay == null) {
+            return guarded(route, breaker, call).onErrorResume(e -> index + 1 < routes.size() && isProviderFailure(e),
+                    e -> failover(routes, index, index + 1, call, e));
+        }
+
+        // The backup goes out after the delay, or at once if the primary fails in a way the backup may not
+        Route backup = hasBackup ? routes.get(index + 1) : route;
+        Sinks.One<String> primaryFailed = Sinks.one();
+        AtomicBoolean backupSent = new AtomicBoolean();
+        Mono<Map<String, Object>> primary = guarded(route, breaker, call)
+                .doOnError(e -> primaryFailed.tryEmitValue(isProviderFailure(e) ? "failover" : "none"));
+        Mono<Map<String, Object>> hedge = Mono.firstWithSignal(Mono.delay(delay).thenReturn("fired"), primaryFailed.asMono())
+                .flatMap(reason -> {
+                    CircuitBreaker backupBreaker = breaker(backup.provider());
+                    if ("none".equals(reason) || !backupBreaker.tryAcquire()) {
+                        return Mono.empty();
+                    }
+                    backupSent.set(true);
+                    hedgeCount(backup, reason);
+                    return guarded(backup, backupBreaker, call).doOnNext(response -> hedgeCount(backup, "won"));
+                });
+        return Mono.firstWithValue(primary, hedge)
+                .onErrorMap(LlmRouter::unwrapFirst)
+                .onErrorResume(e -> isProviderFailure(e), e -> {
+                    // Do not call the backup route twice in a row
+                    int next = backupSent.get() && backup != route ? index + 2 : index + 1;
+                    return next < routes.size() ? failover(routes, index, next, call, e) : Mono.error(e);
+                });
+    }
+
+    private Mono<Map<String, Object>> failover(List<Route> routes, int from, int to,
+                                               BiFunction<ModelHandler, Map<String, Object>, Mono<Map<String, Object>>> call,
+                                               Throwable e) {
+        log.warn("LLM call to {}/{} failed, failing over to {}: {}", routes.get(from).provider(), routes.get(from).model(),
+                routes.get(to).model(), e.toString());
+        return attempt(routes, to, call, e);
+    }
+
+    private Flux<String> streamAttempt(List<Route> routes, int index,
+                                       BiFunction<ModelHandler, Map<String, Object>, Flux<String>> call,
+                                       Throwable previous) {
+        if (index >= routes.size()) {
+            return Flux.error(previous);
+        }
+        Route route = routes.get(index);
+        CircuitBreaker breaker = breaker(route.provider());
+        if (!breaker.tryAcquire()) {
+            count(route, "circuit_open");
+            return streamAttempt(routes, index + 1, call,
+                    new DownstreamUnavailableException("Circuit breaker for LLM provider " + route.provider() + " is open"));
+        }
+
+        RouteStats routeStats = stats(route);
+        long start = System.nanoTime();
+        long[] firstDeltaAt = {0};
+        long[] characters = {0};
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicBoolean recorded = new AtomicBoolean();
+        return call.apply(handler(route.provider()), route.config())
+                .doOnNext(delta -> {
+                    if (started.compareAndSet(false, true)) {
+                        firstDeltaAt[0] = System.nanoTime();
+                        routeStats.timeToFirstToken.record((firstDeltaAt[0] - start) / 1e6);
+                    }
+                    characters[0] += delta.length();
+                })
+                .doOnComplete(() -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        if (started.get()) {
+                            // About 4 characters per token
+                            routeStats.generated(characters[0] / 4, (System.nanoTime() - firstDeltaAt[0]) / 1e9);
+                        }
+                        onSuccess(route, breaker);
+                    }
+                })
+                .doOnError(e -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        onError(route, breaker, e);
+                    }
+                })
+                .doOnCancel(() -> {
+                    // The caller went away: a stream that was delivering counts as healthy
+                    if (recorded.compareAndSet(false, true)) {
+                        if (started.get()) {
+                            onSuccess(route, breaker);
+                        } else {
+                            breaker.release();
+                        }
+                    }
+                })
+                .onErrorResume(e -> !started.get() && index + 1 < routes.size() && isProviderFailure(e), e -> {
+                    log.warn("LLM stream from {}/{} failed, failing over to {}: {}", route.provider(), route.model(),
+                            routes.get(index + 1).model(), e.toString());
+                    return streamAttempt(routes, index + 1, call, e);
+                });
+    }
+
+    /**
+     * One call to a route, reported to its breaker; cancelled calls (e.g. the loser of a hedge) are not counted.
+     */
+    private Mono<Map<String, Object>> guarded(Route route, CircuitBreaker breaker,
+                                              BiFunction<ModelHandler, Map<String, Object>, Mono<Map<String, Object>>> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return call.apply(handler(route.provider()), route.config())
+                    .doOnSuccess(response -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            long elapsed = System.nanoTime() - start;
+                            latency(route).record(elapsed, TimeUnit.NANOSECONDS);
+                            stats(route).latency.record(elapsed / 1e6);
+                            stats(route).generated(completionTokens(response), elapsed / 1e9);
+                            onSuccess(route, breaker);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            onError(route, breaker, e);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.release();
+                            count(route, "cancelled");
+                        }
+                    });
+        });
+    }
+
+    private void onSuccess(Route route, CircuitBreaker breaker) {
+        breaker.onSuccess();
+        stats(route).success();
+        count(route, "success");
+    }
+
+    private void onError(Route route, CircuitBreaker breaker, Throwable e) {
+        if (e instanceof LlmRateLimitException) {
+            // Our own queue gave up; says nothing about the provider's health
+            breaker.release();
+        } else if (isProviderFailure(e)) {
+            breaker.onFailure();
+            stats(route).failure();
+        } else {
+            breaker.onSuccess();
+        }
+        count(route, "failure");
+    }
+
+    /**
+     * Delay before a backup call: the route's recent p95 latency, once enough calls are recorded.
+     */
+    private Duration hedgeDelay(Route route) {
+        if (!hedgeEnabled) {
+            return null;
+        }
+        RouteStats routeStats = stats.get(route.provider() + '/' + route.model());
+        if (routeStats == null || routeStats.latency.weight() < hedgeMinSamples) {
+            return null;
+        }
+        Duration p95 = Duration.ofNanos((long) (routeStats.latency.quantile(0.95) * 1e6));
+        return p95.compareTo(hedgeMinDelay) > 0 ? p95 : hedgeMinDelay;
+    }
+
+    /**
+     * Failures that another provider may not have: timeouts, connection errors, 5xx, 429 and rate limits.
+     */
+    static boolean isProviderFailure(Throwable e) {
+        if (e instanceof LlmRateLimitException || e instanceof DownstreamUnavailableException) {
+            return true;
+        }
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException || t instanceof ReadTimeoutException || t instanceof ConnectTimeoutException
+                    || t instanceof WebClientRequestException || t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mono.firstWithValue fails with a NoSuchElementException carrying the errors of both calls;
+     * keep the primary's.
+     */
+    private static Throwable unwrapFirst(Throwable e) {
+        for (Throwable suppressed : e.getSuppressed()) {
+            List<Throwable> errors = Exceptions.unwrapMultiple(suppressed);
+            if (!errors.isEmpty()) {
+                return errors.get(0);
+            }
+        }
+        return e;
+    }
+
+    private ModelHandler handler(String provider) {
+        ModelHandler handler = modelHandlers.get(provider);
+        if (handler == null) {
+            throw new IllegalArgumentException("No handler found for model type: " + provider);
+        }
+        return handler;
+    }
+
+    private CircuitBreaker breaker(String provider) {
+        return breakers.computeIfAbsent(provider, key -> {
+            CircuitBreaker breaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openMillis,
+                    halfOpenCalls);
+            Gauge.builder("llm.routing.circuit.state", breaker, b -> b.snapshot().state().ordinal())
+                    .description("Circuit breaker state per LLM provider (0 closed, 1 open, 2 half-open)")
+                    .tag("provider", key)
+                    .register(meterRegistry);
+            return breaker;
+        });
+    }
+
+    private RouteStats stats(Route route) {
+        return stats.computeIfAbsent(route.provider() + '/' + route.model(), key -> new RouteStats(halfLifeNanos));
+    }
+
+    private static long completionTokens(Map<String, Object> response) {
+        if (response != null && response.get("usage") instanceof Map<?, ?> usage
+                && usage.get("completion_tokens") instanceof Number tokens) {
+            return tokens.longValue();
+        }
+        return 0;
+    }
+
+    private static Double known(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private Timer latency(Route route) {
+        return latencies.computeIfAbsent(route.provider() + '/' + route.model(), key -> Timer.builder("llm.provider.latency")
+                .description("Latency of buffered LLM calls")
+                .tag("provider", route.provider())
+                .tag("model", route.model())
+                .publishPercentiles(0.95)
+                .register(meterRegistry));
+    }
+
+    private void hedgeCount(Route route, String result) {
+        meterRegistry.counter("llm.routing.hedges", "provider", route.provider(), "model", route.model(),
+                "result", result).increment();
+    }
+
+    private void count(Route route, String outcome) {
+        meterRegistry.counter("llm.routing.attempts", "provider", route.provider(), "model", route.model(),
+                "outcome", outcome).increment();
+    }
+
+    private record Route(String provider, String model, Map<String, Object> config) {
+    }
+
+    private record ScoredRoute(Route route, double score) {
+    }
+
+    /**
+     * Admin view of one provider and model; latencies in milliseconds, null while unknown.
+     *
+     * @param samples decayed number of recorded calls
+     */
+    public record RouteStatus(String provider, String model, String circuitState, Long circuitOpenUntil,
+                              double errorRate, Double latencyP50, Double latencyP95, Double timeToFirstTokenP50,
+                              Double timeToFirstTokenP95, Double tokensPerSecond, double samples) {
+    }
+}
@@ -0,0 +1,132 @@
+package viettel.telecom.backend.service.llm;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shared HTTP transport for LLM providers.
+ *
+ * Each provider gets its own Reactor Netty connection pool ("llm-{provider}"), so connections (and their TLS
+ * sessions) are kept alive and reused between calls; HTTP/2 is negotiated over TLS when the provider supports it,
+ * HTTP/1.1 is used otherwise. Pool metrics are published as reactor.netty.connection.provider.* (name=llm-{provider}).
+ *
+ * Settings are read from llm.transport.{provider}.* first and llm.transport.* otherwise:
+ *  - max-connections, max-idle-seconds, max-life-seconds, pending-acquire-timeout-millis
+ *  - connect-timeout-millis
+ *  - first-byte-timeout-millis: longest wait for the response to start, and between two reads of it
+ *  - total-timeout-millis: deadline for the whole exchange, streams included
+ *  - http2
+ * Calls go through the provider's {@link LlmRateLimiter} before they are sent.
+ */
+@Slf4j
+@Component
+public class LlmTransport {
+
+    private final Environment environment;
+    private final LlmRateLimiter rateLimiter;
+    private final List<ConnectionProvider> pools = new CopyOnWriteArrayList<>();
+
+    public LlmTransport(Environment environment, LlmRateLimiter rateLimiter) {
+        this.environment = environment;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Build the client of one provider. Call once per provider and keep the result.
+     */
+    public Provider provider(String name, String apiUrl, String apiKey) {
+        ConnectionProvider pool = ConnectionProvider.builder("llm-" + name)
+                .maxConnections(setting(name, "max-connections", Integer.class, 100))
+                .maxIdleTime(Duration.ofSeconds(setting(name, "max-idle-seconds", Long.class, 60L)))
+                .maxLifeTime(Duration.ofSeconds(setting(name, "max-life-seconds", Long.class, 600L)))
+                .pendingAcquireTimeout(Duration.ofMillis(setting(name, "pending-acquire-timeout-millis", Long.class, 5000L)))
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(true)
+                .build();
+        pools.add(pool);
+
+        HttpClient httpClient = HttpClient.create(pool)
+                .keepAlive(true)
+                .compress(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, setting(name, "connect-timeout-millis", Integer.class, 3000))
+                .responseTimeout(Duration.ofMillis(setting(name, "first-byte-timeout-millis", Long.class, 30000L)));
+        boolean http2 = apiUrl != null && apiUrl.startsWith("https:") && setting(name, "http2", Boolean.class, true);
+        if (http2) {
+            // ALPN picks HTTP/2 if the provider offers it
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        // Resolve the event loop, DNS resolver and TLS context now rather than on the first chat turn
+        httpClient.warmup().block();
+
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .baseUrl(apiUrl)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .filter(rateLimiter.filter(name))
+                .build();
+        Duration totalTimeout = Duration.ofMillis(setting(name, "total-timeout-millis", Long.class, 120000L));
+        log.info("LLM transport for {}: {} (HTTP/2 {})", name, apiUrl, http2 ? "negotiated" : "off");
+        return new Provider(webClient, totalTimeout);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ConnectionProvider pool : pools) {
+            pool.disposeLater().block(Duration.ofSeconds(5));
+        }
+    }
+
+    private <T> T setting(String provider, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty("llm.transport." + provider + "." + key, type);
+        return value != null ? value : environment.getProperty("llm.transport." + key, type, defaultValue);
+    }
+
+    /**
+     * Pooled client of one provider, with its total deadline.
+     */
+    public static final class Provider {
+        private final WebClient webClient;
+        private final Duration totalTimeout;
+
+        private Provider(WebClient webClient, Duration totalTimeout) {
+            this.webClient = webClient;
+            this.totalTimeout = totalTimeout;
+        }
+
+        public WebClient webClient() {
+            return webClient;
+        }
+
+        public <T> Mono<T> withDeadline(Mono<T> response) {
+            return response.timeout(totalTimeout);
+        }
+
+        /**
+         * Fail a streamed response that has not completed within the total deadline.
+         */
+        public <T> Flux<T> withDeadline(Flux<T> response) {
+            return Flux.defer(() -> {
+                long deadline = System.nanoTime() + totalTimeout.toNanos();
+                return response.timeout(Mono.delay(totalTimeout),
+                        item -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))));
+            });
+        }
+    }
+}
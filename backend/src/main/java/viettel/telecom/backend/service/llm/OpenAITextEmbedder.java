@@ -0,0 +1,84 @@
+package viettel.telecom.backend.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedder backed by the OpenAI embeddings API, on its own pooled connection ("llm-openai-embeddings").
+ * The connection pool is only created on first use, so it costs nothing while another embedder is selected.
+ */
+@Component("openaiEmbedder")
+public class OpenAITextEmbedder implements TextEmbedder {
+
+    private final LlmTransport llmTransport;
+    private final String apiUrl;
+    private final String apiKey;
+    private final String model;
+    private final int dimensions;
+
+    private volatile LlmTransport.Provider transport;
+
+    public OpenAITextEmbedder(LlmTransport llmTransport,
+                              @Value("${llm.semantic-cache.openai.url:https://api.openai.com/v1/embeddings}") String apiUrl,
+                              @Value("${openai.api.key:}") String apiKey,
+                              @Value("${llm.semantic-cache.openai.model:text-embedding-3-small}") String model,
+                              @Value("${llm.semantic-cache.openai.dimensions:512}") int dimensions) {
+        this.llmTransport = llmTransport;
+        this.apiUrl = apiUrl;
+        this.apiKey = apiKey;
+        this.model = model;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public String id() {
+        return model + "_" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (text == null || text.isBlank()) {
+            return new float[dimensions];
+        }
+        LlmTransport.Provider provider = transport();
+        Map<String, Object> requestBody = Map.of("model", model, "input", text, "dimensions", dimensions);
+        Map<String, Object> response = provider.withDeadline(provider.webClient().post()
+                        .attributes(LlmRateLimiter.attributes(requestBody, null))
+                        .bodyValue(requestBody)
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}))
+                .block();
+        if (response == null || !(response.get("data") instanceof List<?> data) || data.isEmpty()
+                || !(data.get(0) instanceof Map<?, ?> first) || !(first.get("embedding") instanceof List<?> values)) {
+            throw new IllegalStateException("Embeddings response has no data[0].embedding");
+        }
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) values.get(i)).floatValue();
+        }
+        return vector;
+    }
+
+    private LlmTransport.Provider transport() {
+        LlmTransport.Provider provider = transport;
+        if (provider == null) {
+            synchronized (this) {
+                provider = transport;
+                if (provider == null) {
+                    provider = llmTransport.provider("openai-embeddings", apiUrl, apiKey);
+                    transport = provider;
+                }
+            }
+        }
+        return provider;
+    }
+}
@@ -0,0 +1,70 @@
+package viettel.telecom.backend.service.llm;
+
+/**
+ * Live telemetry of one provider and model, decayed with the same half-life as its histograms:
+ * latency of buffered calls, time to first token of streams, error rate and generation speed.
+ */
+final class RouteStats {
+
+    final DecayingHistogram latency;
+    final DecayingHistogram timeToFirstToken;
+
+    private final long halfLifeNanos;
+    private long decayedAt = System.nanoTime();
+    private double calls;
+    private double failures;
+    private double tokens;
+    private double generationSeconds;
+
+    RouteStats(long halfLifeNanos) {
+        this.halfLifeNanos = halfLifeNanos;
+        this.latency = new DecayingHistogram(halfLifeNanos);
+        this.timeToFirstToken = new DecayingHistogram(halfLifeNanos);
+    }
+
+    synchronized void success() {
+        decay();
+        calls += 1;
+    }
+
+    synchronized void failure() {
+        decay();
+        calls += 1;
+        failures += 1;
+    }
+
+    /**
+     * @param seconds time spent generating them
+     */
+    synchronized void generated(long generatedTokens, double seconds) {
+        if (generatedTokens <= 0 || seconds <= 0) {
+            return;
+        }
+        decay();
+        tokens += generatedTokens;
+        generationSeconds += seconds;
+    }
+
+    synchronized double errorRate() {
+        decay();
+        return calls > 0 ? failures / calls : 0;
+    }
+
+    /**
+     * @return tokens per second, NaN if unknown
+     */
+    synchronized double tokensPerSecond() {
+        decay();
+        return generationSeconds > 0 ? tokens / generationSeconds : Double.NaN;
+    }
+
+    private void decay() {
+        long now = System.nanoTime();
+        double factor = Math.pow(0.5, (double) (now - decayedAt) / halfLifeNanos);
+        calls *= factor;
+        failures *= factor;
+        tokens *= factor;
+        generationSeconds *= factor;
+        decayedAt = now;
+    }
+}
@@ -0,0 +1,263 @@
+package viettel.telecom.backend.service.llm;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Semantic LLM response cache: answers a question with the cached answer of a similar question.
+ *
+ * The user input is embedded with the {@link TextEmbedder} bean named by llm.semantic-cache.embedder and
+ * stored with the response in an Elasticsearch dense_vector index (llm_semantic_cache_{embedder id}).
+ * A lookup is a kNN search restricted to the same template and scope (model, system prompt and parameters);
+ * the nearest answer is returned when its cosine similarity reaches the template's semanticCacheThreshold.
+ * Templates without a threshold do not use this cache. Entries older than llm.semantic-cache.ttl-seconds
+ * are ignored. LLMService consults it on blocking, reactive and streamed calls alike.
+ *
+ * Metrics, tagged with the template:
+ *  - llm.semantic_cache.requests{result=hit|miss|error} and timer llm.semantic_cache.lookup
+ *  - llm.semantic_cache.saved.latency (ms) and llm.semantic_cache.saved.tokens: provider latency and
+ *    total tokens of the original call, recorded on every hit
+ */
+@Slf4j
+@Component
+public class SemanticLlmCache {
+
+    private static final String INDEX_PREFIX = "llm_semantic_cache_";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final TextEmbedder embedder;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long ttlSeconds;
+    private final int numCandidates;
+    private final String index;
+
+    private volatile boolean indexReady;
+
+    public SemanticLlmCache(ElasticsearchClient elasticsearchClient,
+                            Map<String, TextEmbedder> embedders,
+                            MeterRegistry meterRegistry,
+                            @Value("${llm.semantic-cache.enabled:false}") boolean enabled,
+                            @Value("${llm.semantic-cache.embedder:hashingEmbedder}") String embedderName,
+                            @Value("${llm.semantic-cache.ttl-seconds:86400}") long ttlSeconds,
+                            @Value("${llm.semantic-cache.num-candidates:50}") int numCandidates) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttlSeconds = ttlSeconds;
+        this.numCandidates = numCandidates;
+        this.embedder = embedders.get(embedderName);
+        if (embedder == null) {
+            throw new IllegalStateException("No TextEmbedder bean named '" + embedderName + "', available: " + embedders.keySet());
+        }
+        this.index = INDEX_PREFIX + embedder.id().toLowerCase().replaceAll("[^a-z0-9_]", "_");
+    }
+
+    /**
+     * True if the call's template opted in (semanticCacheThreshold in the config) and the cache is enabled.
+     */
+    public boolean isEligible(Map<String, Object> config) {
+        return enabled && config != null && config.get("templateId") != null
+                && config.get("semanticCacheThreshold") instanceof Number;
+    }
+
+    /**
+     * Blocking kNN lookup. Returns null if the lookup failed; otherwise a {@link Lookup} whose response is
+     * null on a miss, to be passed to {@link #put} once the provider has answered.
+     *
+     * @param scope key of everything but the user input that changes the answer
+     */
+    public Lookup lookup(String scope, String userInput, Map<String, Object> config) {
+        String templateId = config.get("templateId").toString();
+        double threshold = ((Number) config.get("semanticCacheThreshold")).doubleValue();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            float[] vector = embedder.embed(userInput);
+            if (isZero(vector)) {
+                return null;
+            }
+            ensureIndex();
+            Lookup lookup = new Lookup(scope, templateId, userInput, vector, search(scope, templateId, vector, threshold));
+            record(templateId, lookup.response() != null ? "hit" : "miss");
+            return lookup;
+        } catch (Exception e) {
+            log.warn("Semantic cache lookup failed for template {}: {}", templateId, e.getMessage());
+            record(templateId, "error");
+            return null;
+        } finally {
+            sample.stop(meterRegistry.timer("llm.semantic_cache.lookup", "template", templateId));
+        }
+    }
+
+    /**
+     * Store the provider's answer to a missed lookup, in the background.
+     *
+     * @param latencyMs provider latency of the call, reported as saved on later hits
+     */
+    public void put(Lookup lookup, Map<String, Object> response, long latencyMs) {
+        if (lookup == null || response == null || response.isEmpty()) {
+            return;
+        }
+        Map<String, Object> document = new HashMap<>();
+        document.put("scope", lookup.scope());
+        document.put("templateId", lookup.templateId());
+        document.put("userInput", lookup.userInput());
+        document.put("embedding", toList(lookup.vector()));
+        document.put("response", response);
+        document.put("latencyMs", latencyMs);
+        document.put("totalTokens", totalTokens(response));
+        document.put("createdAt", System.currentTimeMillis());
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                elasticsearchClient.index(i -> i.index(index).document(document));
+            } catch (Exception e) {
+                log.warn("Failed to store semantic cache entry for template {}: {}", lookup.templateId(), e.getMessage());
+            }
+        });
+    }
+
+    private Map<String, Object> search(String scope, String templateId, float[] vector, double threshold) throws IOException {
+        List<Query> filters = List.of(
+                Query.of(q -> q.term(t -> t.field("templateId").value(templateId))),
+                Query.of(q -> q.term(t -> t.field("scope").value(scope))),
+                Query.of(q -> q.range(r -> r.date(d -> d.field("createdAt").gte("now-" + ttlSeconds + "s")))));
+        SearchResponse<CachedAnswer> response = elasticsearchClient.search(s -> s
+                .index(index)
+                .size(1)
+                .knn(k -> k
+                        .field("embedding")
+                        .queryVector(toList(vector))
+                        .k(1)
+                        .numCandidates(numCandidates)
+                        // Raw cosine similarity for a cosine dense_vector
+                        .similarity((float) threshold)
+                        .filter(filters))
+                .source(src -> src.filter(f -> f.includes("response", "latencyMs", "totalTokens"))), CachedAnswer.class);
+
+        List<Hit<CachedAnswer>> hits = response.hits().hits();
+        if (hits.isEmpty() || hits.get(0).source() == null) {
+            return null;
+        }
+        Hit<CachedAnswer> hit = hits.get(0);
+        double similarity = cosine(hit.score(), threshold);
+        if (similarity < threshold) {
+            return null;
+        }
+        CachedAnswer answer = hit.source();
+        log.debug("Semantic cache hit for template {} (similarity {})", templateId, similarity);
+        if (answer.latencyMs() != null) {
+            savedLatency(templateId).record(answer.latencyMs());
+        }
+        if (answer.totalTokens() != null) {
+            savedTokens(templateId).record(answer.totalTokens());
+        }
+        return answer.response();
+    }
+
+    /**
+     * Cosine similarity of a kNN hit on a cosine dense_vector, whose score is (1 + cosine) / 2. A hit without
+     * a score passed the search's own similarity filter, so it counts as reaching the threshold.
+     */
+    static double cosine(Double score, double threshold) {
+        return score != null ? 2 * score - 1 : threshold;
+    }
+
+    private void ensureIndex() throws IOException {
+        if (indexReady) {
+            return;
+        }
+        synchronized (this) {
+            if (indexReady) {
+                return;
+            }
+            if (!elasticsearchClient.indices().exists(e -> e.index(index)).value()) {
+                elasticsearchClient.indices().create(c -> c
+                        .index(index)
+                        .mappings(m -> m
+                                .properties("scope", p -> p.keyword(k -> k))
+                                .properties("templateId", p -> p.keyword(k -> k))
+                                .properties("userInput", p -> p.text(t -> t.index(false)))
+                                .properties("embedding", p -> p.denseVector(v -> v
+                                        .dims(embedder.dimensions())
+                                        .index(true)
+                                        .similarity("cosine")))
+                                .properties("response", p -> p.object(o -> o.enabled(false)))
+                                .properties("latencyMs", p -> p.long_(l -> l))
+                                .properties("totalTokens", p -> p.long_(l -> l))
+                                .properties("createdAt", p -> p.date(d -> d))));
+                log.info("Created semantic cache index {} ({} dimensions)", index, embedder.dimensions());
+            }
+            indexReady = true;
+        }
+    }
+
+    private static Long totalTokens(Map<String, Object> response) {
+        if (response.get("usage") instanceof Map<?, ?> usage && usage.get("total_tokens") instanceof Number tokens) {
+            return tokens.longValue();
+        }
+        return null;
+    }
+
+    static boolean isZero(float[] vector) {
+        for (float v : vector) {
+            if (v != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Float> toList(float[] vector) {
+        List<Float> values = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            values.add(v);
+        }
+        return values;
+    }
+
+    private void record(String templateId, String result) {
+        meterRegistry.counter("llm.semantic_cache.requests", "template", templateId, "result", result).increment();
+    }
+
+    private DistributionSummary savedLatency(String templateId) {
+        return DistributionSummary.builder("llm.semantic_cache.saved.latency")
+                .description("Provider latency of the original call, saved by a semantic cache hit")
+                .baseUnit("milliseconds")
+                .tag("template", templateId)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary savedTokens(String templateId) {
+        return DistributionSummary.builder("llm.semantic_cache.saved.tokens")
+                .description("Total tokens of the original call, saved by a semantic cache hit")
+                .tag("template", templateId)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fields of a cache entry read back on a hit.
+     */
+    record CachedAnswer(Map<String, Object> response, Long latencyMs, Long totalTokens) {
+    }
+
+    /**
+     * A lookup: the embedded user input and, on a hit, the cached response.
+     */
+    public record Lookup(String scope, String templateId, String userInput, float[] vector, Map<String, Object> response) {
+    }
+}
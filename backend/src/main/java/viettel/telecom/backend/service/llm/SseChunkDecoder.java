@@ -0,0 +1,142 @@
+package viettel.telecom.backend.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+/**
+ * Decodes one chunk of a streamed chat completion (OpenAI-compatible SSE) into its text and finish reason.
+ *
+ * The chunk is read with Jackson's streaming parser: only choices[0].delta.content (or message.content) and
+ * choices[0].finish_reason are extracted, other fields are skipped without being materialized, and parsing
+ * stops after the first choice. A "data:" prefix and surrounding whitespace are skipped in place.
+ */
+@Slf4j
+public final class SseChunkDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Chunks are copied into a per-thread buffer, so the parser can start after the "data:" prefix
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[1024]);
+
+    private SseChunkDecoder() {
+    }
+
+    /**
+     * @return the decoded chunk, or null for "[DONE]", blank or malformed chunks
+     */
+    public static Delta decode(String chunk) {
+        if (chunk == null) {
+            return null;
+        }
+        int start = skipWhitespace(chunk, 0);
+        if (chunk.startsWith("data:", start)) {
+            start = skipWhitespace(chunk, start + 5);
+        }
+        int end = chunk.length();
+        while (end > start && Character.isWhitespace(chunk.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end || chunk.startsWith("[DONE]", start)) {
+            return null;
+        }
+
+        int length = end - start;
+        char[] buffer = BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+        chunk.getChars(start, end, buffer, 0);
+
+        try (JsonParser parser = JSON_FACTORY.createParser(buffer, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    // Only the first choice matters; the rest of the chunk is not read
+                    return parser.nextToken() == JsonToken.START_OBJECT ? readChoice(parser) : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            log.debug("Ignoring malformed stream chunk: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Delta readChoice(JsonParser parser) throws IOException {
+        String content = null;
+        String finishReason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (("delta".equals(field) || "message".equals(field)) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    boolean isContent = "content".equals(parser.currentName());
+                    JsonToken contentValue = parser.nextToken();
+                    if (isContent && contentValue == JsonToken.VALUE_STRING) {
+                        content = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("finish_reason".equals(field) && value == JsonToken.VALUE_STRING) {
+                finishReason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content == null && finishReason == null ? null : new Delta(content, finishReason);
+    }
+
+    private static int skipWhitespace(String s, int from) {
+        while (from < s.length() && Character.isWhitespace(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Collects the chunks of one streamed completion into its full text and finish reason.
+     */
+    public static final class Accumulator {
+        private final StringBuilder content = new StringBuilder();
+        private String finishReason;
+
+        public Accumulator append(String chunk) {
+            Delta delta = decode(chunk);
+            if (delta != null) {
+                if (delta.content() != null) {
+                    content.append(delta.content());
+                }
+                if (delta.finishReason() != null) {
+                    finishReason = delta.finishReason();
+                }
+            }
+            return this;
+        }
+
+        public String content() {
+            return content.toString();
+        }
+
+        public String finishReason() {
+            return finishReason;
+        }
+    }
+
+    /**
+     * @param content      text carried by the chunk, null if none
+     * @param finishReason why the completion stopped (e.g. "stop", "length"), only on the last chunk
+     */
+    public record Delta(String content, String finishReason) {
+    }
+}
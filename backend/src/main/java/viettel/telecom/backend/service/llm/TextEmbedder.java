@@ -0,0 +1,26 @@
+package viettel.telecom.backend.service.llm;
+
+/**
+ * Turns text into a vector for the semantic response cache ({@link SemanticLlmCache}).
+ *
+ * Implementations are Spring beans; llm.semantic-cache.embedder selects one by bean name, so a test can
+ * register its own deterministic embedder.
+ */
+public interface TextEmbedder {
+
+    /**
+     * Identifies the vector space: vectors of different embedders (or of the same embedder with other
+     * settings) are never compared. Also used in the name of the Elasticsearch index.
+     */
+    String id();
+
+    /**
+     * Length of the vectors returned by {@link #embed}.
+     */
+    int dimensions();
+
+    /**
+     * Blocking; returns a vector of {@link #dimensions()} values, all zero if the text has nothing to embed.
+     */
+    float[] embed(String text);
+}
@@ -2,10 +2,40 @@ package viettel.telecom.backend.service.model;
 
 
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.List;
 import java.util.Map;
 
 @Service
 public interface ModelHandler {
     Map<String, Object> generateResponse(String systemPrompt, String userInput, Map<String, Object> config);
+
+    /**
+     * Non-blocking variant used by the reactive flow execution mode.
+     * The default implementation offloads the blocking call to a bounded elastic thread.
+     */
+    default Mono<Map<String, Object>> generateResponseAsync(String systemPrompt, String userInput, Map<String, Object> config) {
+        return Mono.fromCallable(() -> generateResponse(systemPrompt, userInput, config))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Stream the response as text deltas, in order, as the provider produces them.
+     * The default implementation emits the whole content of {@link #generateResponseAsync} as one delta.
+     */
+    @SuppressWarnings("unchecked")
+    default Flux<String> streamResponse(String systemPrompt, String userInput, Map<String, Object> config) {
+        return generateResponseAsync(systemPrompt, userInput, config)
+                .flatMapMany(response -> {
+                    Object choices = response.get("choices");
+                    if (choices instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof Map<?, ?> choice
+                            && choice.get("message") instanceof Map<?, ?> message && message.get("content") != null) {
+                        return Flux.just(message.get("content").toString());
+                    }
+                    return Flux.empty();
+                });
+    }
 }
\ No newline at end of file
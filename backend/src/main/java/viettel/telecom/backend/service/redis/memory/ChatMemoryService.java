@@ -1,13 +1,17 @@
 package viettel.telecom.backend.service.redis.memory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.api.StatefulRedisConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import redis.clients.jedis.JedisPooled;
 import redis.clients.jedis.AbstractTransaction;
 import redis.clients.jedis.exceptions.JedisException;
+import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -29,11 +33,14 @@ public class ChatMemoryService {
     private static final int CHAT_HISTORY_EXPIRATION = 7 * 24 * 3600; // 7 days
 
     private final JedisPooled jedisPooled;
+    private final StatefulRedisConnection<String, String> redisConnection;
     private final ObjectMapper objectMapper;
 
     @Autowired
-    public ChatMemoryService(JedisPooled jedisPooled) {
+    public ChatMemoryService(JedisPooled jedisPooled,
+                             @Lazy StatefulRedisConnection<String, String> redisConnection) {
         this.jedisPooled = jedisPooled;
+        this.redisConnection = redisConnection;
         this.objectMapper = new ObjectMapper();
     }
 
@@ -63,18 +70,9 @@ public class ChatMemoryService {
             return;
         }
 
-        // Strip code fences (```...```) if present
-        String cleaned = removeCodeFences(message);
-
-        // Build a JSON record: { "role", "timestamp", "content" }
-        Map<String, Object> record = new HashMap<>();
-        record.put("role", userType);
-        record.put("timestamp", System.currentTimeMillis());
-        record.put("content", cleaned);
-
         String redisKey = CHAT_HISTORY_PREFIX + sessionId;
         try {
-            String jsonMsg = objectMapper.writeValueAsString(record);
+            String jsonMsg = buildChatRecord(userType, message);
             AbstractTransaction transaction = jedisPooled.multi();
             transaction.rpush(redisKey, jsonMsg);
             transaction.expire(redisKey, CHAT_HISTORY_EXPIRATION);
@@ -85,6 +83,27 @@ public class ChatMemoryService {
         }
     }
 
+    /**
+     * Non-blocking variant of {@link #storeUserChat}. Errors are logged and swallowed, like the blocking version.
+     */
+    public Mono<Void> storeUserChatAsync(String sessionId, String userType, String message) {
+        if (!isValidSessionId(sessionId) || !isValidUserType(userType) || !isValidMessage(message)) {
+            logger.warn("Invalid input for storing user chat. sessionId={}, userType={}",
+                    maskSessionId(sessionId), userType);
+            return Mono.empty();
+        }
+        String redisKey = CHAT_HISTORY_PREFIX + sessionId;
+        return Mono.fromCallable(() -> buildChatRecord(userType, message))
+                .flatMap(jsonMsg -> redisConnection.reactive().rpush(redisKey, jsonMsg))
+                .then(Mono.defer(() -> redisConnection.reactive().expire(redisKey, CHAT_HISTORY_EXPIRATION)))
+                .onErrorResume(e -> {
+                    logger.error("Failed to store chat message. sessionId={}, userType={}, error={}",
+                            maskSessionId(sessionId), userType, e.getMessage(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
     /**
      * Get all stored chat messages for this session (each is a JSON string).
      */
@@ -118,6 +137,36 @@ public class ChatMemoryService {
         }
     }
 
+    /**
+     * Non-blocking variant of {@link #getLastChatMessage}. Completes empty if there is no message.
+     */
+    public Mono<String> getLastChatMessageAsync(String sessionId) {
+        if (!isValidSessionId(sessionId)) {
+            return Mono.empty();
+        }
+        String redisKey = CHAT_HISTORY_PREFIX + sessionId;
+        return Mono.defer(() -> redisConnection.reactive().lindex(redisKey, -1))
+                .onErrorResume(e -> {
+                    logger.error("Failed to retrieve last chat message. sessionId={}, error={}",
+                            maskSessionId(sessionId), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Build the JSON record { "role", "timestamp", "content" }, removing any code fences first.
+     */
+    private String buildChatRecord(String userType, String message) throws JsonProcessingException {
+        // Strip code fences (```...```) if present
+        String cleaned = removeCodeFences(message);
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("role", userType);
+        record.put("timestamp", System.currentTimeMillis());
+        record.put("content", cleaned);
+        return objectMapper.writeValueAsString(record);
+    }
+
     // Example "remove fences" code
     private String removeCodeFences(String input) {
         if (input == null) return "";
@@ -0,0 +1,203 @@
+package viettel.telecom.backend.service.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link FlowSessionStore} backed by Redis, with the decoded contexts of hot sessions kept in heap.
+ *
+ * Every save goes through the Redis compare-and-set of {@link RedisFlowSessionStore}, so any replica can
+ * continue any conversation. The heap copy is only a read cache: a load first reads the stored version
+ * (a single HGET) and serves the heap copy only if it has that version; otherwise, e.g. after a save on
+ * another replica, the context is read and decoded from Redis again.
+ *
+ * At most flow.session.max-resident contexts stay in memory. A context leaves the heap when it has been idle
+ * for flow.session.idle-ttl-seconds or is evicted for size; contexts whose estimated size exceeds
+ * flow.session.max-context-bytes are never kept in heap. Nothing is lost either way, Redis has the state.
+ *
+ * Metrics:
+ *  - flow.session.resident / flow.session.resident.bytes : contexts in memory and their estimated size
+ *  - flow.session.hibernated (reason=idle|size|oversized) : contexts dropped from (or not kept in) heap
+ *  - flow.session.restored : contexts read back from Redis because the heap had no current copy
+ */
+@Slf4j
+public class BoundedFlowSessionStore implements FlowSessionStore, AutoCloseable {
+
+    private final Cache<String, Resident> resident;
+    private final RedisFlowSessionStore hibernation;
+    private final long maxContextBytes;
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    private final MeterRegistry meterRegistry;
+    private final Counter restoredCounter;
+
+    public BoundedFlowSessionStore(RedisFlowSessionStore hibernation,
+                                   MeterRegistry meterRegistry,
+                                   long maxResident,
+                                   long idleTtlSeconds,
+                                   long maxContextBytes) {
+        this.hibernation = hibernation;
+        this.maxContextBytes = maxContextBytes;
+        this.meterRegistry = meterRegistry;
+        this.resident = Caffeine.newBuilder()
+                .maximumSize(maxResident)
+                .expireAfterAccess(Duration.ofSeconds(idleTtlSeconds))
+                // Expire idle contexts even when there is no other cache activity
+                .scheduler(Scheduler.systemScheduler())
+                .evictionListener((String key, Resident entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        residentBytes.addAndGet(-entry.bytes());
+                        meterRegistry.counter("flow.session.hibernated",
+                                "reason", cause == RemovalCause.EXPIRED ? "idle" : "size").increment();
+                    }
+                })
+                .build();
+
+        this.restoredCounter = Counter.builder("flow.session.restored")
+                .description("Flow contexts restored from Redis")
+                .register(meterRegistry);
+        Gauge.builder("flow.session.resident", resident, Cache::estimatedSize)
+                .description("Flow contexts held in memory")
+                .register(meterRegistry);
+        Gauge.builder("flow.session.resident.bytes", residentBytes, AtomicLong::get)
+                .description("Estimated size of the flow contexts held in memory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public FlowSessionState load(String key) {
+        long storedVersion = hibernation.version(key);
+        if (storedVersion == 0) {
+            forget(key);
+            return FlowSessionState.empty(key);
+        }
+        Resident entry = resident.getIfPresent(key);
+        if (entry != null && entry.state().getVersion() == storedVersion) {
+            return copy(entry.state());
+        }
+
+        FlowSessionState restored = hibernation.load(key);
+        restoredCounter.increment();
+        log.debug("Restored flow session {} (version {})", key, restored.getVersion());
+        keep(copy(restored));
+        return restored;
+    }
+
+    @Override
+    public long save(FlowSessionState state) {
+        // Throws FlowSessionConflictException if another save (on any replica) came first
+        long saved = hibernation.save(state);
+        keep(copy(new FlowSessionState(state.getKey(), saved, state.getContext())));
+        return saved;
+    }
+
+    @Override
+    public void delete(String key) {
+        forget(key);
+        hibernation.delete(key);
+    }
+
+    /**
+     * Drop the heap copies; the state is already in Redis.
+     */
+    @Override
+    public void close() {
+        resident.invalidateAll();
+        residentBytes.set(0);
+    }
+
+    /**
+     * Cache a state in heap, unless it is oversized or an equal or newer version is already cached.
+     */
+    private void keep(FlowSessionState state) {
+        long bytes = estimateBytes(state.getContext());
+        if (bytes > maxContextBytes) {
+            log.debug("Flow session {} is ~{} bytes; keeping it in Redis only", state.getKey(), bytes);
+            forget(state.getKey());
+            meterRegistry.counter("flow.session.hibernated", "reason", "oversized").increment();
+            return;
+        }
+        resident.asMap().compute(state.getKey(), (key, current) -> {
+            if (current != null && current.state().getVersion() >= state.getVersion()) {
+                return current;
+            }
+            if (current != null) {
+                residentBytes.addAndGet(-current.bytes());
+            }
+            residentBytes.addAndGet(bytes);
+            return new Resident(state, bytes);
+        });
+    }
+
+    private void forget(String key) {
+        Resident removed = resident.asMap().remove(key);
+        if (removed != null) {
+            residentBytes.addAndGet(-removed.bytes());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FlowSessionState copy(FlowSessionState state) {
+        // Callers mutate the context (nested values too), so neither they nor the cache may share it
+        return new FlowSessionState(state.getKey(), state.getVersion(), (Map<String, Object>) deepCopy(state.getContext()));
+    }
+
+    private static Object deepCopy(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new HashMap<>(Math.max(16, map.size() * 2));
+            map.forEach((k, v) -> copy.put(k, deepCopy(v)));
+            return copy;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(v -> copy.add(deepCopy(v)));
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Cheap estimate of the heap used by a context (strings as UTF-16, fixed costs for boxes and map entries).
+     */
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof Map) {
+            long size = 64;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 32 + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 40;
+            for (Object element : (Collection<?>) value) {
+                size += 8 + estimateBytes(element);
+            }
+            return size;
+        }
+        return 24;
+    }
+
+    private record Resident(FlowSessionState state, long bytes) {
+    }
+}
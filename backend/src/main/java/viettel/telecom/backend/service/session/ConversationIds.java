@@ -0,0 +1,57 @@
+package viettel.telecom.backend.service.session;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * Server-issued conversation IDs: 128 random bits, URL-safe base64 (22 characters).
+ *
+ * A WebSocket connection gets its ID on its first message (see ChatWebSocketHandler) and keeps it in the
+ * session attribute {@link #ATTRIBUTE}. Flow state and chat memory are keyed by it, so a client that
+ * reconnects with the ID it was given continues the same conversation, on any replica.
+ */
+public final class ConversationIds {
+
+    public static final String ATTRIBUTE = "conversationId";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Pattern FORMAT = Pattern.compile("[A-Za-z0-9_-]{22}");
+
+    private ConversationIds() {
+    }
+
+    public static String generate() {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Whether a client-supplied value can be an ID issued by {@link #generate()}.
+     */
+    public static boolean isWellFormed(String id) {
+        return id != null && FORMAT.matcher(id).matches();
+    }
+
+    /**
+     * The ID a REST caller sent back if it is well-formed, otherwise a new one. Client-chosen values such as "1"
+     * are never used as keys, so two callers cannot end up sharing one conversation by picking the same ID.
+     */
+    public static String resumeOrGenerate(Object requested) {
+        return requested instanceof String candidate && isWellFormed(candidate) ? candidate : generate();
+    }
+
+    /**
+     * Conversation of a WebSocket session; its connection ID until one has been assigned.
+     */
+    public static String of(WebSocketSession session) {
+        if (session == null) {
+            return null;
+        }
+        Object id = session.getAttributes().get(ATTRIBUTE);
+        return id instanceof String ? (String) id : session.getId();
+    }
+}
@@ -0,0 +1,36 @@
+package viettel.telecom.backend.service.session;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State of one conversation with a flow: the execution context (which also holds "currentNodeId")
+ * and the version it was loaded with, used for optimistic concurrency by {@link FlowSessionStore}.
+ */
+@Getter
+public class FlowSessionState {
+
+    public static final String CURRENT_NODE_KEY = "currentNodeId";
+
+    private final String key;
+    /** 0 if the session has never been saved. */
+    private final long version;
+    private final Map<String, Object> context;
+
+    public FlowSessionState(String key, long version, Map<String, Object> context) {
+        this.key = key;
+        this.version = version;
+        this.context = context != null ? context : new HashMap<>();
+    }
+
+    public static FlowSessionState empty(String key) {
+        return new FlowSessionState(key, 0L, new HashMap<>());
+    }
+
+    public String getCurrentNodeId() {
+        Object nodeId = context.get(CURRENT_NODE_KEY);
+        return nodeId instanceof String ? (String) nodeId : null;
+    }
+}
@@ -0,0 +1,25 @@
+package viettel.telecom.backend.service.session;
+
+import viettel.telecom.backend.exception.FlowSessionConflictException;
+
+/**
+ * Stores flow conversation state outside of the request/WebSocket handlers, so that any replica
+ * can continue any conversation. The implementation is selected with flow.session.store (see FlowSessionConfig).
+ */
+public interface FlowSessionStore {
+
+    /**
+     * Load the state of a conversation. Never returns null: unknown keys yield an empty state with version 0.
+     */
+    FlowSessionState load(String key);
+
+    /**
+     * Save the state if it was not changed since it was loaded.
+     *
+     * @return the new version
+     * @throws FlowSessionConflictException if the stored version no longer matches
+     */
+    long save(FlowSessionState state);
+
+    void delete(String key);
+}
@@ -0,0 +1,46 @@
+package viettel.telecom.backend.service.session;
+
+import viettel.telecom.backend.exception.FlowSessionConflictException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-JVM {@link FlowSessionStore}: sessions are pinned to this replica and lost on restart.
+ * Unbounded, so only meant for development and tests (see {@link BoundedFlowSessionStore}).
+ */
+public class InMemoryFlowSessionStore implements FlowSessionStore {
+
+    private final Map<String, FlowSessionState> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public FlowSessionState load(String key) {
+        FlowSessionState stored = sessions.get(key);
+        if (stored == null) {
+            return FlowSessionState.empty(key);
+        }
+        // Callers mutate the context, so hand out a copy
+        return new FlowSessionState(key, stored.getVersion(), new HashMap<>(stored.getContext()));
+    }
+
+    @Override
+    public long save(FlowSessionState state) {
+        long[] saved = new long[1];
+        sessions.compute(state.getKey(), (key, current) -> {
+            long currentVersion = current != null ? current.getVersion() : 0L;
+            if (currentVersion != state.getVersion()) {
+                throw new FlowSessionConflictException("Flow session " + key + " was modified concurrently (expected version "
+                        + state.getVersion() + ", found " + currentVersion + ")");
+            }
+            saved[0] = currentVersion + 1;
+            return new FlowSessionState(key, saved[0], new HashMap<>(state.getContext()));
+        });
+        return saved[0];
+    }
+
+    @Override
+    public void delete(String key) {
+        sessions.remove(key);
+    }
+}
@@ -0,0 +1,148 @@
+package viettel.telecom.backend.service.session;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.JedisPooled;
+import viettel.telecom.backend.exception.FlowSessionConflictException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link FlowSessionStore} backed by Redis, so a conversation can continue on any replica.
+ *
+ * Each session is one hash "flow:session:{key}" with:
+ *  - v    : version, incremented by every save (compare-and-set in a Lua script)
+ *  - node : currentNodeId
+ *  - ctx  : the rest of the context as JSON, gzipped when it is larger than flow.session.compress-threshold-bytes
+ * The hash expires after flow.session.ttl-seconds without a save.
+ * Also the backing store of {@link BoundedFlowSessionStore}.
+ */
+@Slf4j
+public class RedisFlowSessionStore implements FlowSessionStore {
+
+    private static final String KEY_PREFIX = "flow:session:";
+    private static final byte[] FIELD_VERSION = "v".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FIELD_NODE = "node".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FIELD_CONTEXT = "ctx".getBytes(StandardCharsets.UTF_8);
+
+    // KEYS[1] = session key; ARGV = expected version, new version, node, ctx, ttl millis
+    private static final byte[] SAVE_SCRIPT = (
+            "local v = redis.call('HGET', KEYS[1], 'v') "
+                    + "if (v == false and ARGV[1] == '0') or v == ARGV[1] then "
+                    + "redis.call('HSET', KEYS[1], 'v', ARGV[2], 'node', ARGV[3], 'ctx', ARGV[4]) "
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[5]) "
+                    + "return 1 end "
+                    + "return 0").getBytes(StandardCharsets.UTF_8);
+
+    private static final TypeReference<Map<String, Object>> CONTEXT_TYPE = new TypeReference<>() {};
+
+    private final JedisPooled jedisPooled;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long ttlMillis;
+    private final int compressThresholdBytes;
+
+    public RedisFlowSessionStore(JedisPooled jedisPooled, long ttlSeconds, int compressThresholdBytes) {
+        this.jedisPooled = jedisPooled;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.compressThresholdBytes = compressThresholdBytes;
+    }
+
+    @Override
+    public FlowSessionState load(String key) {
+        List<byte[]> fields = jedisPooled.hmget(redisKey(key), FIELD_VERSION, FIELD_NODE, FIELD_CONTEXT);
+        byte[] version = fields.get(0);
+        if (version == null) {
+            return FlowSessionState.empty(key);
+        }
+
+        Map<String, Object> context = fields.get(2) != null ? decode(fields.get(2)) : new HashMap<>();
+        byte[] node = fields.get(1);
+        if (node != null && node.length > 0) {
+            context.put(FlowSessionState.CURRENT_NODE_KEY, new String(node, StandardCharsets.UTF_8));
+        }
+        return new FlowSessionState(key, Long.parseLong(new String(version, StandardCharsets.UTF_8)), context);
+    }
+
+    @Override
+    public long save(FlowSessionState state) {
+        Map<String, Object> context = new HashMap<>(state.getContext());
+        Object node = context.remove(FlowSessionState.CURRENT_NODE_KEY);
+        long newVersion = state.getVersion() + 1;
+
+        Object result = jedisPooled.eval(SAVE_SCRIPT,
+                List.of(redisKey(state.getKey())),
+                List.of(ascii(state.getVersion()),
+                        ascii(newVersion),
+                        node instanceof String ? ((String) node).getBytes(StandardCharsets.UTF_8) : new byte[0],
+                        encode(context),
+                        ascii(ttlMillis)));
+
+        if (!(result instanceof Long) || (Long) result != 1L) {
+            throw new FlowSessionConflictException("Flow session " + state.getKey()
+                    + " was modified concurrently (expected version " + state.getVersion() + ")");
+        }
+        return newVersion;
+    }
+
+    @Override
+    public void delete(String key) {
+        jedisPooled.del(redisKey(key));
+    }
+
+    /**
+     * Stored version of a session, 0 if there is none.
+     */
+    public long version(String key) {
+        byte[] version = jedisPooled.hget(redisKey(key), FIELD_VERSION);
+        return version != null ? Long.parseLong(new String(version, StandardCharsets.UTF_8)) : 0L;
+    }
+
+    private byte[] encode(Map<String, Object> context) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(context);
+            if (json.length < compressThresholdBytes) {
+                return json;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(json);
+            }
+            log.debug("Compressed flow session context from {} to {} bytes", json.length, out.size());
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize flow session context", e);
+        }
+    }
+
+    private Map<String, Object> decode(byte[] blob) {
+        try {
+            // Plain JSON starts with '{', anything else is gzip
+            if (blob.length > 0 && blob[0] == '{') {
+                return objectMapper.readValue(blob, CONTEXT_TYPE);
+            }
+            try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(blob))) {
+                return objectMapper.readValue(gzip, CONTEXT_TYPE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to deserialize flow session context", e);
+        }
+    }
+
+    private static byte[] redisKey(String key) {
+        return (KEY_PREFIX + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] ascii(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,250 @@
+package viettel.telecom.backend.service.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs chat work off the WebSocket container thread, one "mailbox" per session.
+ *
+ * Tasks of the same session are executed strictly in submission order and never concurrently,
+ * so a session's context is only touched by one thread at a time. Different sessions run in parallel.
+ * Asynchronous tasks keep their mailbox busy until the returned stage completes, without holding a thread.
+ * Tasks run on virtual threads when the JVM supports them (Java 21+); otherwise on a bounded
+ * platform thread pool.
+ *
+ * Metrics:
+ *  - chat.mailbox.wait     : time a task spent queued in its mailbox
+ *  - chat.mailbox.depth    : mailbox depth observed when a task is enqueued
+ *  - chat.mailbox.rejected : tasks rejected because the session's mailbox was full
+ *  - chat.mailbox.active / chat.mailbox.queued : number of mailboxes and of queued tasks
+ */
+@Slf4j
+@Component
+public class SessionMailboxExecutor {
+
+    private final ExecutorService executor;
+    private final int maxQueuedPerSession;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicLong queuedTasks = new AtomicLong();
+
+    private final Timer waitTimer;
+    private final DistributionSummary depthSummary;
+    private final Counter rejectedCounter;
+
+    public SessionMailboxExecutor(MeterRegistry meterRegistry,
+                                  @Value("${chat.mailbox.max-queued-per-session:32}") int maxQueuedPerSession,
+                                  @Value("${chat.mailbox.fallback-max-threads:200}") int fallbackMaxThreads) {
+        this.maxQueuedPerSession = maxQueuedPerSession;
+        this.executor = createExecutor(fallbackMaxThreads);
+
+        this.waitTimer = Timer.builder("chat.mailbox.wait")
+                .description("Time a chat message waited in its session mailbox")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.depthSummary = DistributionSummary.builder("chat.mailbox.depth")
+                .description("Session mailbox depth when a message is enqueued")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("chat.mailbox.rejected")
+                .description("Chat messages rejected because the session mailbox was full")
+                .register(meterRegistry);
+        Gauge.builder("chat.mailbox.active", mailboxes, Map::size)
+                .description("Sessions with a mailbox")
+                .register(meterRegistry);
+        Gauge.builder("chat.mailbox.queued", queuedTasks, AtomicLong::get)
+                .description("Chat messages queued across all mailboxes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a task for the given session.
+     *
+     * @return false if the session already has too many pending tasks (the task is not queued).
+     */
+    public boolean submit(String sessionId, Runnable task) {
+        return submitAsync(sessionId, () -> {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Queue an asynchronous task for the given session. The next task of the session only starts
+     * once the stage returned by this one has completed.
+     *
+     * @return false if the session already has too many pending tasks (the task is not queued).
+     */
+    public boolean submitAsync(String sessionId, Supplier<? extends CompletionStage<?>> task) {
+        Mailbox mailbox = mailboxes.computeIfAbsent(sessionId, Mailbox::new);
+        int depth = mailbox.depth.incrementAndGet();
+        if (depth > maxQueuedPerSession) {
+            mailbox.depth.decrementAndGet();
+            rejectedCounter.increment();
+            log.warn("Mailbox full for session {} ({} pending); rejecting message", sessionId, depth - 1);
+            return false;
+        }
+        depthSummary.record(depth);
+        queuedTasks.incrementAndGet();
+        mailbox.queue.add(new QueuedTask(task, System.nanoTime()));
+        mailbox.schedule();
+        return true;
+    }
+
+    /**
+     * Drop the mailbox of a closed session. Tasks that have not started yet are discarded.
+     */
+    public void close(String sessionId) {
+        Mailbox mailbox = mailboxes.remove(sessionId);
+        if (mailbox != null) {
+            mailbox.closed = true;
+            int dropped = 0;
+            while (mailbox.queue.poll() != null) {
+                dropped++;
+            }
+            if (dropped > 0) {
+                mailbox.depth.addAndGet(-dropped);
+                queuedTasks.addAndGet(-dropped);
+                log.debug("Discarded {} pending messages for closed session {}", dropped, sessionId);
+            }
+        }
+    }
+
+    /**
+     * Number of tasks queued or running for the given session.
+     */
+    public int getDepth(String sessionId) {
+        Mailbox mailbox = mailboxes.get(sessionId);
+        return mailbox != null ? mailbox.depth.get() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService createExecutor(int fallbackMaxThreads) {
+        try {
+            // Java 21+: one cheap virtual thread per task
+            ExecutorService virtual = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Session mailboxes run on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads not available; session mailboxes use up to {} platform threads", fallbackMaxThreads);
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    fallbackMaxThreads, fallbackMaxThreads,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread t = new Thread(r, "chat-mailbox-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    private record QueuedTask(Supplier<? extends CompletionStage<?>> task, long enqueuedAtNanos) {
+    }
+
+    private final class Mailbox {
+        private final String sessionId;
+        private final Queue<QueuedTask> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicInteger depth = new AtomicInteger();
+        private volatile boolean closed;
+
+        Mailbox(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            QueuedTask next;
+            while (!closed && (next = queue.poll()) != null) {
+                queuedTasks.decrementAndGet();
+                waitTimer.record(System.nanoTime() - next.enqueuedAtNanos(), TimeUnit.NANOSECONDS);
+
+                CompletableFuture<?> pending = start(next);
+                if (!pending.isDone()) {
+                    // Keep the mailbox busy (still "scheduled") and resume once the task completes
+                    pending.whenComplete((result, error) -> {
+                        complete(error);
+                        executor.execute(this::drain);
+                    });
+                    return;
+                }
+                complete(pending.isCompletedExceptionally() ? failure(pending) : null);
+            }
+
+            scheduled.set(false);
+            // A task may have been added after the last poll but before the flag was cleared
+            if (!closed && !queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private CompletableFuture<?> start(QueuedTask next) {
+            try {
+                CompletionStage<?> stage = next.task().get();
+                return stage != null ? stage.toCompletableFuture() : CompletableFuture.completedFuture(null);
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private void complete(Throwable error) {
+            depth.decrementAndGet();
+            if (error != null) {
+                log.error("Mailbox task failed for session {}: {}", sessionId, error.getMessage(), error);
+            }
+        }
+
+        private Throwable failure(CompletableFuture<?> future) {
+            try {
+                future.join();
+                return null;
+            } catch (Exception e) {
+                return e.getCause() != null ? e.getCause() : e;
+            }
+        }
+    }
+}
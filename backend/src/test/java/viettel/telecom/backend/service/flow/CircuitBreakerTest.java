@@ -0,0 +1,119 @@
+package viettel.telecom.backend.service.flow;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static void fail(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onFailure();
+        }
+    }
+
+    private static void succeed(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onSuccess();
+        }
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 5, 50, 60_000, 2);
+
+        fail(breaker, 4);
+
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.snapshot().bufferedCalls()).isEqualTo(4);
+        assertThat(breaker.snapshot().failureRate()).isEqualTo(100.0);
+    }
+
+    @Test
+    void opensAtTheFailureRateThresholdAndRejectsCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, 60_000, 2);
+
+        succeed(breaker, 2);
+        fail(breaker, 1);
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        fail(breaker, 1);
+
+        CircuitBreaker.Snapshot snapshot = breaker.snapshot();
+        assertThat(snapshot.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(snapshot.openUntil()).isGreaterThan(System.currentTimeMillis());
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void slidingWindowForgetsOldOutcomes() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 75, 60_000, 1);
+
+        fail(breaker, 2);
+        succeed(breaker, 4);
+        assertThat(breaker.snapshot().failureRate()).isZero();
+        fail(breaker, 2);
+
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.snapshot().failureRate()).isEqualTo(50.0);
+        fail(breaker, 1);
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void halfOpenLimitsTrialCallsAndClosesWhenTheyAllSucceed() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 2, 50, 0, 2);
+        fail(breaker, 2);
+
+        // openMillis = 0: the next call is already a trial call
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        breaker.onSuccess();
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        breaker.onSuccess();
+
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.snapshot().bufferedCalls()).isZero();
+    }
+
+    @Test
+    void failedTrialCallOpensAgain() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 2, 50, 0, 2);
+        fail(breaker, 2);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+
+        CircuitBreaker.Snapshot snapshot = breaker.snapshot();
+        assertThat(snapshot.openUntil()).isNotNull();
+        assertThat(snapshot.failureRate()).isEqualTo(100.0);
+    }
+
+    @Test
+    void releasedPermitCanBeReused() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 2, 50, 0, 1);
+        fail(breaker, 2);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+        breaker.release();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void resetClosesAnOpenBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 2, 50, 60_000, 1);
+        fail(breaker, 2);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        breaker.reset();
+
+        assertThat(breaker.snapshot().state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.snapshot().openUntil()).isNull();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+}
@@ -0,0 +1,175 @@
+package viettel.telecom.backend.service.flow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+import viettel.telecom.backend.entity.flow.DataRequest;
+import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+import viettel.telecom.backend.service.redis.memory.ChatMemoryService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DataHandlerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ChatMemoryService chatMemoryService = mock(ChatMemoryService.class);
+    private final MyTokenService myTokenService = mock(MyTokenService.class);
+    private final DataHttpClient dataHttpClient = mock(DataHttpClient.class);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final DataHandler handler = new DataHandler(chatMemoryService, myTokenService, dataHttpClient,
+            new DataResponseCache(null, meterRegistry, 100, false),
+            // No retries, and a circuit that never opens within a test
+            new DownstreamGuard(meterRegistry, 20, 0, 0, 20, 1_000, 50, 30, 3, 100),
+            new PlaceholderTemplateCache(meterRegistry, 100));
+
+    @BeforeEach
+    void stubSession() {
+        when(session.getId()).thenReturn("s1");
+        when(session.getAttributes()).thenReturn(new HashMap<>());
+        when(chatMemoryService.getLastChatMessageAsync("s1"))
+                .thenReturn(Mono.just("{\"role\": \"user\", \"content\": {\"msisdn\": \"0901\"}}"));
+        when(myTokenService.getBearerToken()).thenReturn("token");
+        when(dataHttpClient.requestTimeout(any())).thenReturn(Duration.ofMillis(500));
+    }
+
+    private static DataRequest request(String name, String url, boolean optional) {
+        DataRequest request = new DataRequest();
+        request.setName(name);
+        request.setRequestUrl(url);
+        request.setRequestBody(Map.of("msisdn", "[msisdn]"));
+        request.setOptional(optional);
+        return request;
+    }
+
+    private static FlowNode node(DataRequest... requests) {
+        Flow.Node.NodeData data = new Flow.Node.NodeData();
+        data.setRequests(List.of(requests));
+        data.setOnSuccessNextNode("ok");
+        data.setOnErrorNextNode("failed");
+        return new FlowNode("gather", "dataNode", data, null);
+    }
+
+    private void answer(String url, Mono<Map<String, Object>> response) {
+        when(dataHttpClient.post(eq(url), any(), any(), any(), any())).thenReturn(response);
+    }
+
+    private Map<String, Object> lastResponse(Map<String, Object> context) throws Exception {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> responses = mapper.readValue((String) context.get("lastResponse"), LinkedHashMap.class);
+        return responses;
+    }
+
+    @Test
+    void keepsTheRequestOrderWhateverOrderTheResponsesArriveIn() throws Exception {
+        answer("https://crm/profile", Mono.delay(Duration.ofMillis(150)).map(t -> Map.of("tier", "gold")));
+        answer("https://billing/balance", Mono.delay(Duration.ofMillis(50)).map(t -> Map.of("balance", 10)));
+        answer("https://usage/today", Mono.just(Map.of("mb", 512)));
+        Map<String, Object> context = new HashMap<>();
+
+        String next = handler.gather(node(
+                request("profile", "https://crm/profile", false),
+                request("balance", "https://billing/balance", false),
+                request("usage", "https://usage/today", false)), context, session).block(TIMEOUT);
+
+        assertThat(next).isEqualTo("ok");
+        assertThat(lastResponse(context).keySet()).containsExactly("profile", "balance", "usage");
+        assertThat(context).containsEntry("profile", "{\"tier\":\"gold\"}")
+                .containsEntry("balance", "{\"balance\":10}")
+                .containsEntry("msisdn", "0901")
+                .doesNotContainKey("dataErrors");
+    }
+
+    @Test
+    void requestsRunConcurrentlyWithinOneDeadline() {
+        answer("https://crm/profile", Mono.delay(Duration.ofMillis(300)).map(t -> Map.of("tier", "gold")));
+        answer("https://billing/balance", Mono.delay(Duration.ofMillis(300)).map(t -> Map.of("balance", 10)));
+        answer("https://usage/today", Mono.delay(Duration.ofMillis(300)).map(t -> Map.of("mb", 512)));
+        Map<String, Object> context = new HashMap<>();
+
+        // Run one after another, the three calls would overrun the 500 ms deadline
+        String next = handler.gather(node(
+                request("profile", "https://crm/profile", false),
+                request("balance", "https://billing/balance", false),
+                request("usage", "https://usage/today", false)), context, session).block(TIMEOUT);
+
+        assertThat(next).isEqualTo("ok");
+        assertThat(context).doesNotContainKey("dataErrors");
+    }
+
+    @Test
+    void failedOptionalRequestIsRecordedButTheNodeSucceeds() throws Exception {
+        answer("https://crm/profile", Mono.just(Map.of("tier", "gold")));
+        answer("https://offers/current", Mono.error(new IllegalStateException("offers down")));
+        answer("https://usage/today", Mono.just(Map.of("mb", 512)));
+        Map<String, Object> context = new HashMap<>();
+
+        String next = handler.gather(node(
+                request("profile", "https://crm/profile", false),
+                request("offers", "https://offers/current", true),
+                request("usage", "https://usage/today", false)), context, session).block(TIMEOUT);
+
+        assertThat(next).isEqualTo("ok");
+        assertThat(lastResponse(context).keySet()).containsExactly("profile", "usage");
+        assertThat(context).doesNotContainKey("offers");
+        @SuppressWarnings("unchecked")
+        Map<String, String> errors = (Map<String, String>) context.get("dataErrors");
+        assertThat(errors).containsOnlyKeys("offers");
+        assertThat(errors.get("offers")).contains("offers down");
+    }
+
+    @Test
+    void failedRequiredRequestsGoToTheErrorNodeAndKeepTheOtherResponses() throws Exception {
+        answer("https://crm/profile", Mono.delay(Duration.ofMillis(100)).then(Mono.error(new IllegalStateException("crm down"))));
+        answer("https://billing/balance", Mono.just(Map.of("balance", 10)));
+        answer("https://usage/today", Mono.never());
+        Map<String, Object> context = new HashMap<>();
+
+        String next = handler.gather(node(
+                request("profile", "https://crm/profile", false),
+                request("balance", "https://billing/balance", false),
+                request("usage", "https://usage/today", false)), context, session).block(TIMEOUT);
+
+        assertThat(next).isEqualTo("failed");
+        assertThat(lastResponse(context)).containsOnlyKeys("balance");
+        @SuppressWarnings("unchecked")
+        Map<String, String> errors = (Map<String, String>) context.get("dataErrors");
+        // Failures are listed in request order too; the request that never answered hit the deadline
+        assertThat(new ArrayList<>(errors.keySet())).containsExactly("profile", "usage");
+        assertThat(errors.get("usage")).contains("Timeout");
+    }
+
+    @Test
+    void emptyResponseCountsAsSuccessAndUnnamedRequestsGetTheirIndex() throws Exception {
+        answer("https://crm/profile", Mono.empty());
+        answer("https://billing/balance", Mono.just(Map.of("balance", 10)));
+        Map<String, Object> context = new HashMap<>();
+        context.put("dataErrors", Map.of("old", "stale error"));
+
+        DataRequest unnamed = request(null, "https://billing/balance", false);
+        String next = handler.gather(node(request("profile", "https://crm/profile", false), unnamed),
+                context, session).block(TIMEOUT);
+
+        assertThat(next).isEqualTo("ok");
+        assertThat(lastResponse(context).keySet()).containsExactly("profile", "response1");
+        assertThat(context).doesNotContainKey("dataErrors");
+    }
+}
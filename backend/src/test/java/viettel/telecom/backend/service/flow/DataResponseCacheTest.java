@@ -0,0 +1,242 @@
+package viettel.telecom.backend.service.flow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.params.SetParams;
+import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DataResponseCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final String URL = "https://crm/api/customers/lookup";
+
+    private final MovingClock clock = new MovingClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JedisPooled jedis = mock(JedisPooled.class);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /**
+     * Each call answers {"version": n}, n counting the calls made.
+     */
+    private final Supplier<Mono<Map<String, Object>>> call =
+            () -> Mono.fromCallable(() -> Map.of("version", calls.incrementAndGet()));
+
+    private DataResponseCache cache(boolean redisEnabled) {
+        return new DataResponseCache(jedis, meterRegistry, 100, redisEnabled, clock);
+    }
+
+    private static FlowNode node(Long ttlSeconds, Long staleSeconds) {
+        Flow.Node.NodeData data = new Flow.Node.NodeData();
+        data.setCacheTtlSeconds(ttlSeconds);
+        data.setCacheStaleSeconds(staleSeconds);
+        return new FlowNode("lookup", "dataNode", data, null);
+    }
+
+    private static Map<String, Object> post(DataResponseCache cache, FlowNode node, Map<String, Object> body,
+                                            Supplier<Mono<Map<String, Object>>> call) {
+        return cache.post(node, URL, body, "token-a", null, call).block(TIMEOUT);
+    }
+
+    private Map<String, Object> post(DataResponseCache cache, FlowNode node) {
+        return post(cache, node, Map.of("msisdn", "0901"), call);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.counter("flow.data.cache.requests", "node", "lookup", "result", result).count();
+    }
+
+    @Test
+    void callsThroughWithoutTtl() {
+        DataResponseCache cache = cache(false);
+
+        post(cache, node(null, null));
+        post(cache, node(0L, 60L));
+
+        assertThat(calls).hasValue(2);
+        assertThat(requests("miss")).isZero();
+    }
+
+    @Test
+    void servesFreshEntryUntilTheTtlEnds() {
+        DataResponseCache cache = cache(false);
+        FlowNode node = node(10L, 0L);
+
+        assertThat(post(cache, node)).containsEntry("version", 1);
+        clock.advance(Duration.ofSeconds(9));
+        assertThat(post(cache, node)).containsEntry("version", 1);
+        clock.advance(Duration.ofSeconds(2));
+        assertThat(post(cache, node)).containsEntry("version", 2);
+
+        assertThat(calls).hasValue(2);
+        assertThat(requests("miss")).isEqualTo(2);
+        assertThat(requests("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void keyCoversBodyTenantAndProjectionButNotMapOrder() {
+        DataResponseCache cache = cache(false);
+        FlowNode node = node(10L, 0L);
+        ResponseProjection projection = ResponseProjection.compile(Map.of("tier", "/tier"));
+
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("b", 2);
+        reordered.put("a", 1);
+
+        cache.post(node, URL, Map.of("a", 1, "b", 2), "token-a", null, call).block(TIMEOUT);
+        cache.post(node, URL, reordered, "token-a", null, call).block(TIMEOUT);
+        assertThat(calls).hasValue(1);
+
+        cache.post(node, URL, Map.of("a", 1, "b", 3), "token-a", null, call).block(TIMEOUT);
+        cache.post(node, URL, Map.of("a", 1, "b", 2), "token-b", null, call).block(TIMEOUT);
+        cache.post(node, URL, Map.of("a", 1, "b", 2), "token-a", projection, call).block(TIMEOUT);
+        cache.post(node, URL + "?v=2", Map.of("a", 1, "b", 2), "token-a", null, call).block(TIMEOUT);
+        assertThat(calls).hasValue(5);
+    }
+
+    @Test
+    void servesStaleEntryWhileOneBackgroundCallRefreshesIt() {
+        DataResponseCache cache = cache(false);
+        FlowNode node = node(10L, 30L);
+        post(cache, node);
+        clock.advance(Duration.ofSeconds(15));
+
+        Sinks.One<Map<String, Object>> refresh = Sinks.one();
+        AtomicInteger refreshCalls = new AtomicInteger();
+        Supplier<Mono<Map<String, Object>>> slowRefresh = () -> {
+            refreshCalls.incrementAndGet();
+            return refresh.asMono();
+        };
+        for (int i = 0; i < 3; i++) {
+            assertThat(post(cache, node, Map.of("msisdn", "0901"), slowRefresh)).containsEntry("version", 1);
+        }
+        assertThat(refreshCalls).hasValue(1);
+        assertThat(requests("stale")).isEqualTo(3);
+
+        refresh.tryEmitValue(Map.of("version", 2));
+        assertThat(post(cache, node)).containsEntry("version", 2);
+        assertThat(requests("hit")).isEqualTo(1);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void failedRefreshKeepsServingStaleEntryAndIsRetried() {
+        DataResponseCache cache = cache(false);
+        FlowNode node = node(10L, 30L);
+        post(cache, node);
+        clock.advance(Duration.ofSeconds(15));
+
+        AtomicInteger failures = new AtomicInteger();
+        Supplier<Mono<Map<String, Object>>> failing = () -> {
+            failures.incrementAndGet();
+            return Mono.error(new IllegalStateException("CRM down"));
+        };
+        assertThat(post(cache, node, Map.of("msisdn", "0901"), failing)).containsEntry("version", 1);
+        assertThat(post(cache, node, Map.of("msisdn", "0901"), failing)).containsEntry("version", 1);
+
+        assertThat(failures).hasValue(2);
+    }
+
+    @Test
+    void callsAgainOnceTheStaleWindowIsOver() {
+        DataResponseCache cache = cache(false);
+        FlowNode node = node(10L, 30L);
+        post(cache, node);
+        clock.advance(Duration.ofSeconds(41));
+
+        assertThat(post(cache, node)).containsEntry("version", 2);
+        assertThat(requests("stale")).isZero();
+        assertThat(requests("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void writesEntriesToRedisForTheirWholeWindow() {
+        DataResponseCache cache = cache(true);
+
+        post(cache, node(10L, 30L));
+
+        verify(jedis, timeout(2000)).set(startsWith("flow:data:cache:"), anyString(), any(SetParams.class));
+    }
+
+    @Test
+    void anotherReplicaReadsTheEntryFromRedis() throws Exception {
+        String json = new ObjectMapper().writeValueAsString(new DataResponseCache.CachedResponse(
+                Map.of("version", 7), clock.millis() + 10_000, clock.millis() + 40_000));
+        when(jedis.get(startsWith("flow:data:cache:"))).thenReturn(json);
+
+        assertThat(post(cache(true), node(10L, 30L))).containsEntry("version", 7);
+        assertThat(calls).hasValue(0);
+        assertThat(requests("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresRedisEntriesPastTheirStaleWindowAndRedisErrors() throws Exception {
+        String expired = new ObjectMapper().writeValueAsString(new DataResponseCache.CachedResponse(
+                Map.of("version", 7), clock.millis() - 40_000, clock.millis() - 10_000));
+        when(jedis.get(startsWith("flow:data:cache:"))).thenReturn(expired)
+                .thenThrow(new IllegalStateException("Redis down"));
+
+        assertThat(post(cache(true), node(10L, 30L))).containsEntry("version", 1);
+        assertThat(post(cache(true), node(10L, 30L))).containsEntry("version", 2);
+        assertThat(requests("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void redisTierIsNotUsedWhenDisabled() {
+        post(cache(false), node(10L, 30L));
+        post(cache(false), node(10L, 30L));
+
+        assertThat(calls).hasValue(2);
+        verify(jedis, never()).get(anyString());
+    }
+
+    /**
+     * A clock that only moves when told to.
+     */
+    private static final class MovingClock extends Clock {
+        private volatile Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package viettel.telecom.backend.service.flow;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.service.flow.runtime.FlowCompiler;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlowDefinitionCacheTest {
+
+    private final AtomicReference<String> storedVersion = new AtomicReference<>("v1");
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicInteger versionChecks = new AtomicInteger();
+
+    private Flow load(String flowId) {
+        loads.incrementAndGet();
+        Flow flow = new Flow();
+        flow.setId(flowId);
+        flow.setUpdatedAt(storedVersion.get());
+        return flow;
+    }
+
+    private String version(String flowId) throws IOException {
+        versionChecks.incrementAndGet();
+        return storedVersion.get();
+    }
+
+    private static FlowDefinitionCache cache(long revalidateAfterMillis) {
+        return new FlowDefinitionCache(new FlowCompiler(), new SimpleMeterRegistry(), 1 << 20, 300,
+                revalidateAfterMillis);
+    }
+
+    @Test
+    void servesCachedFlowWithoutVersionCheckWithinRevalidationWindow() throws IOException {
+        FlowDefinitionCache cache = cache(60_000);
+
+        cache.get("f", this::load, this::version);
+        storedVersion.set("v2");
+        Flow flow = cache.get("f", this::load, this::version);
+
+        assertThat(flow.getUpdatedAt()).isEqualTo("v1");
+        assertThat(loads).hasValue(1);
+        assertThat(versionChecks).hasValue(0);
+    }
+
+    @Test
+    void reloadsFlowChangedElsewhere() throws IOException {
+        FlowDefinitionCache cache = cache(0);
+
+        cache.get("f", this::load, this::version);
+        assertThat(cache.get("f", this::load, this::version).getUpdatedAt()).isEqualTo("v1");
+        assertThat(loads).hasValue(1);
+
+        storedVersion.set("v2");
+        assertThat(cache.get("f", this::load, this::version).getUpdatedAt()).isEqualTo("v2");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void keepsServingCachedFlowWhenVersionCheckFails() throws IOException {
+        FlowDefinitionCache cache = cache(0);
+
+        cache.get("f", this::load, this::version);
+        Flow flow = cache.get("f", this::load, id -> {
+            throw new IOException("store unavailable");
+        });
+
+        assertThat(flow.getUpdatedAt()).isEqualTo("v1");
+        assertThat(loads).hasValue(1);
+    }
+}
@@ -0,0 +1,92 @@
+package viettel.telecom.backend.service.flow;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import viettel.telecom.backend.entity.flow.Flow;
+import viettel.telecom.backend.exception.FlowJoinException;
+import viettel.telecom.backend.service.flow.runtime.FlowNode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ForkJoinHandlerTest {
+
+    private final ForkJoinHandler handler = new ForkJoinHandler(1, 1, 5_000);
+    private final FlowNode fork = new FlowNode("fork", "forkNode", null, null);
+
+    @AfterEach
+    void shutdown() {
+        handler.shutdown();
+    }
+
+    private static FlowNode join(String policy, long timeoutMs) {
+        Flow.Node.NodeData data = new Flow.Node.NodeData();
+        data.setJoinPolicy(policy);
+        data.setJoinTimeoutMs(timeoutMs);
+        return new FlowNode("join", "joinNode", data, null);
+    }
+
+    private static List<FlowNode> branches(int count) {
+        return java.util.stream.IntStream.range(0, count)
+                .mapToObj(i -> new FlowNode("b" + i, "dataNode", null, null))
+                .toList();
+    }
+
+    @Test
+    void branchesNeverRunOnTheForkingThread() {
+        Thread forkingThread = Thread.currentThread();
+        Map<String, Object> context = new HashMap<>();
+
+        // One thread and one queue slot: the third branch is rejected instead of running inline
+        List<String> merged = handler.forkAndJoin(fork, join("quorum", 5_000), branches(3), context,
+                (branch, branchContext) -> {
+                    assertThat(Thread.currentThread()).isNotSameAs(forkingThread);
+                    sleep(50);
+                    branchContext.put(branch.getId(), true);
+                });
+
+        assertThat(merged).containsExactly("b0", "b1");
+        assertThat(context).containsKeys("b0", "b1").doesNotContainKey("b2");
+    }
+
+    @Test
+    void rejectedBranchFailsAnAllJoin() {
+        assertThatThrownBy(() -> handler.forkAndJoin(fork, join("all", 5_000), branches(3), new HashMap<>(),
+                (branch, branchContext) -> sleep(50)))
+                .isInstanceOf(FlowJoinException.class)
+                .hasMessageContaining("saturated");
+    }
+
+    @Test
+    void timeoutAppliesToEveryBranch() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> handler.forkAndJoin(fork, join("all", 100), branches(1), new HashMap<>(),
+                (branch, branchContext) -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }))
+                .isInstanceOf(FlowJoinException.class)
+                .hasMessageContaining("timed out");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2_000);
+        release.countDown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
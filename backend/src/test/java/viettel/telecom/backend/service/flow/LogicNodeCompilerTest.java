@@ -0,0 +1,115 @@
+package viettel.telecom.backend.service.flow;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import viettel.telecom.backend.entity.flow.LogicCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogicNodeCompilerTest {
+
+    private final LogicNodeCompiler compiler = new LogicNodeCompiler();
+    private final SpelConditionEvaluator spel = new SpelConditionEvaluator(new SimpleMeterRegistry(), 100);
+    private final List<String> evaluated = new ArrayList<>();
+    private final ConditionEvaluator recording = (expression, context) -> {
+        evaluated.add(expression);
+        return spel.evaluate(expression, context);
+    };
+
+    private static LogicCase logicCase(String expression, String nextNode) {
+        LogicCase logicCase = new LogicCase();
+        logicCase.setExpression(expression);
+        logicCase.setNextNode(nextNode);
+        return logicCase;
+    }
+
+    private static Map<String, Object> context(String key, Object value) {
+        Map<String, Object> context = new HashMap<>();
+        context.put(key, value);
+        return context;
+    }
+
+    @Test
+    void simpleCasesAreLookedUpWithoutSpel() {
+        CompiledLogic logic = compiler.compile("n", List.of(
+                logicCase("userResponse == 'Yes'", "yes"),
+                logicCase("['userResponse'] == 'No'", "no"),
+                logicCase("'Maybe' == #root['userResponse']", "maybe"),
+                logicCase("userResponse == 'A' or userResponse == 'B'", "ab"),
+                logicCase("{'C', 'D'}.contains(userResponse)", "cd")));
+
+        assertThat(logic.match(context("userResponse", "No"), recording).getNextNode()).isEqualTo("no");
+        assertThat(logic.match(context("userResponse", "Maybe"), recording).getNextNode()).isEqualTo("maybe");
+        assertThat(logic.match(context("userResponse", "B"), recording).getNextNode()).isEqualTo("ab");
+        assertThat(logic.match(context("userResponse", "D"), recording).getNextNode()).isEqualTo("cd");
+        assertThat(logic.match(context("userResponse", "Other"), recording)).isNull();
+        assertThat(evaluated).isEmpty();
+    }
+
+    @Test
+    void otherCasesFallBackToSpelInCaseOrder() {
+        CompiledLogic logic = compiler.compile("n", List.of(
+                logicCase("userResponse == 'Yes'", "yes"),
+                logicCase("userResponse.length() > 2", "long"),
+                logicCase("userResponse == 'Yes!'", "unreachable"),
+                logicCase("", "blank")));
+
+        assertThat(logic.match(context("userResponse", "Yes"), recording).getNextNode()).isEqualTo("yes");
+        assertThat(evaluated).isEmpty();
+
+        // The SpEL case comes first, so it wins over the later table entry
+        assertThat(logic.match(context("userResponse", "Yes!"), recording).getNextNode()).isEqualTo("long");
+        assertThat(evaluated).containsExactly("userResponse.length() > 2");
+    }
+
+    @Test
+    void earlierCaseWinsForTheSameValue() {
+        CompiledLogic logic = compiler.compile("n", List.of(
+                logicCase("userResponse == 'Yes'", "first"),
+                logicCase("userResponse == 'Yes' or userResponse == 'Y'", "second")));
+
+        assertThat(logic.match(context("userResponse", "Yes"), recording).getNextNode()).isEqualTo("first");
+        assertThat(logic.match(context("userResponse", "Y"), recording).getNextNode()).isEqualTo("second");
+    }
+
+    @Test
+    void tableOnlyMatchesStringsLikeSpel() {
+        CompiledLogic logic = compiler.compile("n", List.of(logicCase("count == '1'", "one")));
+
+        assertThat(spel.evaluate("count == '1'", context("count", 1))).isFalse();
+        assertThat(logic.match(context("count", 1), recording)).isNull();
+        assertThat(logic.match(context("count", null), recording)).isNull();
+        assertThat(logic.match(context("count", "1"), recording).getNextNode()).isEqualTo("one");
+    }
+
+    @Test
+    void matchesSequentialEvaluation() {
+        List<LogicCase> cases = List.of(
+                logicCase("userResponse == 'A'", "a"),
+                logicCase("userResponse == 'B' or userResponse == 'A'", "b"),
+                logicCase("choice == 'X'", "x"),
+                logicCase("choice != null and choice.startsWith('Y')", "y"),
+                logicCase("{'C', 'X'}.contains(choice)", "c"),
+                logicCase("userResponse == 'C'", "c2"),
+                logicCase("invalid ==", "never"));
+        CompiledLogic logic = compiler.compile("n", cases);
+
+        for (Object userResponse : new Object[]{"A", "B", "C", "D", null, 7}) {
+            for (Object choice : new Object[]{"X", "Y1", "C", "Z", null}) {
+                Map<String, Object> context = new HashMap<>();
+                context.put("userResponse", userResponse);
+                context.put("choice", choice);
+
+                LogicCase expected = cases.stream()
+                        .filter(c -> spel.evaluate(c.getExpression(), context))
+                        .findFirst().orElse(null);
+                assertThat(logic.match(context, spel)).as(context.toString()).isSameAs(expected);
+            }
+        }
+    }
+}
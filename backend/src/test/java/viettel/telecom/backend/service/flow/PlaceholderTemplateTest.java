@@ -0,0 +1,73 @@
+package viettel.telecom.backend.service.flow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlaceholderTemplateTest {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\[([^\\]]+)]");
+
+    private static final Map<String, Object> CONTEXT = Map.of(
+            "a", "A",
+            "b", 42,
+            "[a", "nested",
+            "ab", "$1\\");
+
+    /**
+     * The regex replacement DataHandler used before templates were precompiled.
+     */
+    private static String regexResolve(String raw, Map<String, Object> context) {
+        Matcher matcher = PLACEHOLDER.matcher(raw);
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            Object replacement = context.getOrDefault(matcher.group(1), "");
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement.toString()));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    @Test
+    void rendersPlaceholders() {
+        PlaceholderTemplate template = PlaceholderTemplate.parse("https://api/[a]/items?n=[b]&x=[missing]");
+
+        assertThat(template.hasPlaceholders()).isTrue();
+        assertThat(template.render(CONTEXT)).isEqualTo("https://api/A/items?n=42&x=");
+    }
+
+    @Test
+    void textWithoutPlaceholdersIsKept() {
+        for (String raw : new String[]{"", "plain", "[]", "a]b", "[unclosed", "]["}) {
+            PlaceholderTemplate template = PlaceholderTemplate.parse(raw);
+            assertThat(template.hasPlaceholders()).as(raw).isFalse();
+            assertThat(template.render(CONTEXT)).isEqualTo(raw);
+        }
+    }
+
+    @Test
+    void matchesTheRegexOnEdgeCases() {
+        for (String raw : new String[]{"[[a]", "[]a]", "[a][b]", "[]][a]", "x[ab]y", "[a]]", "[[]]", "[a[b]c]"}) {
+            assertThat(PlaceholderTemplate.parse(raw).render(CONTEXT)).as(raw).isEqualTo(regexResolve(raw, CONTEXT));
+        }
+    }
+
+    @Test
+    void matchesTheRegexOnRandomInput() {
+        Random random = new Random(42);
+        char[] alphabet = {'[', ']', 'a', 'b', 'x', '/'};
+        for (int n = 0; n < 20_000; n++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String raw = new String(chars);
+            assertThat(PlaceholderTemplate.parse(raw).render(CONTEXT)).as(raw).isEqualTo(regexResolve(raw, CONTEXT));
+        }
+    }
+}
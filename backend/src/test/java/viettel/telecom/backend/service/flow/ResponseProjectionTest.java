@@ -0,0 +1,133 @@
+package viettel.telecom.backend.service.flow;
+
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class ResponseProjectionTest {
+
+    private static final String CUSTOMER = """
+            {"id": 7,
+             "customer": {"name": "An", "tier": "gold", "tags": ["vip", "new"], "manager": null},
+             "items": [{"sku": "A1", "qty": 2}, {"sku": "B2", "qty": 1}],
+             "a/b": "slash", "m~n": "tilde",
+             "trailer": {"big": [1, 2, 3]}}
+            """;
+
+    private static Map<String, Object> project(Map<String, String> fields, String json) {
+        return ResponseProjection.compile(fields).project(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> fields(String... outputsAndPointers) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < outputsAndPointers.length; i += 2) {
+            fields.put(outputsAndPointers[i], outputsAndPointers[i + 1]);
+        }
+        return fields;
+    }
+
+    @Test
+    void selectsNestedObjectFieldsAndArrayIndexes() {
+        Map<String, Object> result = project(fields(
+                "tier", "/customer/tier",
+                "firstSku", "/items/0/sku",
+                "secondQty", "/items/1/qty",
+                "secondTag", "/customer/tags/1"), CUSTOMER);
+
+        assertThat(result).containsOnly(
+                entry("tier", "gold"), entry("firstSku", "A1"), entry("secondQty", 1), entry("secondTag", "new"));
+    }
+
+    @Test
+    void materializesSelectedObjectsAndArrays() {
+        Map<String, Object> result = project(fields("customer", "/customer", "items", "/items"), CUSTOMER);
+
+        assertThat(result.get("customer")).asInstanceOf(InstanceOfAssertFactories.MAP)
+                .containsEntry("tier", "gold").containsKey("manager");
+        assertThat((List<?>) result.get("items")).hasSize(2);
+    }
+
+    @Test
+    void selectsChildrenOfASelectedParent() {
+        Map<String, Object> result = project(fields(
+                "customer", "/customer",
+                "tier", "/customer/tier",
+                "firstTag", "/customer/tags/0",
+                "manager", "/customer/manager",
+                "missing", "/customer/phone",
+                "outOfRange", "/customer/tags/5",
+                "notAnIndex", "/customer/tags/first"), CUSTOMER);
+
+        assertThat(result).containsKeys("customer", "manager")
+                .containsEntry("tier", "gold")
+                .containsEntry("firstTag", "vip")
+                .doesNotContainKeys("missing", "outOfRange", "notAnIndex");
+        assertThat(result.get("manager")).isNull();
+    }
+
+    @Test
+    void presentNullIsSelectedMissingValueIsLeftOut() {
+        Map<String, Object> result = project(fields(
+                "manager", "/customer/manager",
+                "phone", "/customer/phone",
+                "thirdItem", "/items/2",
+                "deeper", "/id/value",
+                "root", "/nothing/here"), CUSTOMER);
+
+        assertThat(result).containsOnlyKeys("manager");
+        assertThat(result.get("manager")).isNull();
+    }
+
+    @Test
+    void unescapesPointerSegments() {
+        Map<String, Object> result = project(fields("slash", "/a~1b", "tilde", "/m~0n"), CUSTOMER);
+
+        assertThat(result).containsOnly(entry("slash", "slash"), entry("tilde", "tilde"));
+    }
+
+    @Test
+    void selectsFromTopLevelArrays() {
+        Map<String, Object> result = project(fields("first", "/0/name", "all", "/1"),
+                "[{\"name\": \"x\"}, {\"name\": \"y\"}]");
+
+        assertThat(result).containsEntry("first", "x").containsEntry("all", Map.of("name", "y"));
+    }
+
+    @Test
+    void stopsReadingOnceEveryPointerIsFound() {
+        String truncated = "{\"id\": 7, \"customer\": {\"tier\": \"gold\"}, \"trailer\": {\"big\": [1, 2,";
+
+        assertThat(project(fields("tier", "/customer/tier", "id", "/id"), truncated))
+                .containsOnly(entry("tier", "gold"), entry("id", 7));
+    }
+
+    @Test
+    void malformedJsonThrowsUncheckedIoException() {
+        assertThatThrownBy(() -> project(fields("tier", "/customer/tier"), "{\"customer\": {\"name\": }"))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasMessageContaining("Cannot parse data node response");
+        assertThatThrownBy(() -> project(fields("tier", "/customer/tier"), "{\"id\": 7, \"customer\": {"))
+                .isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    void emptyInputsAndInvalidPointers() {
+        ResponseProjection projection = ResponseProjection.compile(fields("tier", "/customer/tier"));
+
+        assertThat(projection.project(null)).isEmpty();
+        assertThat(projection.project(new byte[0])).isEmpty();
+        assertThat(ResponseProjection.compile(Map.of()).project(CUSTOMER.getBytes(StandardCharsets.UTF_8))).isEmpty();
+        assertThat(projection.key()).isEqualTo("tier=/customer/tier");
+        assertThatThrownBy(() -> ResponseProjection.compile(fields("tier", "customer/tier")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,61 @@
+package viettel.telecom.backend.service.flow;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evaluations per second of typical logic-node cases: parsing with a new context per call (as before the
+ * expression cache) versus {@link SpelConditionEvaluator}. Not a JUnit test; run it from the IDE or with
+ *   java -cp target/classes:target/test-classes:... viettel.telecom.backend.service.flow.SpelConditionEvaluatorBenchmark
+ */
+public class SpelConditionEvaluatorBenchmark {
+
+    private static final String[] EXPRESSIONS = {
+            "['userResponse'] == 'Yes'",
+            "['count'] > 2 and ['userResponse'] != 'No'"
+    };
+    private static final int ITERATIONS = 2_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Map<String, Object> context = new HashMap<>(Map.of("userResponse", "Yes", "count", 3));
+
+        SpelExpressionParser parser = new SpelExpressionParser();
+        Evaluation uncached = (expression, root) -> Boolean.TRUE.equals(
+                parser.parseExpression(expression).getValue(new StandardEvaluationContext(root), Boolean.class));
+        SpelConditionEvaluator evaluator = new SpelConditionEvaluator(new SimpleMeterRegistry(), 10_000);
+
+        // The uncached variant is much slower, so it gets fewer iterations
+        run("parse per call", uncached, context, ITERATIONS / 20);
+        run("SpelConditionEvaluator", evaluator::evaluate, context, ITERATIONS);
+    }
+
+    private static void run(String name, Evaluation evaluation, Map<String, Object> context, int iterations) {
+        int matches = 0;
+        double best = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                if (evaluation.evaluate(EXPRESSIONS[i & 1], context)) {
+                    matches++;
+                }
+            }
+            double perSecond = iterations / ((System.nanoTime() - start) / 1e9);
+            // Round 0 is warm-up (class loading, JIT, SpEL compilation)
+            if (round > 0) {
+                best = Math.max(best, perSecond);
+            }
+        }
+        System.out.printf("%-24s %,14.0f evaluations/s (best of %d rounds, %d matches)%n",
+                name, best, ROUNDS - 1, matches);
+    }
+
+    @FunctionalInterface
+    private interface Evaluation {
+        boolean evaluate(String expression, Map<String, Object> context);
+    }
+}
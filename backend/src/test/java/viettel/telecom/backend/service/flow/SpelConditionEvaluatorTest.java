@@ -0,0 +1,105 @@
+package viettel.telecom.backend.service.flow;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpelConditionEvaluatorTest {
+
+    // SpEL's MIXED mode compiles an expression after 100 interpreted evaluations
+    private static final int WARM_UP = 500;
+
+    private final SpelConditionEvaluator evaluator = new SpelConditionEvaluator(new SimpleMeterRegistry(), 100);
+
+    private boolean[] coldAndWarm(String expression, Map<String, Object> missing, Map<String, Object> present) {
+        boolean cold = evaluator.evaluate(expression, missing);
+        for (int i = 0; i < WARM_UP; i++) {
+            evaluator.evaluate(expression, present);
+        }
+        boolean warm = evaluator.evaluate(expression, missing);
+        return new boolean[]{cold, warm};
+    }
+
+    @Test
+    void missingKeyGivesTheSameResultBeforeAndAfterCompilation() {
+        Map<String, Object> missing = new HashMap<>();
+        Map<String, Object> present = new HashMap<>(Map.of("userResponse", "No"));
+
+        for (String expression : new String[]{
+                "userResponse != 'Yes'",
+                "userResponse == 'Yes'",
+                "userResponse == null",
+                "['userResponse'] != 'Yes'"}) {
+            boolean[] results = coldAndWarm(expression, missing, present);
+            assertThat(results[1]).as(expression).isEqualTo(results[0]);
+        }
+    }
+
+    @Test
+    void missingKeyReadsAsNullLikeTheIndexer() {
+        Map<String, Object> missing = new HashMap<>();
+
+        assertThat(evaluator.evaluate("userResponse != 'Yes'", missing))
+                .isEqualTo(evaluator.evaluate("['userResponse'] != 'Yes'", missing))
+                .isTrue();
+        assertThat(evaluator.evaluate("userResponse == 'Yes'", missing)).isFalse();
+        assertThat(evaluator.evaluate("userResponse == null", missing)).isTrue();
+    }
+
+    @Test
+    void presentKeysAndInvalidExpressions() {
+        Map<String, Object> context = new HashMap<>(Map.of("userResponse", "Yes", "count", 3));
+
+        assertThat(evaluator.evaluate("userResponse == 'Yes'", context)).isTrue();
+        assertThat(evaluator.evaluate("count > 2 and userResponse == 'Yes'", context)).isTrue();
+        assertThat(evaluator.evaluate("{'A', 'Yes'}.contains(userResponse)", context)).isTrue();
+        assertThat(evaluator.evaluate("userResponse ==", context)).isFalse();
+        assertThat(evaluator.evaluate("count", context)).isFalse();
+    }
+
+    @Test
+    void variablesAssignedByOneEvaluationAreNotSeenByAnother() {
+        Map<String, Object> first = new HashMap<>(Map.of("userResponse", "A"));
+        Map<String, Object> second = new HashMap<>(Map.of("userResponse", "B"));
+
+        assertThat(evaluator.evaluate("(#answer = userResponse) == 'A'", first)).isTrue();
+        assertThat(evaluator.evaluate("#answer == null", second)).isTrue();
+        assertThat(evaluator.evaluate("(#answer = userResponse) == 'B'", second)).isTrue();
+        assertThat(evaluator.evaluate("#answer == 'B'", first)).isFalse();
+    }
+
+    @Test
+    void concurrentEvaluationsKeepTheirOwnVariables() throws Exception {
+        String expression = "(#answer = userResponse) != null and #answer == userResponse";
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> mismatches = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                Map<String, Object> context = new HashMap<>(Map.of("userResponse", "thread-" + t));
+                mismatches.add(executor.submit(() -> {
+                    int count = 0;
+                    for (int i = 0; i < 20_000; i++) {
+                        if (!evaluator.evaluate(expression, context)) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            for (Future<Integer> future : mismatches) {
+                assertThat(future.get()).isZero();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package viettel.telecom.backend.service.flow.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BranchContextTest {
+
+    @Test
+    void nestedValuesModifiedInPlaceStayInTheBranch() {
+        Map<String, Object> user = new HashMap<>(Map.of("name", "An"));
+        Map<String, Object> snapshot = new HashMap<>(Map.of("user", user, "items", new ArrayList<>(List.of("a"))));
+
+        BranchContext first = new BranchContext(snapshot);
+        BranchContext second = new BranchContext(snapshot);
+        ((Map<String, Object>) first.get("user")).put("name", "Binh");
+        ((List<Object>) first.get("items")).add("b");
+
+        assertThat(second.get("user")).isEqualTo(Map.of("name", "An"));
+        assertThat(second.get("items")).isEqualTo(List.of("a"));
+        assertThat(user).containsEntry("name", "An");
+        assertThat(first.getChanges()).containsOnlyKeys("user", "items");
+    }
+
+    @Test
+    void nestedValuesOnlyReadAreNotChanges() {
+        Map<String, Object> context = new HashMap<>(Map.of("user", Map.of("name", "An"), "count", 1));
+        BranchContext branch = new BranchContext(new HashMap<>(context));
+
+        branch.get("user");
+        branch.put("count", 2);
+        branch.applyTo(context);
+
+        assertThat(branch.getChanges()).containsOnlyKeys("count");
+        assertThat(context).containsEntry("count", 2).containsEntry("user", Map.of("name", "An"));
+    }
+
+    @Test
+    void writesAndRemovalsAreAppliedToTheTarget() {
+        Map<String, Object> context = new HashMap<>(Map.of("a", 1, "b", 2));
+        BranchContext branch = new BranchContext(new HashMap<>(context));
+
+        branch.remove("a");
+        branch.put("c", 3);
+
+        assertThat(branch.containsKey("a")).isFalse();
+        assertThat(branch).containsOnlyKeys("b", "c");
+        branch.applyTo(context);
+        assertThat(context).isEqualTo(Map.of("b", 2, "c", 3));
+    }
+}
@@ -0,0 +1,61 @@
+package viettel.telecom.backend.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HashingTextEmbedderTest {
+
+    private final HashingTextEmbedder embedder = new HashingTextEmbedder(384);
+
+    private double cosine(String a, String b) {
+        float[] x = embedder.embed(a);
+        float[] y = embedder.embed(b);
+        double dot = 0;
+        for (int i = 0; i < x.length; i++) {
+            dot += x[i] * y[i];
+        }
+        return dot;
+    }
+
+    @Test
+    void vectorsAreDeterministicAndNormalized() {
+        float[] vector = embedder.embed("How do I reset my password?");
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+
+        assertThat(vector).hasSize(384).containsExactly(embedder.embed("How do I reset my password?"));
+        assertThat(Math.sqrt(norm)).isCloseTo(1.0, within(1e-5));
+        assertThat(embedder.id()).isEqualTo("hashing_384");
+        assertThat(embedder.dimensions()).isEqualTo(384);
+    }
+
+    @Test
+    void paraphrasesAndTyposStayCloseUnrelatedQuestionsDoNot() {
+        double paraphrase = cosine("What is the price of the Gold plan?", "what's the price of the gold plan");
+        double typo = cosine("How do I reset my password", "How do I reset my pasword");
+        double unrelated = cosine("How do I reset my password", "Which data packages are available for students");
+
+        assertThat(paraphrase).isGreaterThan(0.85);
+        assertThat(typo).isGreaterThan(0.8);
+        assertThat(unrelated).isLessThan(0.2);
+        assertThat(cosine("Reset my password", "reset MY password!")).isCloseTo(1.0, within(1e-5));
+    }
+
+    @Test
+    void accentsAreFolded() {
+        assertThat(cosine("gi\u00e1 c\u01b0\u1edbc g\u00f3i \u0111\u1eb7c bi\u1ec7t", "gia cuoc goi dac biet"))
+                .isCloseTo(1.0, within(1e-5));
+    }
+
+    @Test
+    void textWithoutWordsGivesTheZeroVector() {
+        assertThat(SemanticLlmCache.isZero(embedder.embed(null))).isTrue();
+        assertThat(SemanticLlmCache.isZero(embedder.embed(""))).isTrue();
+        assertThat(SemanticLlmCache.isZero(embedder.embed(" ?! ..."))).isTrue();
+        assertThat(SemanticLlmCache.isZero(embedder.embed("ok"))).isFalse();
+    }
+}
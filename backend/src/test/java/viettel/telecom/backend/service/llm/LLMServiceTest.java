@@ -0,0 +1,96 @@
+package viettel.telecom.backend.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LLMServiceTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final Map<String, Object> CONFIG = Map.of("templateId", "pricing", "semanticCacheThreshold", 0.9);
+    private static final Map<String, Object> CACHED = Map.of("content", "Gold costs 100k a month");
+
+    private final LlmRouter router = mock(LlmRouter.class);
+    private final LlmResponseCache responseCache = mock(LlmResponseCache.class);
+    private final SemanticLlmCache semanticCache = mock(SemanticLlmCache.class);
+    private final LLMService service = new LLMService(router, responseCache, semanticCache,
+            new LlmRequestCoalescer(new SimpleMeterRegistry(), true));
+
+    private final SemanticLlmCache.Lookup miss = new SemanticLlmCache.Lookup("scope", "pricing", "price?", new float[]{1}, null);
+    private final SemanticLlmCache.Lookup hit = new SemanticLlmCache.Lookup("scope", "pricing", "price?", new float[]{1}, CACHED);
+
+    @BeforeEach
+    void stubExactCache() {
+        when(responseCache.isCacheable(any())).thenReturn(false);
+        when(responseCache.key(anyString(), anyString(), anyString(), any()))
+                .thenAnswer(call -> call.getArgument(1) + "|" + call.getArgument(2));
+        when(semanticCache.isEligible(CONFIG)).thenReturn(true);
+    }
+
+    @Test
+    void asyncCallsServeSemanticHitsWithoutTheProvider() {
+        when(semanticCache.lookup(eq("system|"), eq("price?"), any())).thenReturn(hit);
+
+        assertThat(service.processRequestAsync("gpt-4o-mini", "system", "price?", CONFIG).block(TIMEOUT))
+                .isEqualTo(CACHED);
+        verify(router, never()).call(any(), any(), any());
+    }
+
+    @Test
+    void asyncCallsStoreProviderAnswersOnASemanticMiss() {
+        Map<String, Object> answer = Map.of("content", "fresh");
+        when(semanticCache.lookup(eq("system|"), eq("price?"), any())).thenReturn(miss);
+        when(router.call(eq("openai"), any(), any())).thenReturn(Mono.just(answer));
+
+        assertThat(service.processRequestAsync("gpt-4o-mini", "system", "price?", CONFIG).block(TIMEOUT))
+                .isEqualTo(answer);
+        verify(semanticCache).put(eq(miss), eq(answer), anyLong());
+    }
+
+    @Test
+    void streamsServeSemanticHitsAsOneDelta() {
+        when(semanticCache.lookup(eq("system|"), eq("price?"), any())).thenReturn(hit);
+
+        assertThat(service.streamRequest("gpt-4o-mini", "system", "price?", CONFIG).collectList().block(TIMEOUT))
+                .containsExactly("Gold costs 100k a month");
+        verify(router, never()).stream(any(), any(), any());
+    }
+
+    @Test
+    void streamsStoreTheCompleteAnswerOnASemanticMiss() {
+        when(semanticCache.lookup(eq("system|"), eq("price?"), any())).thenReturn(miss);
+        when(router.stream(eq("openai"), any(), any())).thenReturn(Flux.just("Gold ", "costs"));
+
+        assertThat(service.streamRequest("gpt-4o-mini", "system", "price?", CONFIG).collectList().block(TIMEOUT))
+                .containsExactly("Gold ", "costs");
+        verify(semanticCache).put(eq(miss), argThat(result -> "Gold costs".equals(result.get("content"))), anyLong());
+    }
+
+    @Test
+    void templatesWithoutThresholdSkipTheSemanticLookup() {
+        Map<String, Object> config = Map.of("templateId", "pricing");
+        when(router.call(eq("openai"), any(), any())).thenReturn(Mono.just(CACHED));
+        when(router.stream(eq("openai"), any(), any())).thenReturn(Flux.just("x"));
+
+        service.processRequestAsync("gpt-4o-mini", "system", "price?", config).block(TIMEOUT);
+        service.streamRequest("gpt-4o-mini", "system", "price?", config).blockLast(TIMEOUT);
+
+        verify(semanticCache, never()).lookup(any(), any(), any());
+    }
+}
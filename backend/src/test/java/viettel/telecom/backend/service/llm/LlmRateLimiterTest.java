@@ -0,0 +1,213 @@
+package viettel.telecom.backend.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import viettel.telecom.backend.exception.LlmRateLimitException;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmRateLimiterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("llm.rate-limit.max-wait-millis", "2000");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger sent = new AtomicInteger();
+
+    private final ExchangeFunction ok = request -> {
+        sent.incrementAndGet();
+        return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+    };
+
+    private static ClientRequest request(long tokens) {
+        return ClientRequest.create(HttpMethod.POST, URI.create("http://llm/v1/chat/completions"))
+                .attribute(LlmRateLimiter.MODEL_ATTRIBUTE, "gpt-4o-mini")
+                .attribute(LlmRateLimiter.TOKENS_ATTRIBUTE, tokens)
+                .build();
+    }
+
+    private Mono<ClientResponse> call(LlmRateLimiter limiter, long tokens, ExchangeFunction exchange) {
+        return limiter.filter("openai").filter(request(tokens), exchange);
+    }
+
+    private long elapsedMillis(Runnable call) {
+        long start = System.nanoTime();
+        call.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.counter("llm.rate_limit.rejected",
+                "provider", "openai", "model", "gpt-4o-mini", "reason", reason).count();
+    }
+
+    @Test
+    void parsesRetryAfterSeconds() {
+        assertThat(LlmRateLimiter.parseNanos("30")).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+        assertThat(LlmRateLimiter.parseNanos(" 1.5 ")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1500));
+        assertThat(LlmRateLimiter.parseNanos("0")).isZero();
+    }
+
+    @Test
+    void parsesResetDurations() {
+        assertThat(LlmRateLimiter.parseNanos("1s")).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(LlmRateLimiter.parseNanos("20ms")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(LlmRateLimiter.parseNanos("6m0s")).isEqualTo(TimeUnit.MINUTES.toNanos(6));
+        assertThat(LlmRateLimiter.parseNanos("1m30.5s")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(90_500));
+        assertThat(LlmRateLimiter.parseNanos("2h")).isEqualTo(TimeUnit.HOURS.toNanos(2));
+        assertThat(LlmRateLimiter.parseNanos("0.5s")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void rejectsMissingOrUnreadableDurations() {
+        assertThat(LlmRateLimiter.parseNanos(null)).isEqualTo(-1);
+        assertThat(LlmRateLimiter.parseNanos("")).isEqualTo(-1);
+        assertThat(LlmRateLimiter.parseNanos("  ")).isEqualTo(-1);
+        assertThat(LlmRateLimiter.parseNanos("soon")).isEqualTo(-1);
+    }
+
+    @Test
+    void passesCallsThroughWhenNoLimitIsConfigured() {
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+
+        for (int i = 0; i < 50; i++) {
+            call(limiter, 1_000_000, ok).block(TIMEOUT);
+        }
+
+        assertThat(sent).hasValue(50);
+    }
+
+    @Test
+    void failsCallsOnceTheRequestBucketIsDrainedAndTheWaitExpires() {
+        environment.withProperty("llm.rate-limit.openai.requests-per-minute", "2")
+                .withProperty("llm.rate-limit.max-wait-millis", "100");
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+
+        call(limiter, 0, ok).block(TIMEOUT);
+        call(limiter, 0, ok).block(TIMEOUT);
+
+        assertThatThrownBy(() -> call(limiter, 0, ok).block(TIMEOUT))
+                .isInstanceOf(LlmRateLimitException.class)
+                .hasMessageContaining("waited too long");
+        assertThat(sent).hasValue(2);
+        assertThat(rejected("deadline")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsCallsWhenTheQueueIsFull() {
+        environment.withProperty("llm.rate-limit.openai.gpt-4o-mini.requests-per-minute", "1")
+                .withProperty("llm.rate-limit.max-queued", "1");
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+
+        call(limiter, 0, ok).block(TIMEOUT);
+        call(limiter, 0, ok).subscribe(response -> { }, error -> { });
+
+        assertThatThrownBy(() -> call(limiter, 0, ok).block(TIMEOUT))
+                .isInstanceOf(LlmRateLimitException.class)
+                .hasMessageContaining("is full");
+        assertThat(rejected("queue_full")).isEqualTo(1);
+    }
+
+    @Test
+    void releasesWaitingCallsAsTheTokenBucketRefills() {
+        // 1000 tokens per second
+        environment.withProperty("llm.rate-limit.tokens-per-minute", "60000");
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+
+        call(limiter, 60_000, ok).block(TIMEOUT);
+        long waited = elapsedMillis(() -> call(limiter, 200, ok).block(TIMEOUT));
+
+        assertThat(sent).hasValue(2);
+        assertThat(waited).isGreaterThanOrEqualTo(150);
+    }
+
+    @Test
+    void sendsCallsLargerThanTheBucketOnceItIsFull() {
+        environment.withProperty("llm.rate-limit.tokens-per-minute", "60000");
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+
+        call(limiter, 1_000_000, ok).block(TIMEOUT);
+
+        assertThat(sent).hasValue(1);
+    }
+
+    @Test
+    void pausesWhenTheProviderReportsNoRemainingRequests() {
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+        ExchangeFunction exhausted = request -> {
+            sent.incrementAndGet();
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header("x-ratelimit-limit-requests", "6000")
+                    .header("x-ratelimit-remaining-requests", "0")
+                    .header("x-ratelimit-reset-requests", "300ms")
+                    .build());
+        };
+
+        call(limiter, 0, exhausted).block(TIMEOUT);
+        long waited = elapsedMillis(() -> call(limiter, 0, ok).block(TIMEOUT));
+
+        assertThat(sent).hasValue(2);
+        assertThat(waited).isGreaterThanOrEqualTo(250);
+    }
+
+    @Test
+    void retriesThrottledCallsAfterRetryAfter() {
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+        ExchangeFunction throttledOnce = request -> Mono.just(sent.incrementAndGet() == 1
+                ? ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "0.2").build()
+                : ClientResponse.create(HttpStatus.OK).build());
+
+        long waited = elapsedMillis(() ->
+                assertThat(call(limiter, 0, throttledOnce).block(TIMEOUT).statusCode()).isEqualTo(HttpStatus.OK));
+
+        assertThat(sent).hasValue(2);
+        assertThat(waited).isGreaterThanOrEqualTo(150);
+        assertThat(meterRegistry.counter("llm.rate_limit.throttled", "provider", "openai", "model", "gpt-4o-mini")
+                .count()).isEqualTo(1);
+    }
+
+    @Test
+    void failsWhenStillThrottledAfterTheRetries() {
+        environment.withProperty("llm.rate-limit.max-throttle-retries", "2");
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+        ExchangeFunction throttled = request -> {
+            sent.incrementAndGet();
+            return Mono.just(ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "0.01")
+                    .build());
+        };
+
+        assertThatThrownBy(() -> call(limiter, 0, throttled).block(TIMEOUT))
+                .isInstanceOf(LlmRateLimitException.class)
+                .hasMessageContaining("after 2 retries");
+        assertThat(sent).hasValue(3);
+    }
+
+    @Test
+    void skipsTheLimitWhenDisabled() {
+        environment.withProperty("llm.rate-limit.enabled", "false")
+                .withProperty("llm.rate-limit.requests-per-minute", "1");
+        LlmRateLimiter limiter = new LlmRateLimiter(environment, meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            call(limiter, 0, ok).block(TIMEOUT);
+        }
+
+        assertThat(sent).hasValue(5);
+    }
+}
@@ -0,0 +1,233 @@
+package viettel.telecom.backend.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmRequestCoalescerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final Map<String, Object> ANSWER = Map.of("content", "answer");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LlmRequestCoalescer coalescer = new LlmRequestCoalescer(meterRegistry, true);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A provider call that blocks until {@link #release} is counted down.
+     */
+    private Map<String, Object> slowCall() {
+        calls.incrementAndGet();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return ANSWER;
+    }
+
+    private double requests(String mode, String role) {
+        return meterRegistry.counter("llm.coalesce.requests", "mode", mode, "role", role).count();
+    }
+
+    private void awaitRequests(String mode, String role, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (requests(mode, role) < count) {
+            assertThat(System.nanoTime() - deadline).as("waiting for %d %s %s", count, mode, role).isNegative();
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void followersShareTheLeadersCall() throws Exception {
+        List<Future<Map<String, Object>>> results = new ArrayList<>();
+        results.add(executor.submit(() -> coalescer.join("k", this::slowCall)));
+        awaitRequests("buffered", "leader", 1);
+        for (int i = 0; i < 5; i++) {
+            results.add(executor.submit(() -> coalescer.join("k", this::slowCall)));
+        }
+        awaitRequests("buffered", "follower", 5);
+        release.countDown();
+
+        for (Future<Map<String, Object>> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(ANSWER);
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void errorReachesEveryWaiter() throws Exception {
+        IllegalStateException failure = new IllegalStateException("provider down");
+        List<Future<Throwable>> errors = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            errors.add(executor.submit(() -> {
+                try {
+                    coalescer.join("k", () -> {
+                        slowCall();
+                        throw failure;
+                    });
+                    return null;
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            }));
+            awaitRequests("buffered", i == 0 ? "leader" : "follower", i == 0 ? 1 : i);
+        }
+        release.countDown();
+
+        for (Future<Throwable> error : errors) {
+            assertThat(error.get(5, TimeUnit.SECONDS)).isSameAs(failure);
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void keyIsReleasedOnceTheCallEnds() {
+        release.countDown();
+
+        coalescer.join("k", this::slowCall);
+        coalescer.join("k", this::slowCall);
+        assertThatThrownBy(() -> coalescer.join("k", () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("provider down");
+        })).isInstanceOf(IllegalStateException.class);
+        coalescer.joinAsync("k", () -> Mono.fromCallable(this::slowCall)).block(TIMEOUT);
+
+        assertThat(calls).hasValue(4);
+        assertThat(requests("buffered", "follower")).isZero();
+    }
+
+    @Test
+    void asyncCallerFollowsBlockingLeader() throws Exception {
+        Future<Map<String, Object>> blocking = executor.submit(() -> coalescer.join("k", this::slowCall));
+        awaitRequests("buffered", "leader", 1);
+
+        CompletableFuture<Map<String, Object>> async =
+                coalescer.joinAsync("k", () -> Mono.fromCallable(this::slowCall)).toFuture();
+        awaitRequests("buffered", "follower", 1);
+        release.countDown();
+
+        assertThat(async.get(5, TimeUnit.SECONDS)).isSameAs(ANSWER);
+        assertThat(blocking.get(5, TimeUnit.SECONDS)).isSameAs(ANSWER);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void blockingCallerFollowsAsyncLeader() throws Exception {
+        Sinks.One<Map<String, Object>> upstream = Sinks.one();
+        // Subscribed at once, so the async caller is the leader
+        CompletableFuture<Map<String, Object>> async = coalescer.joinAsync("k", () -> {
+            calls.incrementAndGet();
+            return upstream.asMono();
+        }).toFuture();
+
+        Future<Map<String, Object>> blocking = executor.submit(() -> coalescer.join("k", this::slowCall));
+        awaitRequests("buffered", "follower", 1);
+        upstream.tryEmitValue(ANSWER);
+
+        assertThat(blocking.get(5, TimeUnit.SECONDS)).isSameAs(ANSWER);
+        assertThat(async.get(5, TimeUnit.SECONDS)).isSameAs(ANSWER);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void leaderCallCompletesWhenItsAsyncCallerCancels() throws Exception {
+        Sinks.One<Map<String, Object>> upstream = Sinks.one();
+        Disposable leader = coalescer.joinAsync("k", upstream::asMono).subscribe();
+        Future<Map<String, Object>> follower = executor.submit(() -> coalescer.join("k", this::slowCall));
+        awaitRequests("buffered", "follower", 1);
+
+        leader.dispose();
+        upstream.tryEmitValue(ANSWER);
+
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(ANSWER);
+    }
+
+    @Test
+    void lateStreamJoinerGetsThePrefixFirst() {
+        Sinks.Many<String> upstream = Sinks.many().multicast().onBackpressureBuffer();
+        List<String> first = new CopyOnWriteArrayList<>();
+        List<String> late = new CopyOnWriteArrayList<>();
+
+        coalescer.joinStream("k", () -> {
+            calls.incrementAndGet();
+            return upstream.asFlux();
+        }).subscribe(first::add);
+        upstream.tryEmitNext("Hel");
+        upstream.tryEmitNext("lo");
+        coalescer.joinStream("k", () -> {
+            calls.incrementAndGet();
+            return Flux.just("other");
+        }).subscribe(late::add);
+        upstream.tryEmitNext(", world");
+        upstream.tryEmitComplete();
+
+        assertThat(first).containsExactly("Hel", "lo", ", world");
+        assertThat(late).containsExactly("Hel", "lo", ", world");
+        assertThat(calls).hasValue(1);
+        assertThat(requests("stream", "follower")).isEqualTo(1);
+
+        // Released once complete: the next identical stream is a new call
+        assertThat(coalescer.joinStream("k", () -> Flux.just("again")).collectList().block(TIMEOUT))
+                .containsExactly("again");
+    }
+
+    @Test
+    void upstreamIsCancelledOnceEveryStreamCallerIsGone() {
+        Sinks.Many<String> upstream = Sinks.many().multicast().onBackpressureBuffer();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> call = upstream.asFlux().doOnCancel(() -> cancelled.set(true));
+
+        Disposable first = coalescer.joinStream("k", () -> call).subscribe();
+        Disposable second = coalescer.joinStream("k", () -> call).subscribe();
+        upstream.tryEmitNext("partial");
+
+        first.dispose();
+        assertThat(cancelled).isFalse();
+        second.dispose();
+        assertThat(cancelled).isTrue();
+
+        assertThat(coalescer.joinStream("k", () -> Flux.just("fresh")).collectList().block(TIMEOUT))
+                .containsExactly("fresh");
+    }
+
+    @Test
+    void disabledCoalescerCallsEveryTime() {
+        LlmRequestCoalescer disabled = new LlmRequestCoalescer(meterRegistry, false);
+        release.countDown();
+
+        disabled.join("k", this::slowCall);
+        disabled.joinAsync("k", () -> Mono.fromCallable(this::slowCall)).block(TIMEOUT);
+        disabled.joinStream("k", () -> Flux.defer(() -> Flux.just(String.valueOf(calls.incrementAndGet())))).blockLast(TIMEOUT);
+
+        assertThat(calls).hasValue(3);
+    }
+}
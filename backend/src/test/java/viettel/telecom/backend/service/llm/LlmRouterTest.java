@@ -0,0 +1,223 @@
+package viettel.telecom.backend.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Mono;
+import viettel.telecom.backend.service.model.ModelHandler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class LlmRouterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    // Calls that make a route known: one more than the minimum samples, as samples decay from the start
+    private static final int WARM_UP = 6;
+
+    private final MockEnvironment environment = new MockEnvironment();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean nextCallSlow = new AtomicBoolean();
+
+    /**
+     * Answers at once, except for the first call after {@link #nextCallSlow} is set, which takes a second.
+     */
+    private final BiFunction<ModelHandler, Map<String, Object>, Mono<Map<String, Object>>> call = (handler, config) -> {
+        calls.add(config.get("aiModel").toString());
+        Mono<Map<String, Object>> answer = Mono.just(Map.of("content", config.get("aiModel")));
+        return nextCallSlow.compareAndSet(true, false) ? answer.delayElement(Duration.ofSeconds(1)) : answer;
+    };
+
+    private LlmRouter router(boolean hedgeEnabled, boolean hedgeSameRoute) {
+        Map<String, ModelHandler> handlers = Map.of("openai", mock(ModelHandler.class), "deepseek", mock(ModelHandler.class));
+        return new LlmRouter(handlers, environment, meterRegistry, hedgeEnabled, hedgeSameRoute, 1, 50,
+                20, 10, 50, 30, 3, true, 0.05, 5, 300);
+    }
+
+    private final Map<String, Duration> delays = new ConcurrentHashMap<>();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Answers after the model's delay in {@link #delays}, or fails with a provider error if it is {@link #failing}.
+     */
+    private final BiFunction<ModelHandler, Map<String, Object>, Mono<Map<String, Object>>> modelCall = (handler, config) -> {
+        String model = config.get("aiModel").toString();
+        if (failing.contains(model)) {
+            return Mono.error(new IOException(model + " unreachable"));
+        }
+        Mono<Map<String, Object>> answer = Mono.just(Map.of("content", model));
+        Duration delay = delays.get(model);
+        return delay != null ? answer.delayElement(delay) : answer;
+    };
+
+    /**
+     * Adaptive routing between gpt-4o-mini (openai) and deepseek-chat (deepseek), without hedging.
+     */
+    private LlmRouter adaptiveRouter(double exploration, int minimumCalls) {
+        Map<String, ModelHandler> handlers = Map.of("openai", mock(ModelHandler.class), "deepseek", mock(ModelHandler.class));
+        return new LlmRouter(handlers, environment, meterRegistry, false, false, 1, 50,
+                20, minimumCalls, 50, 30, 3, true, exploration, 5, 300);
+    }
+
+    /**
+     * Direct calls to one model, outside of adaptive routing, so its route gets the given number of samples.
+     */
+    private void seed(LlmRouter router, String provider, String model, int count) {
+        for (int i = 0; i < count; i++) {
+            router.call(provider, Map.of("aiModel", model), modelCall)
+                    .onErrorResume(e -> Mono.empty())
+                    .block(TIMEOUT);
+        }
+    }
+
+    /**
+     * Routed calls that may go to either model.
+     */
+    private void route(LlmRouter router, int count) {
+        Map<String, Object> config = Map.of("aiModel", "gpt-4o-mini", "allowedModels", List.of("deepseek-chat"));
+        for (int i = 0; i < count; i++) {
+            router.call("openai", config, modelCall).block(TIMEOUT);
+        }
+    }
+
+    private double picks(String model, String reason) {
+        return meterRegistry.counter("llm.routing.decisions", "model", model, "reason", reason).count();
+    }
+
+    /**
+     * A few fast calls so the route has latency samples, then a slow one that may be hedged.
+     */
+    private Map<String, Object> slowCall(LlmRouter router) {
+        Map<String, Object> config = Map.of("aiModel", "gpt-4o-mini");
+        for (int i = 0; i < 3; i++) {
+            router.call("openai", config, call).block(TIMEOUT);
+        }
+        calls.clear();
+        nextCallSlow.set(true);
+        return router.call("openai", config, call).block(TIMEOUT);
+    }
+
+    @Test
+    void doesNotHedgeByDefault() {
+        environment.withProperty("llm.routing.failover.gpt-4o-mini", "deepseek-chat");
+
+        assertThat(slowCall(router(false, false))).containsEntry("content", "gpt-4o-mini");
+        assertThat(calls).containsExactly("gpt-4o-mini");
+    }
+
+    @Test
+    void hedgesToTheFailoverModel() {
+        environment.withProperty("llm.routing.failover.gpt-4o-mini", "deepseek-chat");
+
+        assertThat(slowCall(router(true, false))).containsEntry("content", "deepseek-chat");
+        assertThat(calls).containsExactly("gpt-4o-mini", "deepseek-chat");
+    }
+
+    @Test
+    void doesNotHedgeWithoutABackupRoute() {
+        assertThat(slowCall(router(true, false))).containsEntry("content", "gpt-4o-mini");
+        assertThat(calls).containsExactly("gpt-4o-mini");
+    }
+
+    @Test
+    void hedgesToTheSameRouteWhenAllowed() {
+        assertThat(slowCall(router(true, true))).containsEntry("content", "gpt-4o-mini");
+        assertThat(calls).containsExactly("gpt-4o-mini", "gpt-4o-mini");
+    }
+
+    @Test
+    void adaptiveRoutingPicksTheFasterModelMostOften() {
+        LlmRouter router = adaptiveRouter(0, 10);
+        delays.put("deepseek-chat", Duration.ofMillis(50));
+        seed(router, "openai", "gpt-4o-mini", WARM_UP);
+        seed(router, "deepseek", "deepseek-chat", WARM_UP);
+
+        route(router, 100);
+
+        assertThat(picks("gpt-4o-mini", "exploit")).isGreaterThan(90);
+        assertThat(picks("gpt-4o-mini", "explore") + picks("deepseek-chat", "explore")).isZero();
+    }
+
+    @Test
+    void explorationKeepsTryingTheSlowerModel() {
+        LlmRouter router = adaptiveRouter(1, 10);
+        delays.put("deepseek-chat", Duration.ofMillis(5));
+        seed(router, "openai", "gpt-4o-mini", WARM_UP);
+        seed(router, "deepseek", "deepseek-chat", WARM_UP);
+
+        route(router, 100);
+
+        assertThat(picks("gpt-4o-mini", "explore") + picks("deepseek-chat", "explore")).isEqualTo(100);
+        assertThat(picks("deepseek-chat", "explore")).isBetween(25.0, 75.0);
+    }
+
+    @Test
+    void scoreAccountsForTheErrorRate() {
+        // The breaker never opens here, so only the score steers calls away from the failing model
+        LlmRouter router = adaptiveRouter(0, 1_000);
+        delays.put("gpt-4o-mini", Duration.ofMillis(10));
+        delays.put("deepseek-chat", Duration.ofMillis(20));
+        seed(router, "openai", "gpt-4o-mini", WARM_UP);
+        seed(router, "deepseek", "deepseek-chat", WARM_UP);
+        failing.add("gpt-4o-mini");
+        seed(router, "openai", "gpt-4o-mini", 45);
+
+        route(router, 100);
+
+        assertThat(picks("deepseek-chat", "exploit")).isGreaterThan(80);
+    }
+
+    @Test
+    void routesAroundAProviderWithAnOpenBreaker() {
+        LlmRouter router = adaptiveRouter(0, 10);
+        delays.put("deepseek-chat", Duration.ofMillis(20));
+        seed(router, "openai", "gpt-4o-mini", WARM_UP);
+        seed(router, "deepseek", "deepseek-chat", WARM_UP);
+        failing.add("gpt-4o-mini");
+        seed(router, "openai", "gpt-4o-mini", 10);
+        failing.clear();
+
+        route(router, 20);
+
+        // Still the faster model by latency, but its provider is skipped while the breaker is open
+        assertThat(picks("deepseek-chat", "exploit")).isEqualTo(20);
+        assertThat(router.status())
+                .filteredOn(status -> status.provider().equals("openai"))
+                .extracting(LlmRouter.RouteStatus::circuitState)
+                .containsOnly("OPEN");
+    }
+
+    @Test
+    void routeStatsForgetOldCallsAfterTheHalfLife() throws InterruptedException {
+        RouteStats stats = new RouteStats(TimeUnit.MILLISECONDS.toNanos(50));
+        for (int i = 0; i < 10; i++) {
+            stats.failure();
+            stats.latency.record(1_000);
+        }
+        assertThat(stats.errorRate()).isEqualTo(1.0);
+
+        Thread.sleep(1_000);
+        for (int i = 0; i < 10; i++) {
+            stats.success();
+            stats.latency.record(50);
+        }
+
+        assertThat(stats.errorRate()).isLessThan(0.01);
+        assertThat(stats.latency.quantile(0.5)).isLessThan(60);
+        // Only the recent calls are left
+        assertThat(stats.latency.weight()).isBetween(5.0, 10.01);
+    }
+}
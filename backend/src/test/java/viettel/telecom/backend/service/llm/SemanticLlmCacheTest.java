@@ -0,0 +1,152 @@
+package viettel.telecom.backend.service.llm;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.indices.ExistsRequest;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.endpoints.BooleanResponse;
+import co.elastic.clients.util.ObjectBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.json.stream.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SemanticLlmCacheTest {
+
+    private static final Map<String, Object> ANSWER = Map.of("content", "Gold costs 100k a month");
+
+    private final ElasticsearchClient elasticsearchClient = mock(ElasticsearchClient.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SemanticLlmCache cache = cache(true);
+
+    private SemanticLlmCache cache(boolean enabled) {
+        return new SemanticLlmCache(elasticsearchClient, Map.of("hashingEmbedder", new HashingTextEmbedder(64)),
+                meterRegistry, enabled, "hashingEmbedder", 3600, 10);
+    }
+
+    private static Map<String, Object> config(Double threshold) {
+        return threshold != null
+                ? Map.of("templateId", "pricing", "semanticCacheThreshold", threshold)
+                : Map.of("templateId", "pricing");
+    }
+
+    private static Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>> anySearch() {
+        return any();
+    }
+
+    private void nearestHit(Double score) throws IOException {
+        SemanticLlmCache.CachedAnswer answer = new SemanticLlmCache.CachedAnswer(ANSWER, 1200L, 350L);
+        SearchResponse<SemanticLlmCache.CachedAnswer> response = SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(List.of(Hit.of(hit -> hit.index("llm_semantic_cache_hashing_64").id("1")
+                        .score(score).source(answer))))));
+        when(elasticsearchClient.search(anySearch(), eq(SemanticLlmCache.CachedAnswer.class))).thenReturn(response);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.counter("llm.semantic_cache.requests", "template", "pricing", "result", result).count();
+    }
+
+    @BeforeEach
+    void indexExists() throws IOException {
+        ElasticsearchIndicesClient indices = mock(ElasticsearchIndicesClient.class);
+        Function<ExistsRequest.Builder, ObjectBuilder<ExistsRequest>> anyExists = any();
+        when(indices.exists(anyExists)).thenReturn(new BooleanResponse(true));
+        when(elasticsearchClient.indices()).thenReturn(indices);
+    }
+
+    @Test
+    void onlyTemplatesWithAThresholdAreEligible() {
+        assertThat(cache.isEligible(config(0.9))).isTrue();
+        assertThat(cache.isEligible(config(null))).isFalse();
+        assertThat(cache.isEligible(Map.of("semanticCacheThreshold", 0.9))).isFalse();
+        assertThat(cache.isEligible(null)).isFalse();
+        assertThat(cache(false).isEligible(config(0.9))).isFalse();
+    }
+
+    @Test
+    void convertsKnnScoreToCosine() {
+        assertThat(SemanticLlmCache.cosine(1.0, 0.9)).isEqualTo(1.0);
+        assertThat(SemanticLlmCache.cosine(0.5, 0.9)).isEqualTo(0.0);
+        assertThat(SemanticLlmCache.cosine(0.95, 0.9)).isCloseTo(0.9, within(1e-9));
+        assertThat(SemanticLlmCache.cosine(null, 0.9)).isEqualTo(0.9);
+    }
+
+    @Test
+    void returnsNearestAnswerAtOrAboveTheThreshold() throws IOException {
+        // cosine 0.92
+        nearestHit(0.96);
+
+        SemanticLlmCache.Lookup lookup = cache.lookup("scope", "What is the price of the Gold plan?", config(0.9));
+
+        assertThat(lookup.response()).isEqualTo(ANSWER);
+        assertThat(requests("hit")).isEqualTo(1);
+        assertThat(meterRegistry.summary("llm.semantic_cache.saved.latency", "template", "pricing").totalAmount())
+                .isEqualTo(1200);
+        assertThat(meterRegistry.summary("llm.semantic_cache.saved.tokens", "template", "pricing").totalAmount())
+                .isEqualTo(350);
+    }
+
+    @Test
+    void missesBelowTheThreshold() throws IOException {
+        // cosine 0.8
+        nearestHit(0.9);
+
+        SemanticLlmCache.Lookup lookup = cache.lookup("scope", "What is the price of the Gold plan?", config(0.9));
+
+        assertThat(lookup).isNotNull();
+        assertThat(lookup.response()).isNull();
+        assertThat(lookup.vector()).hasSize(64);
+        assertThat(requests("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void skipsInputsWithTheZeroVector() throws IOException {
+        assertThat(cache.lookup("scope", " ?! ", config(0.9))).isNull();
+
+        verify(elasticsearchClient, never()).search(anySearch(), eq(SemanticLlmCache.CachedAnswer.class));
+    }
+
+    @Test
+    void failedSearchIsCountedAndTreatedAsNoLookup() throws IOException {
+        when(elasticsearchClient.search(anySearch(), eq(SemanticLlmCache.CachedAnswer.class)))
+                .thenThrow(new IOException("connection refused"));
+
+        assertThat(cache.lookup("scope", "What is the price of the Gold plan?", config(0.9))).isNull();
+        assertThat(requests("error")).isEqualTo(1);
+    }
+
+    @Test
+    void readsStoredEntryIntoTypedAnswer() {
+        JacksonJsonpMapper mapper = new JacksonJsonpMapper();
+        String source = "{\"response\":{\"content\":\"Gold costs 100k a month\",\"usage\":{\"total_tokens\":350}},"
+                + "\"latencyMs\":1200,\"totalTokens\":350}";
+
+        JsonParser parser = mapper.jsonProvider().createParser(new StringReader(source));
+        SemanticLlmCache.CachedAnswer answer = mapper.deserialize(parser, SemanticLlmCache.CachedAnswer.class);
+
+        assertThat(answer.response()).containsEntry("content", "Gold costs 100k a month");
+        assertThat(answer.latencyMs()).isEqualTo(1200L);
+        assertThat(answer.totalTokens()).isEqualTo(350L);
+    }
+}
@@ -0,0 +1,93 @@
+package viettel.telecom.backend.service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares {@link SseChunkDecoder} with the Map-based chunk parsing the LLM handlers used before, replaying the
+ * recorded stream from the test resources. Run manually (it is not a test):
+ *
+ * java -cp target/classes:target/test-classes:... viettel.telecom.backend.service.llm.SseChunkDecoderBenchmark
+ */
+public final class SseChunkDecoderBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SseChunkDecoderBenchmark() {
+    }
+
+    /**
+     * The per-chunk parsing OpenAIHandler did before the streaming decoder.
+     */
+    @SuppressWarnings("unchecked")
+    private static String mapParse(String chunk) throws Exception {
+        String trimmed = chunk.trim();
+        if (trimmed.equals("[DONE]")) {
+            return null;
+        }
+        String data = trimmed.startsWith("data:") ? trimmed.substring(5).trim() : trimmed;
+        if (data.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> map = MAPPER.readValue(data, Map.class);
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) map.get("choices");
+        if (choices != null && !choices.isEmpty()) {
+            Map<String, Object> delta = (Map<String, Object>) choices.get(0).get("delta");
+            if (delta != null && delta.get("content") != null) {
+                return delta.get("content").toString();
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> stream = SseChunkDecoderTest.readEvents(SseChunkDecoderTest.RECORDED_STREAM);
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        StringBuilder expected = new StringBuilder();
+        for (String chunk : stream) {
+            String content = mapParse(chunk);
+            if (content != null) {
+                expected.append(content);
+            }
+        }
+        SseChunkDecoder.Accumulator completion = new SseChunkDecoder.Accumulator();
+        stream.forEach(completion::append);
+        if (!expected.toString().equals(completion.content())) {
+            throw new IllegalStateException("Decoders disagree on the recorded stream");
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double chunks = (double) iterations * stream.size();
+        long sink = 0;
+        for (int round = 0; round < 5; round++) {
+            long bytes0 = threads.getThreadAllocatedBytes(thread);
+            long time0 = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (String chunk : stream) {
+                    String content = mapParse(chunk);
+                    sink += content != null ? content.length() : 0;
+                }
+            }
+            long time1 = System.nanoTime();
+            long bytes1 = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < iterations; i++) {
+                for (String chunk : stream) {
+                    SseChunkDecoder.Delta delta = SseChunkDecoder.decode(chunk);
+                    sink += delta != null && delta.content() != null ? delta.content().length() : 0;
+                }
+            }
+            long time2 = System.nanoTime();
+            long bytes2 = threads.getThreadAllocatedBytes(thread);
+
+            System.out.printf("round %d: map %.0f ns %.0f B/chunk | decoder %.0f ns %.0f B/chunk%n", round,
+                    (time1 - time0) / chunks, (bytes1 - bytes0) / chunks,
+                    (time2 - time1) / chunks, (bytes2 - bytes1) / chunks);
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+}
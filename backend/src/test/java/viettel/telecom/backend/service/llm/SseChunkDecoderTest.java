@@ -0,0 +1,174 @@
+package viettel.telecom.backend.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseChunkDecoderTest {
+
+    static final String RECORDED_STREAM = "/llm/openai-chat-stream.sse";
+
+    private static String chunk(String deltaContent) {
+        return "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,"
+                + "\"delta\":{\"content\":\"" + deltaContent + "\"},\"logprobs\":null,\"finish_reason\":null}]}";
+    }
+
+    /**
+     * Splits a recorded response body into the events WebFlux's SSE codec hands to bodyToFlux(String.class):
+     * the data lines of each blank-line separated event, without the "data:" prefix.
+     */
+    static List<String> readEvents(String resource) throws IOException {
+        String body;
+        try (InputStream in = SseChunkDecoderTest.class.getResourceAsStream(resource)) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<String> events = new ArrayList<>();
+        StringBuilder data = new StringBuilder();
+        for (String line : body.split("\n", -1)) {
+            if (line.isEmpty()) {
+                if (!data.isEmpty()) {
+                    events.add(data.toString());
+                    data.setLength(0);
+                }
+            } else if (line.startsWith("data:")) {
+                if (!data.isEmpty()) {
+                    data.append('\n');
+                }
+                data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+            }
+        }
+        return events;
+    }
+
+    @Test
+    void decodesDeltaContent() {
+        assertThat(SseChunkDecoder.decode(chunk("Hello")))
+                .isEqualTo(new SseChunkDecoder.Delta("Hello", null));
+    }
+
+    @Test
+    void skipsDataPrefixAndSurroundingWhitespace() {
+        SseChunkDecoder.Delta expected = new SseChunkDecoder.Delta("Hi", null);
+
+        assertThat(SseChunkDecoder.decode("data:" + chunk("Hi"))).isEqualTo(expected);
+        assertThat(SseChunkDecoder.decode("data: " + chunk("Hi"))).isEqualTo(expected);
+        assertThat(SseChunkDecoder.decode("  \tdata:   " + chunk("Hi") + "\r\n\n")).isEqualTo(expected);
+    }
+
+    @Test
+    void ignoresDoneAndBlankChunks() {
+        assertThat(SseChunkDecoder.decode("[DONE]")).isNull();
+        assertThat(SseChunkDecoder.decode("data: [DONE]")).isNull();
+        assertThat(SseChunkDecoder.decode(" data:[DONE]\n")).isNull();
+        assertThat(SseChunkDecoder.decode(null)).isNull();
+        assertThat(SseChunkDecoder.decode("")).isNull();
+        assertThat(SseChunkDecoder.decode("  \n")).isNull();
+        assertThat(SseChunkDecoder.decode("data:")).isNull();
+        assertThat(SseChunkDecoder.decode("data:   ")).isNull();
+    }
+
+    @Test
+    void ignoresMalformedChunks() {
+        assertThat(SseChunkDecoder.decode("not json")).isNull();
+        assertThat(SseChunkDecoder.decode("[1, 2]")).isNull();
+        assertThat(SseChunkDecoder.decode("{\"choices\":\"oops\"}")).isNull();
+        assertThat(SseChunkDecoder.decode("{\"choices\":[]}")).isNull();
+        assertThat(SseChunkDecoder.decode("{\"id\":\"chatcmpl-1\"}")).isNull();
+    }
+
+    @Test
+    void dropsChunkCutMidJsonAndKeepsDecodingTheNext() {
+        String whole = chunk("one");
+        String cut = whole.substring(0, whole.indexOf("\"one\"") + 3);
+
+        SseChunkDecoder.Accumulator completion = new SseChunkDecoder.Accumulator()
+                .append(cut)
+                .append(whole.substring(cut.length()))
+                .append(chunk("two"));
+
+        assertThat(SseChunkDecoder.decode(cut)).isNull();
+        assertThat(completion.content()).isEqualTo("two");
+    }
+
+    @Test
+    void readsFinishReason() {
+        String last = "{\"choices\":[{\"index\":0,\"delta\":{},\"logprobs\":null,\"finish_reason\":\"length\"}]}";
+
+        assertThat(SseChunkDecoder.decode(last)).isEqualTo(new SseChunkDecoder.Delta(null, "length"));
+        assertThat(SseChunkDecoder.decode("{\"choices\":[{\"delta\":{},\"finish_reason\":null}]}")).isNull();
+    }
+
+    @Test
+    void fallsBackToMessageContent() {
+        String message = "{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"Done\"},"
+                + "\"finish_reason\":\"stop\"}]}";
+
+        assertThat(SseChunkDecoder.decode(message)).isEqualTo(new SseChunkDecoder.Delta("Done", "stop"));
+    }
+
+    @Test
+    void skipsNonStringContentAndNestedFields() {
+        String chunk = "{\"usage\":{\"total_tokens\":3},\"choices\":[{\"delta\":{\"tool_calls\":[{\"function\":"
+                + "{\"content\":\"x\"}}],\"content\":null},\"logprobs\":{\"content\":[{\"token\":\"a\"}]},"
+                + "\"finish_reason\":\"tool_calls\"}]}";
+
+        assertThat(SseChunkDecoder.decode(chunk)).isEqualTo(new SseChunkDecoder.Delta(null, "tool_calls"));
+    }
+
+    @Test
+    void readsOnlyTheFirstChoice() {
+        String chunk = "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"first\"}},"
+                + "{\"index\":1,\"delta\":{\"content\":\"second\"},\"finish_reason\":\"stop\"}]}";
+
+        assertThat(SseChunkDecoder.decode(chunk)).isEqualTo(new SseChunkDecoder.Delta("first", null));
+    }
+
+    @Test
+    void decodesJsonSpanningSeveralDataLines() {
+        String chunk = "data: {\"choices\":[\n  {\"delta\":\n    {\"content\":\"multi\"}}\n]}\n";
+
+        assertThat(SseChunkDecoder.decode(chunk)).isEqualTo(new SseChunkDecoder.Delta("multi", null));
+    }
+
+    @Test
+    void decodesEscapesAndChunksLargerThanTheBuffer() {
+        String large = "x".repeat(5000);
+
+        assertThat(SseChunkDecoder.decode(chunk("a\\\"b\\n\\u00e9")).content()).isEqualTo("a\"b\n\u00e9");
+        assertThat(SseChunkDecoder.decode(chunk(large)).content()).isEqualTo(large);
+        assertThat(SseChunkDecoder.decode(chunk("small")).content()).isEqualTo("small");
+    }
+
+    @Test
+    void accumulatesContentSplitAcrossChunks() {
+        SseChunkDecoder.Accumulator completion = new SseChunkDecoder.Accumulator()
+                .append("{\"choices\":[{\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}")
+                .append(chunk("Hel"))
+                .append("data: " + chunk("lo, "))
+                .append(chunk("w\\u00f6"))
+                .append(chunk("rld"))
+                .append("{\"choices\":[{\"delta\":{},\"finish_reason\":\"stop\"}]}")
+                .append("[DONE]");
+
+        assertThat(completion.content()).isEqualTo("Hello, w\u00f6rld");
+        assertThat(completion.finishReason()).isEqualTo("stop");
+    }
+
+    @Test
+    void decodesRecordedStream() throws IOException {
+        List<String> events = readEvents(RECORDED_STREAM);
+        SseChunkDecoder.Accumulator completion = new SseChunkDecoder.Accumulator();
+        events.forEach(completion::append);
+
+        assertThat(events).hasSize(39).last().isEqualTo("[DONE]");
+        assertThat(completion.content()).isEqualTo("Xin ch\u00e0o! Here is a short answer with \"quotes\", "
+                + "a tab\tand a newline\nfollowed by a list:\n1. caf\u00e9\n2. na\u00efve \u2013 done.");
+        assertThat(completion.finishReason()).isEqualTo("stop");
+    }
+}
@@ -0,0 +1,130 @@
+package viettel.telecom.backend.service.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import viettel.telecom.backend.exception.FlowSessionConflictException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedFlowSessionStoreTest {
+
+    /**
+     * Redis stand-in with the same compare-and-set semantics, shared by the "replicas" of a test.
+     */
+    private static class FakeRedisStore extends RedisFlowSessionStore {
+        private final InMemoryFlowSessionStore sessions = new InMemoryFlowSessionStore();
+        int loads;
+
+        FakeRedisStore() {
+            super(null, 60, 1024);
+        }
+
+        @Override
+        public FlowSessionState load(String key) {
+            loads++;
+            return sessions.load(key);
+        }
+
+        @Override
+        public long save(FlowSessionState state) {
+            return sessions.save(state);
+        }
+
+        @Override
+        public void delete(String key) {
+            sessions.delete(key);
+        }
+
+        @Override
+        public long version(String key) {
+            return sessions.load(key).getVersion();
+        }
+    }
+
+    private final FakeRedisStore redis = new FakeRedisStore();
+
+    private BoundedFlowSessionStore replica(long maxContextBytes) {
+        return new BoundedFlowSessionStore(redis, new SimpleMeterRegistry(), 100, 900, maxContextBytes);
+    }
+
+    @Test
+    void everySaveIsVisibleToOtherReplicas() {
+        BoundedFlowSessionStore first = replica(1 << 20);
+        BoundedFlowSessionStore second = replica(1 << 20);
+
+        FlowSessionState state = first.load("c");
+        state.getContext().put("currentNodeId", "n1");
+        first.save(state);
+
+        FlowSessionState onSecond = second.load("c");
+        assertThat(onSecond.getVersion()).isEqualTo(1);
+        assertThat(onSecond.getCurrentNodeId()).isEqualTo("n1");
+        onSecond.getContext().put("currentNodeId", "n2");
+        second.save(onSecond);
+
+        // The first replica's heap copy is outdated and must not be served
+        FlowSessionState back = first.load("c");
+        assertThat(back.getVersion()).isEqualTo(2);
+        assertThat(back.getCurrentNodeId()).isEqualTo("n2");
+    }
+
+    @Test
+    void staleSaveFromAnotherReplicaConflicts() {
+        BoundedFlowSessionStore first = replica(1 << 20);
+        BoundedFlowSessionStore second = replica(1 << 20);
+        first.save(first.load("c"));
+
+        FlowSessionState onFirst = first.load("c");
+        FlowSessionState onSecond = second.load("c");
+        second.save(onSecond);
+
+        assertThatThrownBy(() -> first.save(onFirst)).isInstanceOf(FlowSessionConflictException.class);
+        assertThat(first.load("c").getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    void currentHeapCopyIsServedWithoutDecoding() {
+        BoundedFlowSessionStore store = replica(1 << 20);
+        FlowSessionState state = store.load("c");
+        state.getContext().put("items", new ArrayList<>(List.of("a")));
+        store.save(state);
+        int loadsAfterSave = redis.loads;
+
+        FlowSessionState loaded = store.load("c");
+        ((List<Object>) loaded.getContext().get("items")).add("b");
+
+        assertThat(redis.loads).isEqualTo(loadsAfterSave);
+        // A caller's in-place change must not leak into the cached copy
+        assertThat(store.load("c").getContext().get("items")).isEqualTo(List.of("a"));
+    }
+
+    @Test
+    void oversizedContextsAreReadFromRedis() {
+        BoundedFlowSessionStore store = replica(100);
+        FlowSessionState state = store.load("c");
+        state.getContext().put("text", "x".repeat(1000));
+        store.save(state);
+        int loadsAfterSave = redis.loads;
+
+        assertThat(store.load("c").getContext().get("text")).isEqualTo("x".repeat(1000));
+        assertThat(redis.loads).isEqualTo(loadsAfterSave + 1);
+    }
+
+    @Test
+    void deleteRemovesTheSession() {
+        BoundedFlowSessionStore store = replica(1 << 20);
+        Map<String, Object> context = new HashMap<>(Map.of("k", "v"));
+        store.save(new FlowSessionState("c", 0, context));
+
+        store.delete("c");
+
+        assertThat(store.load("c").getVersion()).isZero();
+        assertThat(store.load("c").getContext()).isEmpty();
+    }
+}
@@ -0,0 +1,60 @@
+package viettel.telecom.backend.service.session;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConversationIdsTest {
+
+    @Test
+    void generatedIdsAreWellFormedAndDistinct() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String id = ConversationIds.generate();
+            assertThat(ConversationIds.isWellFormed(id)).isTrue();
+            ids.add(id);
+        }
+        assertThat(ids).hasSize(1000);
+    }
+
+    @Test
+    void rejectsClientChosenValues() {
+        assertThat(ConversationIds.isWellFormed(null)).isFalse();
+        assertThat(ConversationIds.isWellFormed("1")).isFalse();
+        assertThat(ConversationIds.isWellFormed("conversation:abc")).isFalse();
+        assertThat(ConversationIds.isWellFormed("aaaaaaaaaaaaaaaaaaaaa:")).isFalse();
+    }
+
+    @Test
+    void restCallersOnlyResumeWellFormedIds() {
+        String issued = ConversationIds.generate();
+
+        assertThat(ConversationIds.resumeOrGenerate(issued)).isEqualTo(issued);
+        for (Object requested : new Object[]{null, "", "1", "shared", 42, issued + "x"}) {
+            String id = ConversationIds.resumeOrGenerate(requested);
+            assertThat(id).as(String.valueOf(requested)).isNotEqualTo(String.valueOf(requested));
+            assertThat(ConversationIds.isWellFormed(id)).isTrue();
+        }
+    }
+
+    @Test
+    void sessionUsesAssignedConversationOnceSet() {
+        Map<String, Object> attributes = new HashMap<>();
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("ws-1");
+        when(session.getAttributes()).thenReturn(attributes);
+
+        assertThat(ConversationIds.of(session)).isEqualTo("ws-1");
+        attributes.put(ConversationIds.ATTRIBUTE, "abc");
+        assertThat(ConversationIds.of(session)).isEqualTo("abc");
+        assertThat(ConversationIds.of(null)).isNull();
+    }
+}
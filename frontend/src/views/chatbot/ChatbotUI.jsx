@@ -19,6 +19,8 @@ const ChatbotUI = () => {
   const [userInput, setUserInput] = useState('');
   const chatContainerRef = useRef(null);
   const [socket, setSocket] = useState(null);
+  // Server-issued conversation id, kept for the browser tab so that a reconnect resumes the conversation
+  const conversationIdRef = useRef(sessionStorage.getItem('chat.conversationId'));
 
   // 1. Establish WebSocket connection on component mount
   useEffect(() => {
@@ -46,7 +48,28 @@ const ChatbotUI = () => {
       try {
         const data = JSON.parse(event.data);
 
+        // The server assigns the conversation id on the first message
+        if (data.type === 'conversation') {
+          conversationIdRef.current = data.conversationId;
+          sessionStorage.setItem('chat.conversationId', data.conversationId);
+          return;
+        }
+
         // Expecting something like: { sender: 'bot', message: 'some text' }
+        // Streamed LLM responses arrive as 'delta' frames and a final 'end' frame sharing a streamId
+        if (data.streamId) {
+          setMessages((prev) => {
+            const idx = prev.findIndex((m) => m.streamId === data.streamId);
+            if (idx < 0) {
+              return [...prev, { sender: data.sender || 'bot', text: data.message || '', streamId: data.streamId }];
+            }
+            const updated = [...prev];
+            const text = data.type === 'end' ? data.message || '' : updated[idx].text + (data.message || '');
+            updated[idx] = { ...updated[idx], text };
+            return updated;
+          });
+          return;
+        }
         const newMessage = {
           sender: data.sender || 'bot',
           text: data.message || '',
@@ -86,6 +109,7 @@ const ChatbotUI = () => {
     const payload = {
       flowId: 'yourFlowId',   // adapt to your actual flow
       userResponse: userInput,
+      conversationId: conversationIdRef.current,
     };
     socket.send(JSON.stringify(payload));
 
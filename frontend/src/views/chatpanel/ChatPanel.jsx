@@ -22,6 +22,10 @@ const ChatPanel = ({ flowId }) => {
   const chatContainerRef = useRef(null);
   const wsRef = useRef(null);
 
+  // Server-issued conversation id, kept for the browser tab so that a reconnect resumes the conversation
+  const conversationKeyRef = useRef(`chat.conversationId.${flowId || "defaultFlow"}`);
+  const conversationIdRef = useRef(sessionStorage.getItem(conversationKeyRef.current));
+
   // 1) Establish the WebSocket connection on mount
   useEffect(() => {
     // Replace with your actual WebSocket URL, e.g. "ws://localhost:8888/ws/chat"
@@ -36,7 +40,27 @@ const ChatPanel = ({ flowId }) => {
     ws.onmessage = (evt) => {
       try {
         const data = JSON.parse(evt.data);
+        // The server assigns the conversation id on the first message
+        if (data.type === "conversation") {
+          conversationIdRef.current = data.conversationId;
+          sessionStorage.setItem(conversationKeyRef.current, data.conversationId);
+          return;
+        }
         // Expected shape: { sender: "bot", message: "..." }
+        // Streamed LLM responses arrive as "delta" frames and a final "end" frame sharing a streamId
+        if (data.streamId) {
+          setChatMessages((prev) => {
+            const idx = prev.findIndex((m) => m.streamId === data.streamId);
+            if (idx < 0) {
+              return [...prev, { sender: data.sender || "bot", text: data.message || "", streamId: data.streamId }];
+            }
+            const updated = [...prev];
+            const text = data.type === "end" ? data.message || "" : updated[idx].text + (data.message || "");
+            updated[idx] = { ...updated[idx], text };
+            return updated;
+          });
+          return;
+        }
         const newMessage = {
           sender: data.sender || "bot",
           text: data.message || "",
@@ -106,6 +130,7 @@ const ChatPanel = ({ flowId }) => {
           flowId: flowId || "defaultFlow",
           // server can interpret "__start__" to skip directly to the first node
           userResponse: "__start__",
+          conversationId: conversationIdRef.current,
         })
       );
     }
@@ -129,6 +154,7 @@ const ChatPanel = ({ flowId }) => {
     const payload = {
       flowId: flowId || "defaultFlow",
       userResponse: userInput,
+      conversationId: conversationIdRef.current,
     };
     ws.send(JSON.stringify(payload));
 